@@ -0,0 +1,153 @@
+import com.opencsv.CSVReader
+import com.opencsv.CSVWriter
+import com.widen.tabitha.Variant
+import com.widen.tabitha.plugins.delimited.DelimitedFormat
+import com.widen.tabitha.plugins.delimited.DelimitedRowReader
+import com.widen.tabitha.plugins.delimited.DelimitedRowWriter
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.RowBatch
+import groovy.transform.CompileStatic
+import org.apache.commons.io.output.NullOutputStream
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Compare the throughput of reading a generated CSV file with opencsv against the delimited row reader, and of writing
+ * the same rows with opencsv against the delimited row writer.
+ *
+ * Pass the number of rows to generate as the first argument.
+ */
+@CompileStatic
+class DelimitedBenchmark {
+    static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000
+        Path path = Files.createTempFile("tabitha-benchmark", ".csv")
+
+        try {
+            generate(path, rows)
+            println("Input: ${rows} rows, ${Files.size(path) >> 20} MiB")
+
+            3.times {
+                time("opencsv") { countOpencsv(path) }
+                time("read") { countRead(path, new ReaderOptions()) }
+                time("read (reuse rows)") { countRead(path, new ReaderOptions().withReuseRows(true)) }
+                time("readBatch") { countBatch(path) }
+                time("opencsv write") { writeOpencsv(rows) }
+                time("write") { writeRows(rows) }
+                time("writeBatch") { writeBatches(rows) }
+            }
+        }
+        finally {
+            Files.delete(path)
+        }
+    }
+
+    private static void generate(Path path, int rows) {
+        Files.newBufferedWriter(path, StandardCharsets.UTF_8).withCloseable { Writer writer ->
+            writer.write("id,name,description,amount,date\n")
+
+            for (int i = 0; i < rows; ++i) {
+                writer.write("${i},name ${i},\"a \"\"quoted\"\", comma-separated description\",${i * 0.25},2018-10-0${i % 9 + 1}\n")
+            }
+        }
+    }
+
+    private static long countOpencsv(Path path) {
+        long count = 0
+
+        new CSVReader(Files.newBufferedReader(path, StandardCharsets.UTF_8)).withCloseable { CSVReader reader ->
+            String[] line
+            while ((line = reader.readNext()) != null) {
+                count += line.length
+            }
+        }
+
+        return count
+    }
+
+    private static long countRead(Path path, ReaderOptions options) {
+        long count = 0
+
+        new DelimitedRowReader(Files.newInputStream(path), DelimitedFormat.CSV, options).withCloseable { reader ->
+            reader.forEach { row -> count += row.size() }
+        }
+
+        return count
+    }
+
+    private static long countBatch(Path path) {
+        long count = 0
+        RowBatch batch = new RowBatch(1024)
+
+        new DelimitedRowReader(Files.newInputStream(path), DelimitedFormat.CSV).withCloseable { reader ->
+            while (reader.readBatch(batch)) {
+                for (int row = 0; row < batch.size(); ++row) {
+                    count += batch.width(row)
+                }
+            }
+        }
+
+        return count
+    }
+
+    private static long writeOpencsv(int rows) {
+        new CSVWriter(new OutputStreamWriter(new NullOutputStream(), StandardCharsets.UTF_8)).withCloseable { CSVWriter writer ->
+            for (int i = 0; i < rows; ++i) {
+                writer.writeNext([
+                    Long.toString(i), "name ${i}".toString(), 'a "quoted", comma-separated description',
+                    Double.toString(i * 0.25d), '2018-10-01'
+                ] as String[])
+            }
+        }
+
+        return rows * 5L
+    }
+
+    private static long writeRows(int rows) {
+        new DelimitedRowWriter(new NullOutputStream(), DelimitedFormat.CSV).withCloseable { writer ->
+            for (int i = 0; i < rows; ++i) {
+                writer.write([
+                    Variant.of((long) i), Variant.of("name ${i}".toString()),
+                    Variant.of('a "quoted", comma-separated description'), Variant.of(i * 0.25d),
+                    Variant.of('2018-10-01')
+                ])
+            }
+        }
+
+        return rows * 5L
+    }
+
+    private static long writeBatches(int rows) {
+        RowBatch batch = new RowBatch(1024)
+
+        new DelimitedRowWriter(new NullOutputStream(), DelimitedFormat.CSV).withCloseable { writer ->
+            for (int i = 0; i < rows; ++i) {
+                int row = batch.addRow(0, i)
+                batch.setLong(row, 0, i)
+                batch.setString(row, 1, "name ${i}".toString())
+                batch.setString(row, 2, 'a "quoted", comma-separated description')
+                batch.setDouble(row, 3, i * 0.25d)
+                batch.setString(row, 4, '2018-10-01')
+
+                if (batch.isFull()) {
+                    writer.writeBatch(batch)
+                    batch.clear()
+                }
+            }
+
+            writer.writeBatch(batch)
+        }
+
+        return rows * 5L
+    }
+
+    private static void time(String name, Closure<Long> closure) {
+        long start = System.nanoTime()
+        long cells = closure.call()
+        long millis = (System.nanoTime() - start).intdiv(1_000_000L) as long
+
+        println(String.format("%-20s %6d ms  (%d cells)", name, millis, cells))
+    }
+}
@@ -0,0 +1,142 @@
+import com.widen.tabitha.Variant
+import com.widen.tabitha.plugins.excel.XLSRowReader
+import com.widen.tabitha.plugins.excel.XLSRowWriter
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.RowBatch
+import groovy.transform.CompileStatic
+import org.apache.poi.hssf.record.CellValueRecordInterface
+import org.apache.poi.hssf.record.LabelSSTRecord
+import org.apache.poi.hssf.record.MulBlankRecord
+import org.apache.poi.hssf.record.MulRKRecord
+import org.apache.poi.hssf.record.Record
+import org.apache.poi.hssf.record.RecordFactory
+import org.apache.poi.hssf.record.RecordFactoryInputStream
+import org.apache.poi.hssf.record.SSTRecord
+import org.apache.poi.hssf.usermodel.HSSFWorkbook
+import org.apache.poi.poifs.filesystem.POIFSFileSystem
+import org.apache.poi.ss.usermodel.Row
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Compare the throughput of reading a generated XLS file with POI, both through its record stream the way the
+ * previous XLS reader did and through its user model, against the XLS row reader.
+ *
+ * Pass the number of rows to generate as the first argument. Rows past 65,536 are written to further sheets.
+ */
+@CompileStatic
+class XLSBenchmark {
+    static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000
+        Path path = Files.createTempFile("tabitha-benchmark", ".xls")
+
+        try {
+            generate(path, rows)
+            println("Input: ${rows} rows, ${Files.size(path) >> 20} MiB")
+
+            3.times {
+                time("POI records") { countRecords(path) }
+                time("POI usermodel") { countUsermodel(path) }
+                time("read") { countRead(path, new ReaderOptions()) }
+                time("read (reuse rows)") { countRead(path, new ReaderOptions().withReuseRows(true)) }
+                time("readBatch") { countBatch(path) }
+            }
+        }
+        finally {
+            Files.delete(path)
+        }
+    }
+
+    private static void generate(Path path, int rows) {
+        XLSRowWriter.open(path).withCloseable { writer ->
+            for (int i = 0; i < rows; ++i) {
+                writer.write([
+                    Variant.of((long) i), Variant.of("name ${i % 1000}".toString()),
+                    Variant.of('a shared description'), Variant.of(i * 0.25d), Variant.of(i % 2 == 0)
+                ])
+            }
+        }
+    }
+
+    // Read cell records the way the previous reader did, expanding MULRK and MULBLANK records and looking up shared
+    // strings.
+    private static long countRecords(Path path) {
+        long count = 0
+
+        new POIFSFileSystem(path.toFile(), true).withCloseable { POIFSFileSystem fileSystem ->
+            def records = new RecordFactoryInputStream(fileSystem.createDocumentInputStream("Workbook"), false)
+            SSTRecord stringTable = null
+            Record record
+
+            while ((record = records.nextRecord()) != null) {
+                if (record instanceof SSTRecord) {
+                    stringTable = (SSTRecord) record
+                }
+                else if (record instanceof MulRKRecord) {
+                    count += RecordFactory.convertRKRecords((MulRKRecord) record).length
+                }
+                else if (record instanceof MulBlankRecord) {
+                    count += RecordFactory.convertBlankRecords((MulBlankRecord) record).length
+                }
+                else if (record instanceof LabelSSTRecord) {
+                    if (stringTable.getString(((LabelSSTRecord) record).SSTIndex).string != null) {
+                        ++count
+                    }
+                }
+                else if (record instanceof CellValueRecordInterface) {
+                    ++count
+                }
+            }
+        }
+
+        return count
+    }
+
+    private static long countUsermodel(Path path) {
+        long count = 0
+
+        new HSSFWorkbook(new POIFSFileSystem(path.toFile(), true)).withCloseable { HSSFWorkbook workbook ->
+            for (int sheet = 0; sheet < workbook.numberOfSheets; ++sheet) {
+                for (Row row : workbook.getSheetAt(sheet)) {
+                    count += row.physicalNumberOfCells
+                }
+            }
+        }
+
+        return count
+    }
+
+    private static long countRead(Path path, ReaderOptions options) {
+        long count = 0
+
+        XLSRowReader.open(path, options).withCloseable { reader ->
+            reader.forEach { row -> count += row.size() }
+        }
+
+        return count
+    }
+
+    private static long countBatch(Path path) {
+        long count = 0
+        RowBatch batch = new RowBatch(1024)
+
+        XLSRowReader.open(path, new ReaderOptions()).withCloseable { reader ->
+            while (reader.readBatch(batch)) {
+                for (int row = 0; row < batch.size(); ++row) {
+                    count += batch.width(row)
+                }
+            }
+        }
+
+        return count
+    }
+
+    private static void time(String name, Closure<Long> closure) {
+        long start = System.nanoTime()
+        long cells = closure.call()
+        long millis = (System.nanoTime() - start).intdiv(1_000_000L) as long
+
+        println(String.format("%-20s %6d ms  (%d cells)", name, millis, cells))
+    }
+}
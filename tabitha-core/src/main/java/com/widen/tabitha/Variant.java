@@ -255,6 +255,15 @@ public abstract class Variant {
             this.value = value;
         }
 
+        /**
+         * Get the integer value without boxing it.
+         *
+         * @return The integer value.
+         */
+        public long value() {
+            return value;
+        }
+
         @Override
         public Optional<Long> getInteger() {
             return Optional.of(value);
@@ -298,6 +307,15 @@ public abstract class Variant {
             this.value = value;
         }
 
+        /**
+         * Get the float value without boxing it.
+         *
+         * @return The float value.
+         */
+        public double value() {
+            return value;
+        }
+
         @Override
         public Optional<Double> getFloat() {
             return Optional.of(value);
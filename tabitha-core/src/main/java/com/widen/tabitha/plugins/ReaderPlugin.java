@@ -1,5 +1,7 @@
 package com.widen.tabitha.plugins;
 
+import com.widen.tabitha.reader.MappedInputStream;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.RowReader;
 
@@ -7,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Provides factory methods for creating readers of a particular format.
@@ -14,6 +17,9 @@ import java.nio.file.Path;
 public interface ReaderPlugin extends Plugin {
     /**
      * Create a row reader for a file at the given path.
+     * <p>
+     * By default the file is opened as a stream and passed to {@link #createReader(InputStream, ReaderOptions)}, as a
+     * {@link MappedInputStream} if {@link ReaderOptions#isMemoryMapped()} is enabled.
      *
      * @param path The path of the file to read.
      * @param options Options to pass to the reader.
@@ -21,6 +27,10 @@ public interface ReaderPlugin extends Plugin {
      * @throws IOException if an I/O error occurs.
      */
     default RowReader createReader(Path path, ReaderOptions options) throws IOException {
+        if (options != null && options.isMemoryMapped()) {
+            return createReader(new MappedInputStream(path), options);
+        }
+
         return createReader(Files.newInputStream(path), options);
     }
 
@@ -33,4 +43,50 @@ public interface ReaderPlugin extends Plugin {
      * @throws IOException if an I/O error occurs.
      */
     RowReader createReader(InputStream inputStream, ReaderOptions options) throws IOException;
+
+    /**
+     * Find the number of rows and columns in each page of a file at the given path, without decoding any cell values if
+     * the format allows it.
+     * <p>
+     * By default the file is opened as a stream and passed to {@link #inspect(InputStream, ReaderOptions)}.
+     *
+     * @param path The path of the file to inspect.
+     * @param options Options that affect which pages and rows are read.
+     * @return The stats of each page, in order.
+     * @throws IOException if an I/O error occurs.
+     */
+    default List<PageStats> inspect(Path path, ReaderOptions options) throws IOException {
+        try (InputStream inputStream = options != null && options.isMemoryMapped()
+            ? new MappedInputStream(path)
+            : Files.newInputStream(path)) {
+            return inspect(inputStream, options);
+        }
+    }
+
+    /**
+     * Find the number of rows and columns in each page of an input stream, without decoding any cell values if the
+     * format allows it.
+     * <p>
+     * Only the page selection and hidden row options apply; every row and column of a selected page is counted. By
+     * default every row is read with a reader from {@link #createReader(InputStream, ReaderOptions)} and counted, which
+     * formats with a cheaper way of finding the size of their pages should override.
+     *
+     * @param inputStream The input stream to inspect.
+     * @param options Options that affect which pages and rows are read.
+     * @return The stats of each page, in order.
+     * @throws IOException if an I/O error occurs.
+     */
+    default List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        ReaderOptions countOptions = (options != null ? options : new ReaderOptions())
+            .withInlineHeaders(false)
+            .withReuseRows(true)
+            .withColumnIndexes(null)
+            .withColumnNames(null)
+            .withRowOffset(0)
+            .withRowLimit(-1);
+
+        try (RowReader reader = createReader(inputStream, countOptions)) {
+            return PageStats.count(reader);
+        }
+    }
 }
@@ -11,6 +11,7 @@ public class BlankRowReader implements RowReader {
     private long pageIndex = -1;
     private long index = 0;
     private Row nextRow;
+    private MutableRow blankRow;
 
     BlankRowReader(RowReader inner) {
         this.inner = inner;
@@ -40,10 +41,32 @@ public class BlankRowReader implements RowReader {
             index++;
             Row row = nextRow;
             nextRow = null;
+
+            if (row instanceof MutableRow) {
+                return ((MutableRow) row).asOptional();
+            }
+
             return Optional.of(row);
         }
 
+        // If the inner reader is reusing rows, then reuse blank rows too. The inner row is not touched until it is
+        // returned, so it is safe to hold on to until then.
+        if (nextRow instanceof MutableRow) {
+            if (blankRow == null) {
+                blankRow = new MutableRow();
+            }
+
+            blankRow.begin(pageIndex, index++);
+            blankRow.end();
+            return blankRow.asOptional();
+        }
+
         // Return a blank "padding" row.
         return Optional.of(Row.blank(pageIndex, index++));
     }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
 }
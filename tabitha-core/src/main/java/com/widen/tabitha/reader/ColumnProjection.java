@@ -0,0 +1,134 @@
+package com.widen.tabitha.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The columns of a page selected by {@link ReaderOptions#getColumnIndexes()} and
+ * {@link ReaderOptions#getColumnNames()}, which readers use to skip the cells of other columns without decoding them.
+ * <p>
+ * Projected rows only contain the selected columns, in their original order. Each selected column is moved to its
+ * position among the selected columns, so that a projected header row still lines up with the rows after it.
+ * <p>
+ * Columns selected by name are found in the first row of a page, which readers pass to {@link #withHeader(Iterable)}
+ * to resolve the projection for that page. Projections are immutable, so a resolved projection can be shared between
+ * threads.
+ */
+public final class ColumnProjection {
+    private final Set<Integer> indexes;
+    private final Set<String> names;
+    private final boolean resolved;
+
+    // The position of each source column in a projected row, or -1 if the column is not selected.
+    private final int[] positions;
+
+    /**
+     * Get the column projection for the given reader options.
+     *
+     * @param options The reader options, which may be null.
+     * @return The projection, or null if every column should be read.
+     */
+    public static ColumnProjection of(ReaderOptions options) {
+        if (options == null || options.getColumnIndexes() == null && options.getColumnNames() == null) {
+            return null;
+        }
+
+        Set<Integer> indexes = options.getColumnIndexes() != null
+            ? options.getColumnIndexes()
+            : Collections.emptySet();
+        Set<String> names = options.getColumnNames() != null
+            ? options.getColumnNames()
+            : Collections.emptySet();
+
+        for (Integer index : indexes) {
+            if (index == null || index < 0) {
+                throw new IllegalArgumentException("Invalid column index: " + index);
+            }
+        }
+
+        return new ColumnProjection(indexes, names, names.isEmpty(), Collections.emptyList());
+    }
+
+    private ColumnProjection(Set<Integer> indexes, Set<String> names, boolean resolved, List<String> header) {
+        this.indexes = indexes;
+        this.names = names;
+        this.resolved = resolved;
+
+        int length = header.size();
+
+        for (int index : indexes) {
+            length = Math.max(length, index + 1);
+        }
+
+        positions = new int[length];
+        int next = 0;
+
+        for (int column = 0; column < length; ++column) {
+            boolean selected = indexes.contains(column)
+                || column < header.size() && header.get(column) != null && names.contains(header.get(column));
+
+            positions[column] = selected ? next++ : -1;
+        }
+    }
+
+    /**
+     * Check whether columns are selected by name, and so the projection must be resolved against the first row of each
+     * page with {@link #withHeader(Iterable)} before it can be used.
+     */
+    public boolean needsHeader() {
+        return !resolved;
+    }
+
+    /**
+     * Resolve the columns selected by name against the column names of a page.
+     *
+     * @param header The column names of the page, which may contain nulls for unnamed columns.
+     * @return The resolved projection.
+     */
+    public ColumnProjection withHeader(Iterable<String> header) {
+        List<String> list = new ArrayList<>();
+        header.forEach(list::add);
+
+        return new ColumnProjection(indexes, names, true, list);
+    }
+
+    /**
+     * Get the position of a column in projected rows.
+     *
+     * @param column The index of the column in the source.
+     * @return The position of the column, or -1 if the column is not selected.
+     */
+    public int position(int column) {
+        return column >= 0 && column < positions.length ? positions[column] : -1;
+    }
+
+    /**
+     * Check whether a column is selected, for formats where each row has its own column names. The column positions of
+     * such rows are not known ahead of time, so this does not need the projection to be resolved.
+     *
+     * @param column The index of the column in the source.
+     * @param name The name of the column, if it has one.
+     * @return True if the column is selected.
+     */
+    public boolean isSelected(int column, String name) {
+        return indexes.contains(column) || name != null && names.contains(name);
+    }
+
+    /**
+     * Get the number of cells in the projection of a row.
+     *
+     * @param columns The number of cells in the source row.
+     * @return The number of cells in the projected row.
+     */
+    public int size(int columns) {
+        for (int column = Math.min(columns, positions.length) - 1; column >= 0; --column) {
+            if (positions[column] >= 0) {
+                return positions[column] + 1;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -18,9 +18,41 @@ public class IndexNormalizerReader implements RowReader {
 
     @Override
     public Optional<Row> read() throws IOException {
-        return inner.read().map(row -> {
-            if (row.pageIndex() != lastPage) {
-                lastPage = row.pageIndex();
+        Optional<Row> row = inner.read();
+
+        if (!row.isPresent()) {
+            return row;
+        }
+
+        if (row.get().pageIndex() != lastPage) {
+            lastPage = row.get().pageIndex();
+            pageIndex++;
+            index = 0;
+        }
+        else {
+            index++;
+        }
+
+        // Reused rows are updated in place instead of being copied.
+        if (row.get() instanceof MutableRow) {
+            MutableRow mutableRow = (MutableRow) row.get();
+            mutableRow.setPageIndex(pageIndex);
+            mutableRow.setIndex(index);
+            return row;
+        }
+
+        return Optional.of(row.get().withPageIndex(pageIndex).withIndex(index));
+    }
+
+    @Override
+    public boolean readBatch(RowBatch batch) throws IOException {
+        if (!inner.readBatch(batch)) {
+            return false;
+        }
+
+        for (int row = 0; row < batch.size(); ++row) {
+            if (batch.pageIndex(row) != lastPage) {
+                lastPage = batch.pageIndex(row);
                 pageIndex++;
                 index = 0;
             }
@@ -28,7 +60,15 @@ public class IndexNormalizerReader implements RowReader {
                 index++;
             }
 
-            return row.withPageIndex(pageIndex).withIndex(index);
-        });
+            batch.setPageIndex(row, pageIndex);
+            batch.setIndex(row, index);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
     }
 }
@@ -1,13 +1,18 @@
 package com.widen.tabitha.reader;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * Decorates another reader, interpreting the first row of each page of data as the header for subsequent rows.
+ * <p>
+ * Rows from different pages may be interleaved, as long as the rows of each page are in order.
  */
 public class InlineHeaderReader implements RowReader {
     private final RowReader inner;
+    private final Map<Long, Header> headers = new HashMap<>();
     private Header currentHeader;
     private long currentPage = -1;
 
@@ -31,20 +36,64 @@ public class InlineHeaderReader implements RowReader {
                 return Optional.empty();
             }
 
-            long page = row.get().pageIndex();
-
-            if (page != currentPage) {
-                currentHeader = null;
-            }
-
-            currentPage = page;
+            setPage(row.get().pageIndex());
 
             if (currentHeader == null) {
-                currentHeader = Header.fromRow(row.get());
+                setHeader(Header.fromRow(row.get()));
                 continue;
             }
 
+            // Reused rows are updated in place instead of being copied.
+            if (row.get() instanceof MutableRow) {
+                ((MutableRow) row.get()).setHeader(currentHeader);
+                return row;
+            }
+
             return row.map(r -> r.withHeader(currentHeader));
         }
     }
+
+    @Override
+    public boolean readBatch(RowBatch batch) throws IOException {
+        while (inner.readBatch(batch)) {
+            int row = 0;
+
+            while (row < batch.size()) {
+                setPage(batch.pageIndex(row));
+
+                if (currentHeader == null) {
+                    setHeader(Header.fromRow(batch.row(row)));
+                    batch.removeRow(row);
+                    continue;
+                }
+
+                batch.setHeader(row++, currentHeader);
+            }
+
+            // The batch may have contained nothing but header rows.
+            if (!batch.isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
+
+    // Switch to the header of the given page, if it has one yet.
+    private void setPage(long page) {
+        if (page != currentPage) {
+            currentPage = page;
+            currentHeader = headers.get(page);
+        }
+    }
+
+    private void setHeader(Header header) {
+        currentHeader = header;
+        headers.put(currentPage, header);
+    }
 }
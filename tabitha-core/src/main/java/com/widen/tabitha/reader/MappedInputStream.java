@@ -0,0 +1,282 @@
+package com.widen.tabitha.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An input stream that reads a file by mapping it into memory.
+ * <p>
+ * The file is mapped in windows of a fixed size, so files of any size can be read, including files larger than the
+ * 2 GB limit of a single mapping. Readers that know about this class can consume the mapped windows directly with
+ * {@link #buffer()} instead of copying the file contents through a heap buffer, and text can be decoded directly from
+ * the mapped windows with {@link #newReader(Charset)}.
+ * <p>
+ * Used by {@link com.widen.tabitha.plugins.ReaderPlugin#createReader(Path, ReaderOptions)} when
+ * {@link ReaderOptions#isMemoryMapped()} is enabled.
+ */
+public class MappedInputStream extends InputStream {
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    // Large enough to hold any single encoded character.
+    private static final int MIN_READER_WINDOW_SIZE = 16;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    // The currently mapped window and its position in the file. The stream position is the window position.
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private long markPosition;
+
+    /**
+     * Open a file for reading.
+     *
+     * @param path The path of the file to open.
+     * @throws IOException if an I/O error occurs.
+     */
+    public MappedInputStream(Path path) throws IOException {
+        this(path, WINDOW_SIZE);
+    }
+
+    /**
+     * Open a file for reading, using a specific window size.
+     *
+     * @param path The path of the file to open.
+     * @param windowSize The maximum number of bytes to map at once.
+     * @throws IOException if an I/O error occurs.
+     */
+    public MappedInputStream(Path path, int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Get the mapped buffer containing the data at the current stream position, mapping the next window of the file if
+     * the current window has been consumed.
+     * <p>
+     * The buffer position is the stream position, so consuming bytes from the buffer advances the stream. The buffer
+     * must not be used after the stream is read from in any other way.
+     *
+     * @return A buffer with at least one byte remaining, or null if the end of the file has been reached.
+     * @throws IOException if an I/O error occurs.
+     */
+    public ByteBuffer buffer() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return window;
+        }
+
+        return map(position(), windowSize);
+    }
+
+    /**
+     * Get the current position in the file.
+     *
+     * @return The byte offset from the start of the file.
+     */
+    public long position() {
+        return window != null ? windowStart + window.position() : windowStart;
+    }
+
+    /**
+     * Get the size of the file.
+     *
+     * @return The file size in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Create a reader that decodes text directly from the mapped file, starting from the current position.
+     *
+     * @param charset The character encoding of the text.
+     * @return A new reader.
+     */
+    public Reader newReader(Charset charset) {
+        return new MappedReader(charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer buffer = buffer();
+        return buffer != null ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        ByteBuffer buffer = buffer();
+
+        if (buffer == null) {
+            return -1;
+        }
+
+        length = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, length);
+        return length;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long position = position();
+        long target = Math.max(position, Math.min(position + count, size));
+
+        seek(target);
+        return target - position;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(size - position(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        markPosition = position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        seek(markPosition);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapped buffers are unmapped once they are garbage collected.
+        window = null;
+        channel.close();
+    }
+
+    private void seek(long position) {
+        if (window != null && position >= windowStart && position <= windowStart + window.limit()) {
+            window.position((int) (position - windowStart));
+        }
+        else {
+            window = null;
+            windowStart = position;
+        }
+    }
+
+    // Map a new window starting at the given position.
+    private ByteBuffer map(long position, int length) throws IOException {
+        if (position >= size) {
+            return null;
+        }
+
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(length, size - position));
+        windowStart = position;
+        return window;
+    }
+
+    /**
+     * Decodes text straight from the mapped windows.
+     */
+    private class MappedReader extends Reader {
+        private final CharsetDecoder decoder;
+        private boolean flushed;
+
+        // Characters decoded for a read too small to hold them, such as the low half of a surrogate pair.
+        private final char[] pending = new char[2];
+        private int pendingStart;
+        private int pendingEnd;
+
+        MappedReader(CharsetDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (pendingStart < pendingEnd) {
+                int count = Math.min(length, pendingEnd - pendingStart);
+                System.arraycopy(pending, pendingStart, chars, offset, count);
+                pendingStart += count;
+                return count;
+            }
+
+            // A single char cannot hold a supplementary character, so decode into a buffer that can and hand the
+            // characters out one at a time.
+            if (length == 1) {
+                pendingStart = 0;
+                pendingEnd = decode(CharBuffer.wrap(pending));
+
+                if (pendingEnd == 0) {
+                    return -1;
+                }
+
+                chars[offset] = pending[pendingStart++];
+                return 1;
+            }
+
+            int count = decode(CharBuffer.wrap(chars, offset, length));
+            return count > 0 ? count : -1;
+        }
+
+        // Decode at least one character into the output, unless the end of the file is reached. The output must have
+        // room for at least two characters. Returns the number of characters decoded.
+        private int decode(CharBuffer output) throws IOException {
+            int start = output.position();
+
+            while (output.position() == start) {
+                ByteBuffer input = buffer();
+
+                if (input == null) {
+                    // Flush any trailing partial character as a replacement at the end of the file.
+                    if (!flushed) {
+                        decoder.decode(ByteBuffer.allocate(0), output, true);
+                        decoder.flush(output);
+                        flushed = true;
+                    }
+
+                    break;
+                }
+
+                boolean last = windowStart + input.limit() == size;
+                CoderResult result = decoder.decode(input, output, last);
+
+                // A character is split across windows, so map a new window starting with the start of the character.
+                if (result.isUnderflow() && input.hasRemaining() && !last) {
+                    map(position(), Math.max(windowSize, MIN_READER_WINDOW_SIZE));
+                }
+            }
+
+            return output.position() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            MappedInputStream.this.close();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.widen.tabitha.reader;
+
+import com.widen.tabitha.Variant;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A row that a reader reuses for every row it reads, in order to avoid allocating new objects per row.
+ * <p>
+ * Readers only produce mutable rows when {@link ReaderOptions#isReuseRows()} is enabled. A mutable row is only valid
+ * until the next call to {@link RowReader#read()} on the reader that produced it, after which its contents will be
+ * overwritten. Use {@link #copy()} to keep a row for longer. The {@code with*} methods always return an immutable copy.
+ * <p>
+ * A reader fills in a row by calling {@link #begin(long, long)}, setting each cell value, and then calling
+ * {@link #end()}.
+ */
+public final class MutableRow extends Row {
+    private static final Variant[] EMPTY = new Variant[0];
+
+    private Header header;
+    private String pageName;
+    private long pageIndex;
+    private long index;
+    private Variant[] cells = EMPTY;
+
+    private final Optional<Row> optional = Optional.of(this);
+    private final List<Variant> cellsView = new AbstractList<Variant>() {
+        @Override
+        public Variant get(int index) {
+            return cells[index];
+        }
+
+        @Override
+        public int size() {
+            return cells.length;
+        }
+    };
+
+    // Cells of the row being filled in, before its final width is known.
+    private Variant[] buffer = new Variant[16];
+    private int width;
+
+    // Cell arrays are reused for every row of the same width, which is usually all of them.
+    private Variant[][] arraysByWidth = new Variant[16][];
+
+    /**
+     * Create a new empty mutable row.
+     */
+    public MutableRow() {
+        super(null, null, 0, 0, EMPTY);
+    }
+
+    /**
+     * Begin filling in a new row, discarding the previous contents.
+     *
+     * @param pageIndex The page index the row is located at.
+     * @param index The row index the row is located at.
+     */
+    public void begin(long pageIndex, long index) {
+        this.header = null;
+        this.pageName = null;
+        this.pageIndex = pageIndex;
+        this.index = index;
+        width = 0;
+    }
+
+    /**
+     * Set the value of a cell in the row being filled in. Any skipped cells are filled with {@link Variant#NONE}.
+     *
+     * @param column The column index.
+     * @param value The cell value.
+     */
+    public void set(int column, Variant value) {
+        if (column >= buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, column + 1));
+        }
+
+        while (width < column) {
+            buffer[width++] = Variant.NONE;
+        }
+
+        buffer[column] = value;
+
+        if (column >= width) {
+            width = column + 1;
+        }
+    }
+
+    /**
+     * Finish filling in the row, making the cells set since {@link #begin(long, long)} visible.
+     */
+    public void end() {
+        Variant[] array = arrayOfWidth(width);
+        System.arraycopy(buffer, 0, array, 0, width);
+        cells = array;
+    }
+
+    /**
+     * Set the header used by the row.
+     *
+     * @param header The header.
+     */
+    public void setHeader(Header header) {
+        this.header = header;
+    }
+
+    /**
+     * Set the page name the row was found in.
+     *
+     * @param pageName The page name.
+     */
+    public void setPageName(String pageName) {
+        this.pageName = pageName;
+    }
+
+    /**
+     * Set the page index the row was found in.
+     *
+     * @param pageIndex The page index.
+     */
+    public void setPageIndex(long pageIndex) {
+        this.pageIndex = pageIndex;
+    }
+
+    /**
+     * Set the index of the row in the source file.
+     *
+     * @param index The row index.
+     */
+    public void setIndex(long index) {
+        this.index = index;
+    }
+
+    /**
+     * Get this row wrapped in an {@link Optional}. The same optional instance is returned every time.
+     *
+     * @return This row as an optional.
+     */
+    public Optional<Row> asOptional() {
+        return optional;
+    }
+
+    /**
+     * Create an immutable copy of the current contents of this row.
+     *
+     * @return The new row.
+     */
+    public Row copy() {
+        return new Row(header, pageName, pageIndex, index, Arrays.copyOf(cells, cells.length));
+    }
+
+    @Override
+    public int size() {
+        return cells.length;
+    }
+
+    @Override
+    public Optional<Header> header() {
+        return Optional.ofNullable(header);
+    }
+
+    @Override
+    public long index() {
+        return index;
+    }
+
+    @Override
+    public Optional<String> pageName() {
+        return Optional.ofNullable(pageName);
+    }
+
+    @Override
+    public long pageIndex() {
+        return pageIndex;
+    }
+
+    @Override
+    public List<Variant> cells() {
+        return cellsView;
+    }
+
+    @Override
+    public Row withHeader(Header header) {
+        return copy().withHeader(header);
+    }
+
+    @Override
+    public Row withPageName(String pageName) {
+        return copy().withPageName(pageName);
+    }
+
+    @Override
+    public Row withPageIndex(long pageIndex) {
+        return copy().withPageIndex(pageIndex);
+    }
+
+    @Override
+    public Row withIndex(long index) {
+        return copy().withIndex(index);
+    }
+
+    @Override
+    public Row withCells(Variant[] cells) {
+        return copy().withCells(cells);
+    }
+
+    @Override
+    Variant[] cellArray() {
+        return cells;
+    }
+
+    private Variant[] arrayOfWidth(int width) {
+        if (width == 0) {
+            return EMPTY;
+        }
+
+        if (width >= arraysByWidth.length) {
+            arraysByWidth = Arrays.copyOf(arraysByWidth, Math.max(arraysByWidth.length * 2, width + 1));
+        }
+
+        if (arraysByWidth[width] == null) {
+            arraysByWidth[width] = new Variant[width];
+        }
+
+        return arraysByWidth[width];
+    }
+}
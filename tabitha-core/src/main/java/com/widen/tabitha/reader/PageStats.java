@@ -0,0 +1,104 @@
+package com.widen.tabitha.reader;
+
+import lombok.EqualsAndHashCode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The size of a single page of a data source, as found by inspecting it.
+ * <p>
+ * The row count includes the header row of a page, if it has one, and the column count is the number of cells in the
+ * widest row of the page.
+ * <p>
+ * How a page is measured depends on its format. Spreadsheets are measured from the extent that each sheet records for
+ * itself, without decoding any cell values. That extent includes rows and cells that are formatted but empty, so the
+ * stats of a sheet can be larger than what reading it returns, such as when a sheet has formatted rows after its last
+ * value. Other formats are measured by scanning or reading every row, and match what reading returns.
+ */
+@EqualsAndHashCode
+public final class PageStats {
+    private final long index;
+    private final String name;
+    private final long rowCount;
+    private final int columnCount;
+
+    public PageStats(long index, String name, long rowCount, int columnCount) {
+        this.index = index;
+        this.name = name;
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+    }
+
+    /**
+     * Count the rows and columns of each page by reading every row of a reader. This is only for formats that have no
+     * cheaper way of finding the size of their pages.
+     *
+     * @param reader The reader to read from.
+     * @return The stats of each page that has at least one row, in order.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static List<PageStats> count(RowReader reader) throws IOException {
+        List<PageStats> pages = new ArrayList<>();
+        long pageIndex = 0;
+        String pageName = null;
+        long rows = 0;
+        int columns = 0;
+        Optional<Row> row;
+
+        while ((row = reader.read()).isPresent()) {
+            if (rows > 0 && row.get().pageIndex() != pageIndex) {
+                pages.add(new PageStats(pageIndex, pageName, rows, columns));
+                rows = 0;
+                columns = 0;
+            }
+
+            pageIndex = row.get().pageIndex();
+            pageName = row.get().pageName().orElse(null);
+            rows++;
+            columns = Math.max(columns, row.get().size());
+        }
+
+        if (rows > 0) {
+            pages.add(new PageStats(pageIndex, pageName, rows, columns));
+        }
+
+        return pages;
+    }
+
+    /**
+     * Get the index of the page.
+     */
+    public long index() {
+        return index;
+    }
+
+    /**
+     * Get the name of the page, if it has one.
+     */
+    public Optional<String> name() {
+        return Optional.ofNullable(name);
+    }
+
+    /**
+     * Get the number of rows in the page.
+     */
+    public long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the number of columns in the page.
+     */
+    public int columnCount() {
+        return columnCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PageStats(index=" + index + ", name=" + name + ", rowCount=" + rowCount + ", columnCount="
+            + columnCount + ")";
+    }
+}
@@ -0,0 +1,119 @@
+package com.widen.tabitha.reader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Decorates another reader, transforming its rows concurrently on a pool of worker threads while still producing them
+ * in their original order.
+ * <p>
+ * Rows are read from the inner reader and submitted to the pool as long as fewer than the window size of rows are
+ * being transformed or waiting to be produced. Transformed rows are then produced in the order they were read, so a
+ * slow row holds back the rows after it, but never more than the window size of rows are held in memory.
+ */
+public class ParallelMapReader implements RowReader {
+    private final RowReader inner;
+    private final Function<Row, Row> function;
+    private final int window;
+    private final ExecutorService executor;
+
+    // Rows being transformed, in the order they were read.
+    private final ArrayDeque<Future<Row>> pending = new ArrayDeque<>();
+    private boolean innerFinished;
+
+    ParallelMapReader(RowReader inner, Function<Row, Row> function, int threads, int window) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+
+        if (window < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+
+        this.inner = inner;
+        this.function = function;
+        this.window = window;
+
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tabitha-parallel-map");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Optional<Row> read() throws IOException {
+        while (true) {
+            fill();
+
+            Future<Row> next = pending.poll();
+
+            if (next == null) {
+                return Optional.empty();
+            }
+
+            Row row = await(next);
+
+            // Rows transformed to null are skipped.
+            if (row != null) {
+                return Optional.of(row);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<Row> future : pending) {
+            future.cancel(true);
+        }
+
+        pending.clear();
+        executor.shutdownNow();
+        inner.close();
+    }
+
+    // Submit rows to be transformed until the window is full.
+    private void fill() throws IOException {
+        while (!innerFinished && pending.size() < window) {
+            Optional<Row> row = inner.read();
+
+            if (!row.isPresent()) {
+                innerFinished = true;
+                break;
+            }
+
+            // The inner reader will overwrite reused rows while this one is still being transformed.
+            Row input = row.get() instanceof MutableRow ? ((MutableRow) row.get()).copy() : row.get();
+
+            pending.add(executor.submit(() -> function.apply(input)));
+        }
+    }
+
+    private static Row await(Future<Row> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.widen.tabitha.reader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decorates another reader, reading rows from it ahead of time on a background thread.
+ * <p>
+ * Rows are handed from the background thread to the reading thread through a fixed-size ring buffer with a single
+ * producer and a single consumer. Neither thread takes a lock; a thread only parks when the buffer is full or empty.
+ * Reused rows are copied before being buffered.
+ * <p>
+ * Any exception thrown by the inner reader is rethrown by {@link #read()} once all rows read before it have been
+ * consumed. Closing this reader stops the background thread and then closes the inner reader.
+ */
+public class PrefetchingReader implements RowReader {
+    private static final int NOT_STARTED = 0;
+    private static final int RUNNING = 1;
+    private static final int STOPPED = 2;
+
+    private final RowReader inner;
+    private final Row[] buffer;
+    private final int mask;
+
+    // Index of the next row to be read by the consumer and written by the producer.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Threads currently parked waiting on the other side, if any.
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    private final AtomicInteger producerState = new AtomicInteger(NOT_STARTED);
+    private final CountDownLatch producerStopped = new CountDownLatch(1);
+    private volatile boolean finished;
+    private volatile boolean closed;
+    private volatile Throwable error;
+
+    PrefetchingReader(RowReader inner, int capacity, Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.inner = inner;
+
+        // Round up to a power of two so that indexes can be masked instead of divided.
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        buffer = new Row[size];
+        mask = size - 1;
+
+        executor.execute(this::produce);
+    }
+
+    @Override
+    public Optional<Row> read() throws IOException {
+        if (closed) {
+            return Optional.empty();
+        }
+
+        long index = head.get();
+
+        while (index == tail.get()) {
+            if (finished) {
+                // The producer may have added a final row before finishing.
+                if (index != tail.get()) {
+                    break;
+                }
+
+                throwError();
+                return Optional.empty();
+            }
+
+            waitingConsumer = Thread.currentThread();
+
+            if (index == tail.get() && !finished) {
+                LockSupport.park(this);
+            }
+
+            waitingConsumer = null;
+
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        int slot = (int) index & mask;
+        Row row = buffer[slot];
+        buffer[slot] = null;
+        head.set(index + 1);
+
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+
+        return Optional.of(row);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        // If the producer never started, it never will, so the inner reader can be closed right away. Otherwise wait for
+        // it to notice that we are closed, as the inner reader may be in use.
+        if (!producerState.compareAndSet(NOT_STARTED, STOPPED)) {
+            Thread producer = waitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+
+            try {
+                producerStopped.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        inner.close();
+    }
+
+    private void produce() {
+        if (!producerState.compareAndSet(NOT_STARTED, RUNNING)) {
+            return;
+        }
+
+        try {
+            while (!closed) {
+                Optional<Row> row = inner.read();
+
+                if (!row.isPresent()) {
+                    break;
+                }
+
+                // The inner reader will overwrite reused rows while this one is still buffered.
+                if (row.get() instanceof MutableRow) {
+                    row = Optional.of(((MutableRow) row.get()).copy());
+                }
+
+                if (!put(row.get())) {
+                    break;
+                }
+            }
+        }
+        catch (Throwable e) {
+            error = e;
+        }
+        finally {
+            finished = true;
+            producerState.set(STOPPED);
+            producerStopped.countDown();
+
+            Thread consumer = waitingConsumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+
+    // Add a row to the buffer, waiting for space if it is full. Returns false if the reader was closed while waiting.
+    private boolean put(Row row) throws InterruptedIOException {
+        long index = tail.get();
+
+        while (index - head.get() == buffer.length) {
+            if (closed) {
+                return false;
+            }
+
+            waitingProducer = Thread.currentThread();
+
+            if (index - head.get() == buffer.length && !closed) {
+                LockSupport.park(this);
+            }
+
+            waitingProducer = null;
+
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        buffer[(int) index & mask] = row;
+        tail.set(index + 1);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+
+        return true;
+    }
+
+    private void throwError() throws IOException {
+        Throwable e = error;
+
+        if (e == null) {
+            return;
+        }
+
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+
+        throw new IOException(e);
+    }
+}
@@ -5,6 +5,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.experimental.Wither;
 
+import java.util.Set;
+
 @Getter
 @Wither
 @AllArgsConstructor
@@ -26,10 +28,108 @@ public class ReaderOptions {
      */
     private final boolean includeHiddenCells;
 
+    /**
+     * Whether readers should reuse a single {@link MutableRow} for every row read instead of creating a new row each
+     * time. If enabled, each row returned by {@link RowReader#read()} is only valid until the next call to read, and
+     * must be copied with {@link MutableRow#copy()} to be kept any longer. Disabled by default.
+     */
+    private final boolean reuseRows;
+
+    /**
+     * The number of threads to use when reading a file in a format that supports parallel reading, such as CSV files
+     * from the file system or the sheets of an XLSX file. Values less than 2 (the default) read sequentially on the
+     * calling thread.
+     */
+    private final int parallelism;
+
+    /**
+     * Whether rows read in parallel should be produced in their original order. If disabled, rows are produced in
+     * whatever order they finish being read, which can be faster if the order does not matter. For formats with multiple
+     * pages read in parallel, this means rows from different pages may be interleaved. Row and page indexes are the
+     * same either way. Enabled by default.
+     */
+    private final boolean preserveOrder;
+
+    /**
+     * Whether files read from the file system should be memory-mapped with a {@link MappedInputStream} instead of being
+     * read through a stream. Readers that support it then parse the mapped file directly, without copying it through
+     * heap buffers first. Disabled by default.
+     */
+    private final boolean memoryMapped;
+
+    /**
+     * The number of bytes of a stream to hold in memory before spooling it to a temporary file, for readers that need
+     * random access to the whole file when reading from a stream, such as XLS and XLSX. Larger streams are then read
+     * from the file without being buffered on the heap. Negative values (the default) disable spooling, so the entire
+     * stream is buffered in memory. See {@link SpooledInput}.
+     */
+    private final long spoolThreshold;
+
+    /**
+     * The number of decoded shared strings to cache when reading formats that store strings in a shared table, such as
+     * XLSX. Shared strings are kept off the heap and decoded each time they are read, so a cache can help workbooks
+     * that reuse the same strings heavily. Zero (the default) disables the cache.
+     */
+    private final int sharedStringsCacheSize;
+
+    /**
+     * The indexes of the pages to read, or null (the default) to read every page. Readers skip the other pages without
+     * parsing them where the format allows. A page is read if it is selected by either index or name.
+     */
+    private final Set<Long> pageIndexes;
+
+    /**
+     * The names of the pages to read, or null (the default) to read every page. See {@link #getPageIndexes()}.
+     */
+    private final Set<String> pageNames;
+
+    /**
+     * The indexes of the columns to read, or null (the default) to read every column. Rows only contain the selected
+     * columns, in their original order, and readers skip the cells of other columns without decoding them. A column is
+     * read if it is selected by either index or name. See {@link ColumnProjection}.
+     */
+    private final Set<Integer> columnIndexes;
+
+    /**
+     * The names of the columns to read, or null (the default) to read every column. Columns are found by name in the
+     * first row of each page, or in the column names of each row for formats that have them. See
+     * {@link #getColumnIndexes()}.
+     */
+    private final Set<String> columnNames;
+
+    /**
+     * The number of rows to skip before the first row read. Rows are counted across all pages in the order they are
+     * read, and the header row of each page is never skipped or counted if {@link #isInlineHeaders()} is enabled.
+     * Readers skip rows without decoding their cells where the format allows. Zero by default. See {@link RowRange}.
+     */
+    private final long rowOffset;
+
+    /**
+     * The maximum number of rows to read after the offset, counted the same way as {@link #getRowOffset()}. Readers
+     * stop reading the source as soon as the limit is reached. Negative values (the default) read every row.
+     */
+    private final long rowLimit;
+
     /**
      * Create a new {@link ReaderOptions} with the default values set.
      */
     public ReaderOptions() {
-        this(true, false, false);
+        this(true, false, false, false, 1, true, false, -1, 0, null, null, null, null, 0, -1);
+    }
+
+    /**
+     * Check whether a page should be read according to {@link #getPageIndexes()} and {@link #getPageNames()}.
+     *
+     * @param index The index of the page.
+     * @param name The name of the page, if it has one.
+     * @return True if the page is selected.
+     */
+    public boolean isPageSelected(long index, String name) {
+        if (pageIndexes == null && pageNames == null) {
+            return true;
+        }
+
+        return pageIndexes != null && pageIndexes.contains(index)
+            || pageNames != null && name != null && pageNames.contains(name);
     }
 }
@@ -2,7 +2,6 @@ package com.widen.tabitha.reader;
 
 import com.widen.tabitha.Variant;
 import lombok.AllArgsConstructor;
-import lombok.EqualsAndHashCode;
 import lombok.experimental.Wither;
 import org.apache.commons.collections4.iterators.ArrayIterator;
 import org.apache.commons.lang3.tuple.Pair;
@@ -11,6 +10,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -21,10 +21,13 @@ import java.util.stream.Stream;
  * with the requested changes incorporated. This offers several benefits including performance and thread safety, since
  * a deep copy of row data is never required and we can reuse object references everywhere without fear of concurrent
  * modification.
+ * <p>
+ * The one exception is {@link MutableRow}, which readers hand out instead when {@link ReaderOptions#isReuseRows()} is
+ * enabled. It keeps its contents in fields of its own and overrides every accessor, so the fields of this class are
+ * never modified.
  */
 @Wither
 @AllArgsConstructor
-@EqualsAndHashCode
 public class Row implements Iterable<Variant> {
     private final Header header;
     private final String pageName;
@@ -66,7 +69,7 @@ public class Row implements Iterable<Variant> {
      * @return The number of values in the row.
      */
     public int size() {
-        return cells.length;
+        return cellArray().length;
     }
 
     /**
@@ -111,7 +114,7 @@ public class Row implements Iterable<Variant> {
      * @return The cell values.
      */
     public List<Variant> cells() {
-        return Collections.unmodifiableList(Arrays.asList(cells));
+        return Collections.unmodifiableList(Arrays.asList(cellArray()));
     }
 
     /**
@@ -121,6 +124,8 @@ public class Row implements Iterable<Variant> {
      * @return The value for the given column, if the index exists.
      */
     public Optional<Variant> get(int index) {
+        Variant[] cells = cellArray();
+
         if (index >= cells.length) {
             return Optional.empty();
         }
@@ -170,16 +175,50 @@ public class Row implements Iterable<Variant> {
      * @return The new array.
      */
     public Variant[] toArray() {
+        Variant[] cells = cellArray();
         return Arrays.copyOf(cells, cells.length);
     }
 
     @Override
     public Iterator<Variant> iterator() {
-        return new ArrayIterator<>(cells);
+        return new ArrayIterator<>(cellArray());
+    }
+
+    // Rows are compared through their accessors, so that a mutable row equals an immutable copy of itself.
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof Row)) {
+            return false;
+        }
+
+        Row row = (Row) other;
+
+        return pageIndex() == row.pageIndex()
+            && index() == row.index()
+            && Objects.equals(header().orElse(null), row.header().orElse(null))
+            && Objects.equals(pageName().orElse(null), row.pageName().orElse(null))
+            && Arrays.equals(cellArray(), row.cellArray());
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(header().orElse(null), pageName().orElse(null), pageIndex(), index());
+        return result * 31 + Arrays.hashCode(cellArray());
     }
 
     @Override
     public String toString() {
-        return Arrays.toString(cells);
+        return Arrays.toString(cellArray());
+    }
+
+    /**
+     * Get the array holding the cells of the row, which must not be modified.
+     */
+    Variant[] cellArray() {
+        return cells;
     }
 }
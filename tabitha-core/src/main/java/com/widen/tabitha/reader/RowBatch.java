@@ -0,0 +1,694 @@
+package com.widen.tabitha.reader;
+
+import com.widen.tabitha.Variant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Stores a batch of rows in a column-oriented layout.
+ * <p>
+ * Unlike {@link Row}, a batch never boxes its values into {@link Variant} objects. Each column stores its values in
+ * primitive arrays specialized by type, so readers and writers can move large numbers of rows without creating an
+ * object per cell. Batches are mutable and are meant to be reused by calling {@link #clear()} between reads.
+ */
+public class RowBatch implements Iterable<Row> {
+    private final int capacity;
+    private final long[] pageIndexes;
+    private final long[] indexes;
+    private final String[] pageNames;
+    private final Header[] headers;
+    private final int[] widths;
+    private final ArrayList<Column> columns = new ArrayList<>();
+    private int size;
+
+    /**
+     * Create a new empty batch.
+     *
+     * @param capacity The maximum number of rows the batch can hold.
+     */
+    public RowBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be at least 1");
+        }
+
+        this.capacity = capacity;
+        pageIndexes = new long[capacity];
+        indexes = new long[capacity];
+        pageNames = new String[capacity];
+        headers = new Header[capacity];
+        widths = new int[capacity];
+    }
+
+    /**
+     * Get the maximum number of rows the batch can hold.
+     *
+     * @return The batch capacity.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of rows in the batch.
+     *
+     * @return The number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the batch contains no rows.
+     *
+     * @return True if the batch is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Check if the batch has no room for more rows.
+     *
+     * @return True if the batch is full.
+     */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Get the number of columns in the batch, which is the width of the widest row.
+     *
+     * @return The number of columns.
+     */
+    public int columnCount() {
+        return columns.size();
+    }
+
+    /**
+     * Get the vector storing the values of a column.
+     *
+     * @param column The column index.
+     * @return The column vector.
+     */
+    public Column column(int column) {
+        return columns.get(column);
+    }
+
+    /**
+     * Get the number of cells in a row.
+     *
+     * @param row The row position in the batch.
+     * @return The number of cells in the row.
+     */
+    public int width(int row) {
+        checkRow(row);
+        return widths[row];
+    }
+
+    /**
+     * Get the page index a row was found in.
+     *
+     * @param row The row position in the batch.
+     * @return The page index.
+     */
+    public long pageIndex(int row) {
+        checkRow(row);
+        return pageIndexes[row];
+    }
+
+    /**
+     * Get the index of a row in the source file.
+     *
+     * @param row The row position in the batch.
+     * @return The row index.
+     */
+    public long index(int row) {
+        checkRow(row);
+        return indexes[row];
+    }
+
+    /**
+     * Get the page name a row was found in.
+     *
+     * @param row The row position in the batch.
+     * @return The page name.
+     */
+    public Optional<String> pageName(int row) {
+        checkRow(row);
+        return Optional.ofNullable(pageNames[row]);
+    }
+
+    /**
+     * Get the header used by a row, if any.
+     *
+     * @param row The row position in the batch.
+     * @return The header.
+     */
+    public Optional<Header> header(int row) {
+        checkRow(row);
+        return Optional.ofNullable(headers[row]);
+    }
+
+    /**
+     * Get the value of a cell as a variant.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     * @return The cell value.
+     */
+    public Variant get(int row, int column) {
+        checkRow(row);
+
+        if (column >= widths[row]) {
+            return Variant.NONE;
+        }
+
+        return columns.get(column).get(row);
+    }
+
+    /**
+     * Get the cell values of a row from left to right.
+     *
+     * @param row The row position in the batch.
+     * @return The cell values.
+     */
+    public List<Variant> cells(int row) {
+        return Collections.unmodifiableList(Arrays.asList(toArray(row)));
+    }
+
+    /**
+     * Copy a row out of the batch into a standalone {@link Row}.
+     *
+     * @param row The row position in the batch.
+     * @return The new row.
+     */
+    public Row row(int row) {
+        return new Row(headers[row], pageNames[row], pageIndexes[row], indexes[row], toArray(row));
+    }
+
+    /**
+     * Append a new row with no cells to the end of the batch.
+     *
+     * @param pageIndex The page index the row is located at.
+     * @param index The row index the row is located at.
+     * @return The position of the new row in the batch.
+     * @throws IllegalStateException if the batch is full.
+     */
+    public int addRow(long pageIndex, long index) {
+        if (isFull()) {
+            throw new IllegalStateException("Batch is full");
+        }
+
+        int row = size++;
+        pageIndexes[row] = pageIndex;
+        indexes[row] = index;
+        pageNames[row] = null;
+        headers[row] = null;
+        widths[row] = 0;
+
+        for (Column column : columns) {
+            column.present.clear(row);
+        }
+
+        return row;
+    }
+
+    /**
+     * Append a copy of a row to the end of the batch.
+     *
+     * @param row The row to append.
+     * @return The position of the new row in the batch.
+     * @throws IllegalStateException if the batch is full.
+     */
+    public int add(Row row) {
+        int position = addRow(row.pageIndex(), row.index());
+        pageNames[position] = row.pageName().orElse(null);
+        headers[position] = row.header().orElse(null);
+
+        int column = 0;
+        for (Variant cell : row) {
+            set(position, column++, cell);
+        }
+
+        return position;
+    }
+
+    /**
+     * Remove a row from the batch, shifting all subsequent rows up by one position.
+     *
+     * @param row The row position in the batch.
+     */
+    public void removeRow(int row) {
+        checkRow(row);
+
+        int moved = size - row - 1;
+        System.arraycopy(pageIndexes, row + 1, pageIndexes, row, moved);
+        System.arraycopy(indexes, row + 1, indexes, row, moved);
+        System.arraycopy(pageNames, row + 1, pageNames, row, moved);
+        System.arraycopy(headers, row + 1, headers, row, moved);
+        System.arraycopy(widths, row + 1, widths, row, moved);
+
+        for (Column column : columns) {
+            column.shift(row, size);
+        }
+
+        --size;
+        pageNames[size] = null;
+        headers[size] = null;
+    }
+
+    /**
+     * Remove all rows from the batch. Allocated storage is kept so that the batch can be refilled cheaply.
+     */
+    public void clear() {
+        Arrays.fill(pageNames, 0, size, null);
+        Arrays.fill(headers, 0, size, null);
+
+        for (Column column : columns) {
+            column.clear();
+        }
+
+        size = 0;
+    }
+
+    /**
+     * Set the page index of a row.
+     *
+     * @param row The row position in the batch.
+     * @param pageIndex The page index.
+     */
+    public void setPageIndex(int row, long pageIndex) {
+        checkRow(row);
+        pageIndexes[row] = pageIndex;
+    }
+
+    /**
+     * Set the index of a row.
+     *
+     * @param row The row position in the batch.
+     * @param index The row index.
+     */
+    public void setIndex(int row, long index) {
+        checkRow(row);
+        indexes[row] = index;
+    }
+
+    /**
+     * Set the page name of a row.
+     *
+     * @param row The row position in the batch.
+     * @param pageName The page name.
+     */
+    public void setPageName(int row, String pageName) {
+        checkRow(row);
+        pageNames[row] = pageName;
+    }
+
+    /**
+     * Set the header of a row.
+     *
+     * @param row The row position in the batch.
+     * @param header The header.
+     */
+    public void setHeader(int row, Header header) {
+        checkRow(row);
+        headers[row] = header;
+    }
+
+    /**
+     * Set a cell to an empty value.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     */
+    public void setNone(int row, int column) {
+        columnFor(row, column).present.clear(row);
+    }
+
+    /**
+     * Set a cell to a boolean value.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     * @param value The cell value.
+     */
+    public void setBoolean(int row, int column, boolean value) {
+        columnFor(row, column).put(row, Type.BOOL).longs[row] = value ? 1 : 0;
+    }
+
+    /**
+     * Set a cell to an integer value.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     * @param value The cell value.
+     */
+    public void setLong(int row, int column, long value) {
+        columnFor(row, column).put(row, Type.INT).longs[row] = value;
+    }
+
+    /**
+     * Set a cell to a floating-point value.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     * @param value The cell value.
+     */
+    public void setDouble(int row, int column, double value) {
+        columnFor(row, column).put(row, Type.FLOAT).doubles[row] = value;
+    }
+
+    /**
+     * Set a cell to a string value.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     * @param value The cell value. A null value will set the cell to empty.
+     */
+    public void setString(int row, int column, String value) {
+        if (value == null) {
+            setNone(row, column);
+            return;
+        }
+
+        Column vector = columnFor(row, column);
+        int offset = vector.reserve(row, value.length());
+        value.getChars(0, value.length(), vector.chars, offset);
+    }
+
+    /**
+     * Set a cell to a string value copied from a character buffer.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     * @param buffer The buffer containing the string characters.
+     * @param offset The offset of the first character in the buffer.
+     * @param length The number of characters in the string.
+     */
+    public void setString(int row, int column, char[] buffer, int offset, int length) {
+        Column vector = columnFor(row, column);
+        int start = vector.reserve(row, length);
+        System.arraycopy(buffer, offset, vector.chars, start, length);
+    }
+
+    /**
+     * Set a cell from a variant value.
+     *
+     * @param row The row position in the batch.
+     * @param column The column index.
+     * @param value The cell value.
+     */
+    public void set(int row, int column, Variant value) {
+        if (value == null || value.isNone()) {
+            setNone(row, column);
+        }
+        else if (value.getInteger().isPresent()) {
+            setLong(row, column, value.getInteger().get());
+        }
+        else if (value.getFloat().isPresent()) {
+            setDouble(row, column, value.getFloat().get());
+        }
+        else if (value.getBoolean().isPresent()) {
+            setBoolean(row, column, value.getBoolean().get());
+        }
+        else {
+            setString(row, column, value.toString());
+        }
+    }
+
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<Row>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Row next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return row(next++);
+            }
+        };
+    }
+
+    private Variant[] toArray(int row) {
+        checkRow(row);
+        Variant[] cells = new Variant[widths[row]];
+
+        for (int column = 0; column < cells.length; ++column) {
+            cells[column] = columns.get(column).get(row);
+        }
+
+        return cells;
+    }
+
+    // Get the column vector for a cell, creating it if needed, and extend the row width to include the cell.
+    private Column columnFor(int row, int column) {
+        checkRow(row);
+
+        while (columns.size() <= column) {
+            columns.add(new Column(capacity));
+        }
+
+        if (widths[row] <= column) {
+            widths[row] = column + 1;
+        }
+
+        return columns.get(column);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for batch of size " + size);
+        }
+    }
+
+    /**
+     * The data type of a value stored in a column vector.
+     */
+    public enum Type {
+        NONE,
+        BOOL,
+        INT,
+        FLOAT,
+        STRING,
+    }
+
+    /**
+     * Stores the values of a single column for every row in a batch.
+     * <p>
+     * Integer and boolean values are stored in a {@code long[]}, floating-point values in a {@code double[]}, and
+     * strings as offsets into a shared character buffer. Empty cells are tracked in a validity bitmap.
+     */
+    public static final class Column {
+        private static final Type[] TYPES = Type.values();
+
+        private final byte[] types;
+        private final long[] longs;
+        private final double[] doubles;
+        private final int[] stringOffsets;
+        private final int[] stringLengths;
+        private final BitSet present;
+        private char[] chars = new char[64];
+        private int charsLength;
+
+        private Column(int capacity) {
+            types = new byte[capacity];
+            longs = new long[capacity];
+            doubles = new double[capacity];
+            stringOffsets = new int[capacity];
+            stringLengths = new int[capacity];
+            present = new BitSet(capacity);
+        }
+
+        /**
+         * Get the type of the value in a row.
+         *
+         * @param row The row position in the batch.
+         * @return The value type.
+         */
+        public Type type(int row) {
+            return present.get(row) ? TYPES[types[row]] : Type.NONE;
+        }
+
+        /**
+         * Check if the value in a row is empty.
+         *
+         * @param row The row position in the batch.
+         * @return True if the value is empty.
+         */
+        public boolean isNone(int row) {
+            return !present.get(row);
+        }
+
+        /**
+         * Get the value of a boolean cell.
+         *
+         * @param row The row position in the batch.
+         * @return The boolean value.
+         */
+        public boolean getBoolean(int row) {
+            return longs[row] != 0;
+        }
+
+        /**
+         * Get the value of an integer cell.
+         *
+         * @param row The row position in the batch.
+         * @return The integer value.
+         */
+        public long getLong(int row) {
+            return longs[row];
+        }
+
+        /**
+         * Get the value of a floating-point cell.
+         *
+         * @param row The row position in the batch.
+         * @return The floating-point value.
+         */
+        public double getDouble(int row) {
+            return doubles[row];
+        }
+
+        /**
+         * Get the value of a string cell. This creates a new string each time it is called; use
+         * {@link #stringData()} to access the characters directly.
+         *
+         * @param row The row position in the batch.
+         * @return The string value.
+         */
+        public String getString(int row) {
+            return new String(chars, stringOffsets[row], stringLengths[row]);
+        }
+
+        /**
+         * Get the buffer containing the characters of all string cells in this column.
+         * <p>
+         * The buffer may be replaced when more strings are added, so it should not be held on to.
+         *
+         * @return The character buffer.
+         */
+        public char[] stringData() {
+            return chars;
+        }
+
+        /**
+         * Get the offset of a string cell in the {@link #stringData()} buffer.
+         *
+         * @param row The row position in the batch.
+         * @return The offset of the first character.
+         */
+        public int stringOffset(int row) {
+            return stringOffsets[row];
+        }
+
+        /**
+         * Get the length of a string cell in the {@link #stringData()} buffer.
+         *
+         * @param row The row position in the batch.
+         * @return The number of characters.
+         */
+        public int stringLength(int row) {
+            return stringLengths[row];
+        }
+
+        /**
+         * Get the value of a cell as a variant.
+         *
+         * @param row The row position in the batch.
+         * @return The cell value.
+         */
+        public Variant get(int row) {
+            switch (type(row)) {
+                case BOOL:
+                    return Variant.of(getBoolean(row));
+                case INT:
+                    return Variant.of(getLong(row));
+                case FLOAT:
+                    return Variant.of(getDouble(row));
+                case STRING:
+                    return Variant.of(getString(row));
+                default:
+                    return Variant.NONE;
+            }
+        }
+
+        /**
+         * Return a string representation of the value in a row, identical to what {@link Variant#toString()} would
+         * return for the same value.
+         *
+         * @param row The row position in the batch.
+         * @return String equivalent of the value.
+         */
+        public String format(int row) {
+            switch (type(row)) {
+                case BOOL:
+                    return Boolean.toString(getBoolean(row));
+                case INT:
+                    return Long.toString(getLong(row));
+                case FLOAT:
+                    return Double.toString(getDouble(row));
+                case STRING:
+                    return getString(row);
+                default:
+                    return "";
+            }
+        }
+
+        private Column put(int row, Type type) {
+            types[row] = (byte) type.ordinal();
+            present.set(row);
+            return this;
+        }
+
+        // Reserve space in the character buffer for a string value and return its offset.
+        private int reserve(int row, int length) {
+            if (charsLength + length > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsLength + length));
+            }
+
+            int offset = charsLength;
+            charsLength += length;
+            stringOffsets[row] = offset;
+            stringLengths[row] = length;
+            put(row, Type.STRING);
+
+            return offset;
+        }
+
+        // Move the values after the given row up by one position.
+        private void shift(int row, int size) {
+            int moved = size - row - 1;
+            System.arraycopy(types, row + 1, types, row, moved);
+            System.arraycopy(longs, row + 1, longs, row, moved);
+            System.arraycopy(doubles, row + 1, doubles, row, moved);
+            System.arraycopy(stringOffsets, row + 1, stringOffsets, row, moved);
+            System.arraycopy(stringLengths, row + 1, stringLengths, row, moved);
+
+            for (int i = row; i < size - 1; ++i) {
+                present.set(i, present.get(i + 1));
+            }
+
+            present.clear(size - 1);
+        }
+
+        private void clear() {
+            present.clear();
+            charsLength = 0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.widen.tabitha.reader;
+
+/**
+ * Decides which rows to read according to {@link ReaderOptions#getRowOffset()} and {@link ReaderOptions#getRowLimit()}.
+ * <p>
+ * Readers ask for the next action before decoding each row, so that skipped rows are never decoded and reading stops
+ * as soon as the limit is reached. Rows are counted across all pages in the order they are read. If inline headers are
+ * enabled, the first row of each page is always read and is not counted, so that every page read keeps its header.
+ * <p>
+ * A range counts the rows of a single reader, so it is not thread safe.
+ */
+public final class RowRange {
+    private final boolean inlineHeaders;
+    private long skip;
+    private long remaining;
+
+    /**
+     * Get a new row range for the given reader options.
+     *
+     * @param options The reader options, which may be null.
+     * @return The row range, or null if every row should be read.
+     */
+    public static RowRange of(ReaderOptions options) {
+        if (options == null || options.getRowOffset() <= 0 && options.getRowLimit() < 0) {
+            return null;
+        }
+
+        return new RowRange(options.isInlineHeaders(), options.getRowOffset(), options.getRowLimit());
+    }
+
+    private RowRange(boolean inlineHeaders, long offset, long limit) {
+        this.inlineHeaders = inlineHeaders;
+        skip = Math.max(offset, 0);
+        remaining = limit;
+    }
+
+    /**
+     * Check whether the limit has been reached, in which case no more rows should be read.
+     */
+    public boolean isFinished() {
+        return remaining == 0;
+    }
+
+    /**
+     * Decide what to do with the next row.
+     *
+     * @param pageStart Whether the row is the first row read from its page.
+     * @return The action to take.
+     */
+    public Action next(boolean pageStart) {
+        if (remaining == 0) {
+            return Action.STOP;
+        }
+
+        if (inlineHeaders && pageStart) {
+            return Action.READ;
+        }
+
+        if (skip > 0) {
+            skip--;
+            return Action.SKIP;
+        }
+
+        if (remaining > 0) {
+            remaining--;
+        }
+
+        return Action.READ;
+    }
+
+    /**
+     * What a reader should do with a row.
+     */
+    public enum Action {
+        /**
+         * Read the row.
+         */
+        READ,
+
+        /**
+         * Skip the row without decoding it.
+         */
+        SKIP,
+
+        /**
+         * Stop reading, since the limit has been reached.
+         */
+        STOP
+    }
+}
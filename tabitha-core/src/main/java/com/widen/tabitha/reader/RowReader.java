@@ -1,6 +1,5 @@
 package com.widen.tabitha.reader;
 
-import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.disposables.Disposable;
@@ -11,6 +10,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
@@ -118,6 +120,49 @@ public interface RowReader extends Iterable<Row>, Closeable {
      */
     Optional<Row> read() throws IOException;
 
+    /**
+     * Attempt to read up to the given number of rows into a new batch.
+     *
+     * @param maxRows The maximum number of rows to read.
+     * @return The rows read, or an empty {@link Optional} if the end of the reader has been reached.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    default Optional<RowBatch> readBatch(int maxRows) throws IOException {
+        RowBatch batch = new RowBatch(maxRows);
+
+        if (readBatch(batch)) {
+            return Optional.of(batch);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Read rows into an existing batch, up to its capacity, replacing its previous contents.
+     * <p>
+     * Reusing the same batch across calls avoids allocating any per-row or per-cell objects for readers that support
+     * reading batches natively. The default implementation fills the batch one row at a time using {@link #read()}.
+     *
+     * @param batch The batch to read rows into.
+     * @return True if at least one row was read, or false if the end of the reader has been reached.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    default boolean readBatch(RowBatch batch) throws IOException {
+        batch.clear();
+
+        while (!batch.isFull()) {
+            Optional<Row> row = read();
+
+            if (!row.isPresent()) {
+                break;
+            }
+
+            batch.add(row.get());
+        }
+
+        return !batch.isEmpty();
+    }
+
     /**
      * Create a new row reader that emits rows from this reader with its indexes normalized to be sequential.
      * <p>
@@ -140,18 +185,76 @@ public interface RowReader extends Iterable<Row>, Closeable {
         return new BlankRowReader(this);
     }
 
+    /**
+     * Create a new row reader that reads rows from this reader ahead of time on a background thread.
+     * <p>
+     * Rows are read by a task submitted to the given executor, which runs until this reader is exhausted or the
+     * returned reader is closed, so the executor should be able to dedicate a thread to it. Up to the given number of
+     * rows are buffered at once. Errors thrown by this reader are rethrown by the returned reader in order, and closing
+     * the returned reader closes this reader.
+     *
+     * @param capacity The maximum number of rows to read ahead.
+     * @param executor The executor to read rows on.
+     * @return A new row reader.
+     */
+    default RowReader prefetching(int capacity, Executor executor) {
+        return new PrefetchingReader(this, capacity, executor);
+    }
+
+    /**
+     * Create a new row reader that transforms the rows of this reader concurrently, while keeping them in order.
+     * <p>
+     * Rows are transformed by the given function on a pool of worker threads owned by the returned reader, and are
+     * produced in the same order as this reader produces them. At most the given window size of rows are in flight at
+     * once, which caps how much memory is used while waiting for a slow row. Rows transformed to null are skipped.
+     * Closing the returned reader stops the worker threads and closes this reader.
+     * <p>
+     * Unlike {@code rows().parallel()}, this preserves row order, and the returned reader can be written straight to a
+     * {@link com.widen.tabitha.writer.RowWriter} with {@link com.widen.tabitha.writer.RowWriter#writeAll(RowReader)}.
+     *
+     * @param function The function to transform each row with.
+     * @param threads The number of worker threads to use.
+     * @param window The maximum number of rows to have in flight at once.
+     * @return A new row reader.
+     */
+    default RowReader parallelMap(Function<Row, Row> function, int threads, int window) {
+        return new ParallelMapReader(this, function, threads, window);
+    }
+
     /**
      * Convert this reader into a reactive stream of rows.
+     * <p>
+     * Equivalent to {@link #rows(int)} with a prefetch of {@link Flowable#bufferSize()} rows.
      *
      * @return A reactive stream of rows.
      */
     default Flowable<Row> rows() {
-        return Observable.
-            <Row, RowReader>generate(() -> this, (reader, emitter) -> {
+        return rows(Flowable.bufferSize());
+    }
+
+    /**
+     * Convert this reader into a reactive stream of rows.
+     * <p>
+     * Rows are only read as the subscriber requests them, reading ahead of its demand by at most the given number of
+     * rows, so a slow subscriber never causes more than that many rows to be held in memory. Each subscription reads the
+     * remaining rows of this reader, so the stream should only be subscribed to once.
+     *
+     * @param prefetch The maximum number of rows to read ahead of subscriber demand.
+     * @return A reactive stream of rows.
+     */
+    default Flowable<Row> rows(int prefetch) {
+        return Flowable
+            .<Row, RowReader>generate(() -> this, (reader, emitter) -> {
                 try {
                     Optional<Row> row = reader.read();
                     if (row.isPresent()) {
-                        emitter.onNext(row.get());
+                        // Rows may be buffered downstream, so reused rows must be copied.
+                        if (row.get() instanceof MutableRow) {
+                            emitter.onNext(((MutableRow) row.get()).copy());
+                        }
+                        else {
+                            emitter.onNext(row.get());
+                        }
                     }
                     else {
                         emitter.onComplete();
@@ -161,8 +264,7 @@ public interface RowReader extends Iterable<Row>, Closeable {
                     emitter.onError(e);
                 }
             })
-            .toFlowable(BackpressureStrategy.BUFFER)
-            .share();
+            .rebatchRequests(prefetch);
     }
 
     @Override
@@ -170,6 +272,23 @@ public interface RowReader extends Iterable<Row>, Closeable {
         return rows().blockingIterable().iterator();
     }
 
+    /**
+     * Perform an action for each remaining row in this reader.
+     * <p>
+     * Rows are passed to the action directly as they are read, so when row reuse is enabled, no rows are copied.
+     *
+     * @param action The action to perform on each row.
+     */
+    @Override
+    @SneakyThrows
+    default void forEach(Consumer<? super Row> action) {
+        Optional<Row> row;
+
+        while ((row = read()).isPresent()) {
+            action.accept(row.get());
+        }
+    }
+
     // Provide a default close method that does nothing.
     @Override
     default void close() throws IOException {
@@ -9,6 +9,7 @@ import java.io.BufferedInputStream;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * Helper factory methods for creating row readers.
@@ -101,10 +102,130 @@ public class RowReaders {
                 .createReader(rewindableStream, options != null ? options : new ReaderOptions()));
     }
 
+    /**
+     * Open a file at the given path to preview its first rows, with as little setup as possible.
+     *
+     * @param path The file path of the file to open.
+     * @param limit The maximum number of rows to read.
+     * @return A row reader if the file is in a supported format.
+     * @see #preview(Path, long, ReaderOptions)
+     */
+    public static Maybe<RowReader> preview(Path path, long limit) {
+        return preview(path, limit, null);
+    }
+
+    /**
+     * Open a file at the given path to preview its first rows, with as little setup as possible.
+     * <p>
+     * The format is detected from the file name alone if it is recognized, so the file is only inspected when the name
+     * is not enough. The reader reads sequentially on the calling thread and stops after the given number of rows,
+     * counted as described by {@link ReaderOptions#getRowLimit()}.
+     *
+     * @param path The file path of the file to open.
+     * @param limit The maximum number of rows to read.
+     * @param options Options to pass to the reader.
+     * @return A row reader if the file is in a supported format.
+     */
+    public static Maybe<RowReader> preview(Path path, long limit, ReaderOptions options) {
+        ReaderOptions previewOptions = createPreviewOptions(options, limit);
+
+        return Maybe
+            .defer(() -> findPluginByName(path.getFileName() != null ? path.getFileName().toString() : null))
+            .switchIfEmpty(Maybe.fromCallable(() -> tika.detect(path)).flatMap(RowReaders::findPlugin))
+            .map(formatAdapter -> formatAdapter.createReader(path, previewOptions));
+    }
+
+    /**
+     * Open an input stream to preview its first rows, with as little setup as possible.
+     * <p>
+     * The format is detected from the file name alone if it is given and recognized, so the stream is only inspected
+     * when the name is not enough. Otherwise this behaves like {@link #preview(Path, long, ReaderOptions)}.
+     *
+     * @param inputStream The input stream to read.
+     * @param filename The filename associated with the stream, if known.
+     * @param limit The maximum number of rows to read.
+     * @param options Options to pass to the reader.
+     * @return A row reader if the stream is in a supported format.
+     */
+    public static Maybe<RowReader> preview(InputStream inputStream, String filename, long limit, ReaderOptions options) {
+        ReaderOptions previewOptions = createPreviewOptions(options, limit);
+        InputStream rewindableStream = createRewindableInputStream(inputStream);
+
+        return Maybe
+            .defer(() -> findPluginByName(filename))
+            .switchIfEmpty(Maybe
+                .fromCallable(() -> tika.detect(rewindableStream, filename))
+                .flatMap(RowReaders::findPlugin))
+            .map(formatAdapter -> formatAdapter.createReader(rewindableStream, previewOptions));
+    }
+
+    /**
+     * Attempt to detect the format of a file at the given path and find the number of rows and columns in each of its
+     * pages.
+     *
+     * @param path The file path of the file to inspect.
+     * @return The stats of each page if the file is in a supported format.
+     * @see #inspect(Path, ReaderOptions)
+     */
+    public static Maybe<List<PageStats>> inspect(Path path) {
+        return inspect(path, null);
+    }
+
+    /**
+     * Attempt to detect the format of a file at the given path and find the number of rows and columns in each of its
+     * pages.
+     * <p>
+     * This is much cheaper than reading and counting every row, as pages are measured without decoding any cell values
+     * where the format allows it. Only the page selection and hidden row options apply; every row and column of a
+     * selected page is counted, including any header row.
+     *
+     * @param path The file path of the file to inspect.
+     * @param options Options that affect which pages and rows are counted.
+     * @return The stats of each page if the file is in a supported format.
+     */
+    public static Maybe<List<PageStats>> inspect(Path path, ReaderOptions options) {
+        return Maybe
+            .fromCallable(() -> tika.detect(path))
+            .flatMap(RowReaders::findPlugin)
+            .map(formatAdapter -> formatAdapter
+                .inspect(path, options != null ? options : new ReaderOptions()));
+    }
+
+    /**
+     * Attempt to detect the format of an input stream and find the number of rows and columns in each of its pages, as
+     * described by {@link #inspect(Path, ReaderOptions)}.
+     *
+     * @param inputStream The input stream to inspect.
+     * @param filename The filename associated with the stream, if known.
+     * @param options Options that affect which pages and rows are counted.
+     * @return The stats of each page if the stream is in a supported format.
+     */
+    public static Maybe<List<PageStats>> inspect(InputStream inputStream, String filename, ReaderOptions options) {
+        InputStream rewindableStream = createRewindableInputStream(inputStream);
+
+        return Maybe
+            .fromCallable(() -> tika.detect(rewindableStream, filename))
+            .flatMap(RowReaders::findPlugin)
+            .map(formatAdapter -> formatAdapter
+                .inspect(rewindableStream, options != null ? options : new ReaderOptions()));
+    }
+
+    private static ReaderOptions createPreviewOptions(ReaderOptions options, long limit) {
+        // Starting threads costs more than reading a few rows saves.
+        return (options != null ? options : new ReaderOptions())
+            .withRowLimit(limit)
+            .withParallelism(1);
+    }
+
     private static InputStream createRewindableInputStream(InputStream inputStream) {
         return inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
     }
 
+    // Find a plugin for a file name without looking at the contents of the file.
+    private static Maybe<ReaderPlugin> findPluginByName(String filename) {
+        return filename != null ? findPlugin(tika.detect(filename)) : Maybe.empty();
+    }
+
     private static Maybe<ReaderPlugin> findPlugin(String mimeType) {
         return PluginRegistry
             .getReaderPlugins()
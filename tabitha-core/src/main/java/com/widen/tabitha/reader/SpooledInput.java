@@ -0,0 +1,123 @@
+package com.widen.tabitha.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The contents of an input stream, held in memory if small or spooled to a temporary file otherwise.
+ * <p>
+ * Formats such as XLS and XLSX need random access to the whole file, so reading them from a stream normally means
+ * buffering the entire stream on the heap. Spooling large streams to disk instead lets those readers open the file
+ * directly, keeping heap use constant regardless of the size of the stream.
+ * <p>
+ * Closing deletes the temporary file, if one was created.
+ */
+public class SpooledInput implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Arrays cannot be much larger than this on most virtual machines.
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final byte[] bytes;
+    private final int length;
+    private final Path path;
+
+    /**
+     * Read an input stream to the end, spooling it to a temporary file if it is longer than a threshold.
+     * <p>
+     * At most the threshold number of bytes are buffered in memory. The input stream is not closed.
+     *
+     * @param inputStream The stream to read.
+     * @param threshold The maximum number of bytes to hold in memory. Zero always spools to a file.
+     * @return The spooled input.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static SpooledInput spool(InputStream inputStream, long threshold) throws IOException {
+        threshold = Math.min(threshold, MAX_ARRAY_SIZE - 1);
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(threshold, 1))];
+        int length = 0;
+
+        // Buffer in memory until either the stream ends or the threshold is exceeded.
+        while (true) {
+            if (length == buffer.length) {
+                if (length > threshold) {
+                    break;
+                }
+
+                buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, threshold + 1));
+            }
+
+            int read = inputStream.read(buffer, length, buffer.length - length);
+
+            if (read < 0) {
+                return new SpooledInput(buffer, length, null);
+            }
+
+            length += read;
+        }
+
+        Path path = Files.createTempFile("tabitha", ".spool");
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            outputStream.write(buffer, 0, length);
+
+            if (buffer.length < BUFFER_SIZE) {
+                buffer = new byte[BUFFER_SIZE];
+            }
+
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+
+        return new SpooledInput(null, 0, path);
+    }
+
+    private SpooledInput(byte[] bytes, int length, Path path) {
+        this.bytes = bytes;
+        this.length = length;
+        this.path = path;
+    }
+
+    /**
+     * Get the path of the temporary file the stream was spooled to.
+     *
+     * @return The path of the file, or empty if the stream was small enough to be held in memory.
+     */
+    public Optional<Path> getPath() {
+        return Optional.ofNullable(path);
+    }
+
+    /**
+     * Open a new stream that reads the spooled contents from the beginning.
+     *
+     * @return A new input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    public InputStream newInputStream() throws IOException {
+        if (path != null) {
+            return Files.newInputStream(path);
+        }
+
+        return new ByteArrayInputStream(bytes, 0, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (path != null) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
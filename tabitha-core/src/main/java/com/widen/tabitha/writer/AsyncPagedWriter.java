@@ -0,0 +1,32 @@
+package com.widen.tabitha.writer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * An {@link AsyncRowWriter} for a {@link PagedWriter}, which also queues page breaks.
+ * <p>
+ * Pages are begun on the inner writer once all rows written before them have been written. Since page methods cannot
+ * throw checked exceptions, errors from the inner writer are rethrown by them wrapped in an
+ * {@link UncheckedIOException}.
+ */
+public class AsyncPagedWriter extends AsyncRowWriter implements PagedWriter {
+    AsyncPagedWriter(PagedWriter inner, int capacity) {
+        super(inner, capacity);
+    }
+
+    @Override
+    public void beginPage() {
+        beginPage(null);
+    }
+
+    @Override
+    public void beginPage(String name) {
+        try {
+            enqueue(new Command(null, name));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
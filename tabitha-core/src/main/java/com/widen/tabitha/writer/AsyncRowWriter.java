@@ -0,0 +1,196 @@
+package com.widen.tabitha.writer;
+
+import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.MutableRow;
+import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decorates another writer, writing rows to it on a dedicated background thread.
+ * <p>
+ * Rows are queued in a bounded buffer and written to the inner writer in the order they were given. When the buffer is
+ * full, writing blocks until the background thread catches up. If the inner writer throws an exception, it is rethrown
+ * by the next write or by {@link #close()}, and any rows queued after the failure are discarded.
+ * <p>
+ * Closing this writer waits for every queued row to be written and then closes the inner writer. Writers created from a
+ * {@link PagedWriter} are {@link AsyncPagedWriter}s, which queue page breaks along with the rows.
+ */
+public class AsyncRowWriter implements RowWriter {
+    // Marks the end of the queue.
+    private static final Command CLOSE = new Command(null, null);
+
+    private final RowWriter inner;
+    private final BlockingQueue<Command> queue;
+    private final Thread thread;
+    private volatile Throwable error;
+    private boolean closed;
+
+    AsyncRowWriter(RowWriter inner, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.inner = inner;
+        queue = new ArrayBlockingQueue<>(capacity);
+
+        thread = new Thread(this::run, "tabitha-async-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Write a row. The cells are copied, so the list may be reused by the caller once this returns.
+     *
+     * @param cells A list of cell values to be written.
+     * @throws IOException if writing a previous row failed, or if interrupted while waiting for space in the buffer.
+     */
+    @Override
+    public void write(List<Variant> cells) throws IOException {
+        enqueue(new Command(Row.fromArray(0, 0, cells.toArray(new Variant[cells.size()])), null));
+    }
+
+    /**
+     * Write a row. Immutable rows are queued as they are, and only rows that a reader reuses are copied.
+     *
+     * @param row The row to be written.
+     * @throws IOException if writing a previous row failed, or if interrupted while waiting for space in the buffer.
+     */
+    @Override
+    public void write(Row row) throws IOException {
+        enqueue(new Command(row instanceof MutableRow ? ((MutableRow) row).copy() : row, null));
+    }
+
+    @Override
+    public void writeBatch(RowBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); ++row) {
+            enqueue(new Command(batch.row(row), null));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            queue.put(CLOSE);
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        try {
+            inner.close();
+        }
+        catch (IOException | RuntimeException e) {
+            if (error != null) {
+                error.addSuppressed(e);
+            }
+            else {
+                throw e;
+            }
+        }
+
+        throwError();
+    }
+
+    void enqueue(Command command) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+
+        throwError();
+
+        try {
+            queue.put(command);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Command command;
+
+            try {
+                command = queue.take();
+            }
+            catch (InterruptedException e) {
+                error = e;
+                return;
+            }
+
+            if (command == CLOSE) {
+                return;
+            }
+
+            // Keep draining the queue after a failure so that writers blocked on a full buffer are released.
+            if (error != null) {
+                continue;
+            }
+
+            try {
+                if (command.row != null) {
+                    inner.write(command.row);
+                }
+                else if (command.pageName != null) {
+                    ((PagedWriter) inner).beginPage(command.pageName);
+                }
+                else {
+                    ((PagedWriter) inner).beginPage();
+                }
+            }
+            catch (Throwable e) {
+                error = e;
+            }
+        }
+    }
+
+    private void throwError() throws IOException {
+        Throwable e = error;
+
+        if (e == null) {
+            return;
+        }
+
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+
+        throw new IOException(e);
+    }
+
+    /**
+     * A row to write, or a page to begin if there is no row.
+     */
+    static class Command {
+        private final Row row;
+        private final String pageName;
+
+        Command(Row row, String pageName) {
+            this.row = row;
+            this.pageName = pageName;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.widen.tabitha.writer;
 
 import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
 
 import java.io.IOException;
 import java.util.List;
@@ -25,6 +27,20 @@ public interface PagedWriter extends RowWriter {
      */
     void beginPage(String name);
 
+    /**
+     * Create a new paged writer that writes rows to this writer on a dedicated background thread.
+     * <p>
+     * Page breaks are buffered along with rows, and are applied to this writer in the order they were given.
+     *
+     * @param capacity The maximum number of rows and page breaks to buffer.
+     * @return A new paged writer.
+     * @see RowWriter#async(int)
+     */
+    @Override
+    default AsyncPagedWriter async(int capacity) {
+        return new AsyncPagedWriter(this, capacity);
+    }
+
     /**
      * Create a writer that divides up rows written into multiple pages of a given size.
      * <p>
@@ -53,6 +69,30 @@ public interface PagedWriter extends RowWriter {
                 ++currentSize;
             }
 
+            @Override
+            public void write(Row row) throws IOException {
+                if (currentSize >= size) {
+                    PagedWriter.this.beginPage();
+                    currentSize = 0;
+                }
+
+                PagedWriter.this.write(row);
+                ++currentSize;
+            }
+
+            @Override
+            public void writeBatch(RowBatch batch) throws IOException {
+                // Keep the headers of rows that have them.
+                for (int row = 0; row < batch.size(); ++row) {
+                    if (batch.header(row).isPresent()) {
+                        write(batch.row(row));
+                    }
+                    else {
+                        write(batch.cells(row));
+                    }
+                }
+            }
+
             @Override
             public void close() throws IOException {
                 PagedWriter.this.close();
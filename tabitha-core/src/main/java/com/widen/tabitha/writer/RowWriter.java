@@ -1,11 +1,15 @@
 package com.widen.tabitha.writer;
 
 import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.reader.RowReader;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Writes data rows to an output.
@@ -37,6 +41,82 @@ public interface RowWriter extends Closeable {
         write(Arrays.asList(cells));
     }
 
+    /**
+     * Writes a row to the output.
+     * <p>
+     * The default implementation writes the cells of the row using {@link #write(List)}. Writers for formats that name
+     * each value, rather than writing a header row, should override this to use the header of the row.
+     *
+     * @param row The row to be written.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    default void write(Row row) throws IOException {
+        write(row.cells());
+    }
+
+    /**
+     * Writes all rows in a batch to the output, in order.
+     * <p>
+     * The default implementation writes each row individually using {@link #write(List)}. Writers that can consume
+     * column vectors directly should override this to avoid creating {@link Variant} objects for every cell.
+     *
+     * @param batch The batch of rows to be written.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    default void writeBatch(RowBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); ++row) {
+            write(batch.cells(row));
+        }
+    }
+
+    /**
+     * Writes all remaining rows from a reader to the output, in order.
+     * <p>
+     * If this writer is a {@link PagedWriter}, the pages of the reader are kept: a new page is begun whenever the page
+     * index of a row differs from the row before it, using the page name of the row if it has one. The first row only
+     * begins a page if it has a page name, so that rows can be appended to a page begun before calling this. Other
+     * writers merge the rows of every page together.
+     *
+     * @param reader The reader to read rows from.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    default void writeAll(RowReader reader) throws IOException {
+        PagedWriter pagedWriter = this instanceof PagedWriter ? (PagedWriter) this : null;
+        Optional<Row> row;
+        long pageIndex = -1;
+
+        while ((row = reader.read()).isPresent()) {
+            if (pagedWriter != null && row.get().pageIndex() != pageIndex) {
+                Optional<String> pageName = row.get().pageName();
+
+                if (pageName.isPresent()) {
+                    pagedWriter.beginPage(pageName.get());
+                }
+                else if (pageIndex != -1) {
+                    pagedWriter.beginPage();
+                }
+
+                pageIndex = row.get().pageIndex();
+            }
+
+            write(row.get());
+        }
+    }
+
+    /**
+     * Create a new row writer that writes rows to this writer on a dedicated background thread.
+     * <p>
+     * Up to the given number of rows are buffered at once, after which writing blocks until the background thread
+     * catches up. Errors thrown by this writer are rethrown by the next write to the returned writer, and closing the
+     * returned writer waits for all buffered rows to be written before closing this writer.
+     *
+     * @param capacity The maximum number of rows to buffer.
+     * @return A new row writer.
+     */
+    default AsyncRowWriter async(int capacity) {
+        return new AsyncRowWriter(this, capacity);
+    }
+
     // Provide a default close method that does nothing.
     @Override
     default void close() throws IOException {
@@ -0,0 +1,164 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.reader.Header
+import com.widen.tabitha.reader.MutableRow
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.writer.PagedWriter
+import com.widen.tabitha.writer.RowWriter
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class AsyncRowWriterTest extends Specification {
+    def "rows and pages are written in order"() {
+        setup:
+        def written = Collections.synchronizedList([])
+        def inner = new PagedWriter() {
+            void beginPage() { written << 'page' }
+            void beginPage(String name) { written << "page $name".toString() }
+            void write(List<Variant> cells) { written << cells[0].toString() }
+        }
+
+        when:
+        inner.async(2).withCloseable { writer ->
+            writer.write(Variant.of('a'))
+            writer.beginPage('second')
+            100.times { writer.write(Variant.of(it as long)) }
+            writer.beginPage()
+            writer.write(Variant.of('z'))
+        }
+
+        then:
+        written == ['a', 'page second'] + (0..99)*.toString() + ['page', 'z']
+    }
+
+    def "writes block while the buffer is full"() {
+        setup:
+        def release = new CountDownLatch(1)
+        def inner = Spy(RowWriter) {
+            write(_) >> { release.await() }
+        }
+        def writer = inner.async(1)
+        def writes = new CountDownLatch(3)
+
+        when:
+        Thread.start {
+            3.times {
+                writer.write(Variant.of(it as long))
+                writes.countDown()
+            }
+        }
+
+        then:
+        !writes.await(200, TimeUnit.MILLISECONDS)
+        writes.count == 1
+
+        when:
+        release.countDown()
+        writer.close()
+
+        then:
+        writes.await(1, TimeUnit.SECONDS)
+        3 * inner.write(_)
+    }
+
+    def "errors are rethrown by the next write and by close"() {
+        setup:
+        def failure = new IOException('disk full')
+        def inner = Spy(RowWriter) {
+            write(_) >> { throw failure }
+        }
+        def writer = inner.async(4)
+
+        when:
+        writer.write(Variant.of('a'))
+        Thread.sleep(100)
+        writer.write(Variant.of('b'))
+
+        then:
+        def e = thrown(IOException)
+        e.is(failure)
+
+        when:
+        writer.close()
+
+        then:
+        e = thrown(IOException)
+        e.is(failure)
+        1 * inner.close()
+    }
+
+    def "close waits for queued rows"() {
+        setup:
+        def written = []
+        def inner = new RowWriter() {
+            void write(List<Variant> cells) {
+                Thread.sleep(1)
+                written << cells[0]
+            }
+        }
+
+        when:
+        inner.async(16).withCloseable { writer ->
+            50.times { writer.write(Variant.of(it as long)) }
+        }
+
+        then:
+        written == (0..49).collect { Variant.of(it as long) }
+    }
+
+    def "only paged writers get a paged async writer"() {
+        setup:
+        def inner = new PagedWriter() {
+            void beginPage() {}
+            void beginPage(String name) {}
+            void write(List<Variant> cells) {}
+        }
+
+        expect:
+        RowWriter.VOID.async(1).withCloseable { !(it instanceof PagedWriter) }
+        inner.async(1).withCloseable { it instanceof PagedWriter }
+    }
+
+    def "rows from a reused row are copied before being queued"() {
+        setup:
+        def written = Collections.synchronizedList([])
+        def inner = new RowWriter() {
+            void write(List<Variant> cells) { written << cells*.toString() }
+        }
+        def row = new MutableRow()
+
+        when:
+        inner.async(4).withCloseable { writer ->
+            3.times {
+                row.begin(0, it)
+                row.set(0, Variant.of(it as long))
+                row.end()
+                writer.write(row)
+            }
+        }
+
+        then:
+        written == [['0'], ['1'], ['2']]
+    }
+
+    def "rows are passed to the inner writer with their headers"() {
+        setup:
+        def headers = Collections.synchronizedList([])
+        def inner = new RowWriter() {
+            void write(List<Variant> cells) {}
+            void write(Row row) { headers << row.header().orElse(null) }
+        }
+        def header = new Header('a')
+
+        when:
+        inner.async(2).withCloseable { writer ->
+            writer.write(Row.fromArray(0, 0, [Variant.of(1L)] as Variant[]).withHeader(header))
+            writer.write(Variant.of(2L))
+        }
+
+        then:
+        headers == [header, null]
+    }
+}
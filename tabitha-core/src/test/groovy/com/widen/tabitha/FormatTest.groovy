@@ -4,8 +4,10 @@ import com.widen.tabitha.plugins.Plugin
 import com.widen.tabitha.plugins.PluginRegistry
 import com.widen.tabitha.plugins.ReaderPlugin
 import com.widen.tabitha.plugins.WriterPlugin
+import com.widen.tabitha.reader.PageStats
 import com.widen.tabitha.reader.ReaderOptions
 import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowBatch
 import com.widen.tabitha.reader.RowReader
 import spock.lang.Specification
 
@@ -81,6 +83,159 @@ class FormatTest extends Specification {
         plugin << PluginRegistry.readerPlugins.toList().blockingGet()
     }
 
+    def "Batch read matches row read"() {
+        setup:
+        def expectedData = asVariants([
+            [
+                ["Column A", "Column B", "Column C"],
+                ["foo", "Party", "Time"],
+                ["bar", null, "World"],
+                ["baz", "Excel", "10009"],
+            ]
+        ])
+        def file = fixture(plugin as WriterPlugin, expectedData)
+        def rowReader = (plugin as ReaderPlugin).createReader(file, options)
+        def batchReader = (plugin as ReaderPlugin).createReader(file, options)
+
+        when:
+        def rows = rowReader.rows().toList().blockingGet()
+        def batchRows = []
+        def batch = new RowBatch(3)
+        while (batchReader.readBatch(batch)) {
+            batchRows.addAll(batch)
+        }
+
+        then:
+        batchRows == rows
+
+        cleanup:
+        rowReader.close()
+        batchReader.close()
+        Files.delete(file)
+
+        where:
+        plugin << testablePlugins.toList().blockingGet()
+    }
+
+    def "Columns can be projected"() {
+        setup:
+        def file = fixture(plugin as WriterPlugin, asVariants([
+            [
+                ["Column A", "Column B", "Column C"],
+                ["foo", "Party", "Time"],
+                ["bar", null, "World"],
+                ["baz", "Excel", "10009"],
+            ]
+        ]))
+        def projectedOptions = options
+            .withColumnIndexes([2] as Set)
+            .withColumnNames(["Column A"] as Set)
+        def reader = (plugin as ReaderPlugin).createReader(file, projectedOptions)
+
+        when:
+        def actualData = readAllData(reader)
+
+        then:
+        actualData == asVariants([
+            [
+                ["Column A", "Column C"],
+                ["foo", "Time"],
+                ["bar", "World"],
+                ["baz", "10009"],
+            ]
+        ])
+
+        cleanup:
+        reader.close()
+        Files.delete(file)
+
+        where:
+        plugin << testablePlugins.toList().blockingGet()
+    }
+
+    def "Unselected pages are skipped"() {
+        setup:
+        def file = fixture(plugin as WriterPlugin, asVariants([
+            [
+                ["Column A", "Column B", "Column C"],
+                ["foo", "Party", "Time"],
+            ]
+        ]))
+        def reader = (plugin as ReaderPlugin).createReader(file, options.withPageIndexes([1L] as Set))
+
+        when:
+        def actualData = readAllData(reader)
+
+        then:
+        actualData.isEmpty()
+
+        cleanup:
+        reader.close()
+        Files.delete(file)
+
+        where:
+        plugin << testablePlugins.toList().blockingGet()
+    }
+
+    def "Rows can be limited"() {
+        setup:
+        def file = fixture(plugin as WriterPlugin, asVariants([
+            [
+                ["Column A", "Column B", "Column C"],
+                ["foo", "Party", "Time"],
+                ["bar", null, "World"],
+                ["baz", "Excel", "10009"],
+            ]
+        ]))
+        def reader = (plugin as ReaderPlugin).createReader(file, options.withRowOffset(1).withRowLimit(2))
+
+        when:
+        def actualData = readAllData(reader)
+
+        then:
+        actualData == asVariants([
+            [
+                ["foo", "Party", "Time"],
+                ["bar", null, "World"],
+            ]
+        ])
+
+        cleanup:
+        reader.close()
+        Files.delete(file)
+
+        where:
+        plugin << testablePlugins.toList().blockingGet()
+    }
+
+    def "Pages can be inspected"() {
+        setup:
+        def file = fixture(plugin as WriterPlugin, asVariants([
+            [
+                ["Column A", "Column B", "Column C"],
+                ["foo", "Party", "Time"],
+                ["bar", null, "World"],
+                ["baz", "Excel", "10009"],
+            ]
+        ]))
+        def reader = (plugin as ReaderPlugin).createReader(file, options)
+
+        when:
+        def stats = (plugin as ReaderPlugin).inspect(file, options)
+
+        then:
+        stats*.rowCount() == [4L]
+        stats*.columnCount() == [3]
+        stats == PageStats.count(reader)
+
+        cleanup:
+        reader.close()
+        Files.delete(file)
+
+        where:
+        plugin << testablePlugins.toList().blockingGet()
+    }
+
     private static Path fixture(WriterPlugin plugin, List<List<List<Variant>>> pages) {
         def path = Files.createTempFile(null, null)
 
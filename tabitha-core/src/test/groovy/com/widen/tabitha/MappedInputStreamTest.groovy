@@ -0,0 +1,119 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.reader.MappedInputStream
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.RowReaders
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+class MappedInputStreamTest extends Specification {
+    Path path
+
+    def setup() {
+        path = Files.createTempFile("tabitha", ".txt")
+    }
+
+    def cleanup() {
+        Files.delete(path)
+    }
+
+    @Unroll
+    def "read across windows of size #windowSize"() {
+        setup:
+        def bytes = (0..<1000).collect { it as byte } as byte[]
+        path.bytes = bytes
+
+        when:
+        def read = new MappedInputStream(path, windowSize).withCloseable { it.bytes }
+
+        then:
+        read == bytes
+
+        where:
+        windowSize << [1, 3, 64, 1000, 4096]
+    }
+
+    def "skip, mark and reset"() {
+        setup:
+        path.bytes = (0..<100).collect { it as byte } as byte[]
+        def stream = new MappedInputStream(path, 8)
+
+        when:
+        stream.skip(30)
+        stream.mark(0)
+        def first = stream.read()
+        stream.skip(50)
+        def second = stream.read()
+        stream.reset()
+        def third = stream.read()
+
+        then:
+        first == 30
+        second == 81
+        third == 30
+        stream.skip(1000) == 69
+        stream.read() == -1
+
+        cleanup:
+        stream.close()
+    }
+
+    @Unroll
+    def "decode text split across windows of size #windowSize"() {
+        setup:
+        def text = 'caf\u00e9 \ud83d\ude00 \u00fc' * 50
+        path.setText(text, 'UTF-8')
+
+        when:
+        def read = new MappedInputStream(path, windowSize).newReader(StandardCharsets.UTF_8).withCloseable { it.text }
+
+        then:
+        read == text
+
+        where:
+        windowSize << [1, 2, 3, 5, 100]
+    }
+
+    def "decode text one char at a time"() {
+        setup:
+        def text = 'a\ud83d\ude00caf\u00e9\ud83d\ude01'
+        path.setText(text, 'UTF-8')
+        def reader = new MappedInputStream(path, 3).newReader(StandardCharsets.UTF_8)
+        def read = new StringBuilder()
+        int c
+
+        when:
+        while ((c = reader.read()) >= 0) {
+            read << (c as char)
+        }
+
+        then:
+        read.toString() == text
+
+        cleanup:
+        reader.close()
+    }
+
+    def "memory-mapped reading matches stream reading"() {
+        setup:
+        def file = Helpers.getResourceFile(name)
+        def mappedOptions = new ReaderOptions().withMemoryMapped(true)
+
+        when:
+        def rows = RowReaders.open(file).blockingGet().withCloseable { it.rows().toList().blockingGet() }
+        def mappedRows = RowReaders.open(file, mappedOptions).blockingGet().withCloseable {
+            it.rows().toList().blockingGet()
+        }
+
+        then:
+        !rows.isEmpty()
+        mappedRows == rows
+
+        where:
+        name << ["Workbook1.csv", "Workbook1.xls", "Workbook1.xlsx"]
+    }
+}
@@ -1,5 +1,7 @@
 package com.widen.tabitha
 
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowReader
 import com.widen.tabitha.writer.PagedWriter
 import spock.lang.Specification
 
@@ -20,4 +22,26 @@ class PagedWriterTest extends Specification {
         then:
         3 * pagedWriter.beginPage() >> null
     }
+
+    def "write all begins a page for each page of the reader"() {
+        setup:
+        def written = []
+        def writer = new PagedWriter() {
+            void beginPage() { written << 'page' }
+            void beginPage(String name) { written << "page $name".toString() }
+            void write(List<Variant> cells) { written << cells[0].toString() }
+        }
+        def reader = RowReader.from(
+            Row.fromArray(0, 0, [Variant.of('a')] as Variant[]),
+            Row.fromArray(0, 1, [Variant.of('b')] as Variant[]),
+            Row.fromArray(1, 0, [Variant.of('c')] as Variant[]).withPageName('second'),
+            Row.fromArray(2, 0, [Variant.of('d')] as Variant[])
+        )
+
+        when:
+        writer.writeAll(reader)
+
+        then:
+        written == ['a', 'b', 'page second', 'c', 'page', 'd']
+    }
 }
@@ -0,0 +1,80 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.RowReaders
+import org.apache.poi.xssf.streaming.SXSSFWorkbook
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class ParallelXLSXRowReaderTest extends Specification {
+    @Shared
+    Path path
+
+    def setupSpec() {
+        path = Files.createTempFile("tabitha", ".xlsx")
+        def workbook = new SXSSFWorkbook(null, 100, false, true)
+
+        // Sheets of different lengths, so that they finish parsing in a different order than they started.
+        12.times { sheetIndex ->
+            def sheet = workbook.createSheet("Sheet $sheetIndex")
+            def header = sheet.createRow(0)
+            header.createCell(0).setCellValue("name")
+            header.createCell(1).setCellValue("value")
+
+            (((sheetIndex * 7) % 5 + 1) * 1000).times {
+                def row = sheet.createRow(it + 1)
+                row.createCell(0).setCellValue("row $it of $sheetIndex".toString())
+                row.createCell(1).setCellValue(it)
+            }
+        }
+
+        Files.newOutputStream(path).withCloseable {
+            workbook.write(it)
+        }
+        workbook.dispose()
+    }
+
+    def cleanupSpec() {
+        Files.deleteIfExists(path)
+    }
+
+    def "pages are read in order"() {
+        setup:
+        def sequential = read(new ReaderOptions())
+
+        when:
+        def parallel = read(new ReaderOptions().withParallelism(4))
+
+        then:
+        parallel*.cells() == sequential*.cells()
+        parallel*.header() == sequential*.header()
+        parallel*.pageIndex() == sequential*.pageIndex()
+        parallel*.pageName() == sequential*.pageName()
+        parallel*.index() == sequential*.index()
+    }
+
+    def "pages can be interleaved"() {
+        setup:
+        def sequential = read(new ReaderOptions())
+
+        when:
+        def parallel = read(new ReaderOptions().withParallelism(4).withPreserveOrder(false))
+
+        then:
+        parallel.size() == sequential.size()
+        parallel.groupBy { it.pageIndex() }.every { page, rows ->
+            rows*.index() == sequential.findAll { it.pageIndex() == page }*.index() &&
+                rows*.cells() == sequential.findAll { it.pageIndex() == page }*.cells()
+        }
+        parallel.every { it.header().get() == sequential.first().header().get() }
+    }
+
+    private List read(ReaderOptions options) {
+        return RowReaders.open(path, options).blockingGet().withCloseable {
+            it.rows().toList().blockingGet()
+        }
+    }
+}
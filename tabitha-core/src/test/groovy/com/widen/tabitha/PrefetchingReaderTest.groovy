@@ -0,0 +1,106 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowReader
+import com.widen.tabitha.reader.RowReaders
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+class PrefetchingReaderTest extends Specification {
+    ExecutorService executor = Executors.newCachedThreadPool()
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    def "prefetching reads the same rows"() {
+        setup:
+        def file = Helpers.getResourceFile(name)
+        def expected = RowReaders.open(file).blockingGet().withCloseable { it.rows().toList().blockingGet() }
+
+        when:
+        def rows = []
+        RowReaders.open(file, options).blockingGet().prefetching(2, executor).withCloseable { reader ->
+            reader.forEach { rows << it.withHeader(it.header().orElse(null)) }
+        }
+
+        then:
+        rows == expected
+
+        where:
+        [name, options] << [
+            ["Workbook1.csv", "Workbook1.xls", "Workbook1.xlsx"],
+            [new ReaderOptions(), new ReaderOptions().withReuseRows(true)]
+        ].combinations()
+    }
+
+    def "prefetching many rows through a small buffer"() {
+        setup:
+        def index = 0
+        def reader = {
+            index < 10000 ? Optional.of(Row.blank(0, index++)) : Optional.empty()
+        } as RowReader
+
+        when:
+        def indexes = reader.prefetching(3, executor).collect { it.index() }
+
+        then:
+        indexes == (0..<10000).toList()
+    }
+
+    def "errors are thrown after earlier rows"() {
+        setup:
+        def index = 0
+        def reader = {
+            if (index == 5) {
+                throw new IOException("oops")
+            }
+            Optional.of(Row.blank(0, index++))
+        } as RowReader
+        def prefetching = reader.prefetching(16, executor)
+
+        when:
+        def indexes = (0..<5).collect { prefetching.read().get().index() }
+        prefetching.read()
+
+        then:
+        indexes == [0, 1, 2, 3, 4]
+        def e = thrown(IOException)
+        e.message == "oops"
+    }
+
+    def "closing stops reading and closes the inner reader"() {
+        setup:
+        def inner = Spy(RowReader) {
+            read() >> Optional.of(Row.blank(0, 0))
+        }
+        def prefetching = inner.prefetching(4, executor)
+
+        when:
+        prefetching.read()
+        prefetching.close()
+
+        then:
+        1 * inner.close()
+        !prefetching.read().isPresent()
+    }
+
+    def "closing before reading starts closes the inner reader"() {
+        setup:
+        def inner = Spy(RowReader)
+        def tasks = []
+        def prefetching = inner.prefetching(4, { tasks << it } as Executor)
+
+        when:
+        prefetching.close()
+        tasks.each { it.run() }
+
+        then:
+        1 * inner.close()
+        0 * inner.read()
+    }
+}
@@ -0,0 +1,130 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.reader.Header
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowBatch
+import com.widen.tabitha.reader.RowReader
+import com.widen.tabitha.writer.RowWriter
+import spock.lang.Specification
+
+class RowBatchTest extends Specification {
+    def "Values are stored by type"() {
+        setup:
+        def batch = new RowBatch(4)
+        def row = batch.addRow(2, 7)
+        batch.setLong(row, 0, 42)
+        batch.setDouble(row, 1, 3.141)
+        batch.setBoolean(row, 2, true)
+        batch.setString(row, 4, "foo")
+
+        expect:
+        batch.size() == 1
+        batch.width(0) == 5
+        batch.pageIndex(0) == 2
+        batch.index(0) == 7
+        batch.column(0).type(0) == RowBatch.Type.INT
+        batch.column(0).getLong(0) == 42
+        batch.column(1).type(0) == RowBatch.Type.FLOAT
+        batch.column(1).getDouble(0) == 3.141D
+        batch.column(2).type(0) == RowBatch.Type.BOOL
+        batch.column(2).getBoolean(0)
+        batch.column(3).isNone(0)
+        batch.column(4).getString(0) == "foo"
+        batch.cells(0) == [42, 3.141D, true, Variant.NONE, "foo"]
+    }
+
+    def "Rows round trip through a batch"() {
+        setup:
+        def header = new Header("a", "b")
+        def rows = [
+            Row.fromArray(0, 0, [Variant.of("x"), Variant.of(1)] as Variant[]).withHeader(header),
+            Row.fromArray(0, 1, [Variant.NONE, Variant.of(2.5D)] as Variant[]).withPageName("Sheet"),
+            Row.blank(1, 0),
+        ]
+        def batch = new RowBatch(10)
+
+        when:
+        rows.each { batch.add(it) }
+
+        then:
+        batch.toList() == rows
+        batch.header(0) == Optional.of(header)
+        batch.pageName(1) == Optional.of("Sheet")
+    }
+
+    def "Remove a row"() {
+        setup:
+        def batch = new RowBatch(3)
+        3.times {
+            def row = batch.addRow(0, it)
+            batch.setString(row, 0, "row " + it)
+        }
+
+        when:
+        batch.removeRow(1)
+
+        then:
+        batch.size() == 2
+        batch.index(1) == 2
+        batch.cells(0) == ["row 0"]
+        batch.cells(1) == ["row 2"]
+    }
+
+    def "Clearing a batch allows it to be reused"() {
+        setup:
+        def batch = new RowBatch(1)
+        batch.setString(batch.addRow(0, 0), 0, "foo")
+
+        when:
+        batch.clear()
+        def row = batch.addRow(0, 1)
+
+        then:
+        batch.size() == 1
+        batch.width(row) == 0
+        batch.get(row, 0) == Variant.NONE
+    }
+
+    def "Adding to a full batch fails"() {
+        setup:
+        def batch = new RowBatch(1)
+        batch.addRow(0, 0)
+
+        when:
+        batch.addRow(0, 1)
+
+        then:
+        thrown IllegalStateException
+    }
+
+    def "Default batch reading splits rows into batches"() {
+        setup:
+        def reader = RowReader.from((0..4).collect { Row.blank(0, it) })
+
+        when:
+        def batches = []
+        def batch = reader.readBatch(2)
+        while (batch.isPresent()) {
+            batches << batch.get().size()
+            batch = reader.readBatch(2)
+        }
+
+        then:
+        batches == [2, 2, 1]
+    }
+
+    def "Default batch writing writes each row"() {
+        setup:
+        def writer = Spy(RowWriter)
+        def batch = new RowBatch(2)
+        batch.setString(batch.addRow(0, 0), 0, "foo")
+        batch.setLong(batch.addRow(0, 1), 1, 9)
+
+        when:
+        writer.writeBatch(batch)
+
+        then:
+        1 * writer.write(["foo"]) >> null
+        1 * writer.write([Variant.NONE, 9]) >> null
+    }
+}
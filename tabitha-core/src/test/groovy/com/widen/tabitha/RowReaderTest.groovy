@@ -2,8 +2,11 @@ package com.widen.tabitha
 
 import com.widen.tabitha.reader.Row
 import com.widen.tabitha.reader.RowReader
+import io.reactivex.schedulers.Schedulers
 import spock.lang.Specification
 
+import java.util.concurrent.atomic.AtomicLong
+
 class RowReaderTest extends Specification {
     def "Empty reader"() {
         setup:
@@ -39,6 +42,86 @@ class RowReaderTest extends Specification {
         rows == [row1, row2, row3]
     }
 
+    def "Reader as flowable only reads requested rows"() {
+        setup:
+        def reads = new AtomicLong()
+        def reader = { Optional.of(Row.blank(0, reads.getAndIncrement())) } as RowReader
+
+        when:
+        def subscriber = reader.rows(16).test(0)
+
+        then:
+        reads.get() == 16
+
+        when:
+        subscriber.request(100)
+
+        then:
+        subscriber.valueCount() == 100
+        reads.get() <= 100 + 16
+
+        cleanup:
+        subscriber.cancel()
+    }
+
+    def "Reader as flowable stays bounded with a slow subscriber"() {
+        setup:
+        def reads = new AtomicLong()
+        def consumed = new AtomicLong()
+        def maxBuffered = new AtomicLong()
+        def reader = { Optional.of(Row.blank(0, reads.getAndIncrement())) } as RowReader
+
+        when:
+        reader.rows(16)
+            .observeOn(Schedulers.newThread(), false, 8)
+            .take(200)
+            .doOnNext {
+                Thread.sleep(1)
+                maxBuffered.accumulateAndGet(reads.get() - consumed.incrementAndGet(), Math.&max)
+            }
+            .blockingSubscribe()
+
+        then:
+        consumed.get() == 200
+        maxBuffered.get() <= 16 + 8
+    }
+
+    def "Parallel map preserves order"() {
+        setup:
+        def random = new Random(1)
+        def delays = (0..<500).collect { random.nextInt(3) }
+        def reader = RowReader.from((0..<500).collect { Row.blank(0, it) })
+
+        when:
+        def rows = reader.parallelMap({ Row row ->
+            Thread.sleep(delays[(int) row.index()])
+            row.index() % 10 == 9 ? null : row.withCells([Variant.of(row.index())] as Variant[])
+        }, 8, 32).collect()
+
+        then:
+        rows*.index() == (0..<500).findAll { it % 10 != 9 }
+        rows.every { it.get(0).get() == Variant.of(it.index()) }
+    }
+
+    def "Parallel map keeps the window bounded"() {
+        setup:
+        def reads = new AtomicLong()
+        def produced = new AtomicLong()
+        def maxInFlight = new AtomicLong()
+        def reader = { Optional.of(Row.blank(0, reads.getAndIncrement())) } as RowReader
+        def mapped = reader.parallelMap({ it }, 4, 16)
+
+        when:
+        1000.times {
+            mapped.read()
+            maxInFlight.accumulateAndGet(reads.get() - produced.incrementAndGet(), Math.&max)
+        }
+        mapped.close()
+
+        then:
+        maxInFlight.get() <= 16
+    }
+
     def "Reader as iterable"() {
         when:
         def row1 = Mock(Row.class)
@@ -1,5 +1,6 @@
 package com.widen.tabitha
 
+import com.widen.tabitha.reader.ReaderOptions
 import com.widen.tabitha.reader.RowReaders
 import spock.lang.Specification
 
@@ -57,4 +58,36 @@ class RowReadersTest extends Specification {
         expect:
         !reader.isEmpty().blockingGet()
     }
+
+    def "spooled streams are read the same as files"() {
+        setup:
+        def file = Helpers.getResourceFile(name)
+        def expected = RowReaders.open(file).blockingGet().withCloseable { it.rows().toList().blockingGet() }
+        def options = new ReaderOptions().withSpoolThreshold(threshold)
+
+        when:
+        def actual = RowReaders.open(Helpers.getResourceStream(name), options).blockingGet()
+            .withCloseable { it.rows().toList().blockingGet() }
+
+        then:
+        actual == expected
+
+        where:
+        [name, threshold] << [["Workbook1.xls", "Workbook1.xlsx"], [0, 1024, Long.MAX_VALUE]].combinations()
+    }
+
+    def "previews read the first rows"() {
+        setup:
+        def file = Helpers.getResourceFile(name)
+        def expected = RowReaders.open(file).blockingGet().withCloseable { it.rows().toList().blockingGet() }
+
+        when:
+        def actual = RowReaders.preview(file, 2).blockingGet().withCloseable { it.rows().toList().blockingGet() }
+
+        then:
+        actual == expected.take(2)
+
+        where:
+        name << ["Workbook1.csv", "Workbook1.xls", "Workbook1.xlsx"]
+    }
 }
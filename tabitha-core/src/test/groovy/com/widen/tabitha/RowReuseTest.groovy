@@ -0,0 +1,175 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.plugins.delimited.DelimitedFormat
+import com.widen.tabitha.plugins.delimited.DelimitedRowWriter
+import com.widen.tabitha.plugins.excel.XLSXRowWriter
+import com.widen.tabitha.reader.InlineHeaderReader
+import com.widen.tabitha.reader.MutableRow
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowReader
+import com.widen.tabitha.reader.RowReaders
+import com.widen.tabitha.writer.RowWriter
+import groovy.transform.CompileStatic
+import org.apache.commons.io.output.NullOutputStream
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+
+class RowReuseTest extends Specification {
+    def "Reused rows are overwritten on each read"() {
+        setup:
+        def reader = new ReusingReader(2)
+
+        when:
+        def first = reader.read().get()
+        def copy = (first as MutableRow).copy()
+        def second = reader.read().get()
+
+        then:
+        first.is(second)
+        copy.index() == 0
+        second.index() == 1
+        copy == Row.fromArray(0, 0, ReusingReader.VALUES)
+    }
+
+    def "Reading with reused rows produces the same data"() {
+        setup:
+        def expected = RowReaders.open(Helpers.getResourceFile(file)).blockingGet().rows().toList().blockingGet()
+        def reader = RowReaders.open(Helpers.getResourceFile(file), new ReaderOptions().withReuseRows(true)).blockingGet()
+
+        when:
+        def actual = []
+        reader.forEach { Row row ->
+            assert row instanceof MutableRow
+            actual << (row as MutableRow).copy()
+        }
+
+        then:
+        actual == expected
+
+        cleanup:
+        reader.close()
+
+        where:
+        file << ["Workbook1.csv", "Workbook1.xls", "Workbook1.xlsx"]
+    }
+
+    def "Decorators do not allocate per row when reusing rows"() {
+        setup:
+        def rows = 500_000
+        def reader = InlineHeaderReader
+            .decorate(new ReusingReader(rows * 2 + 1), new ReaderOptions().withReuseRows(true))
+            .withSequentialIndexes()
+            .withBlankRows()
+
+        when:
+        // Warm up so that allocations made while compiling are not counted.
+        drain(reader, rows)
+        def before = allocatedBytes()
+        def cells = drain(reader, rows)
+        def bytesPerRow = (allocatedBytes() - before) / rows
+
+        then:
+        cells == rows * ReusingReader.VALUES.length
+        // Copying a row allocates at least a row and a cell array, so allow for stray allocations by the JIT and GC.
+        bytesPerRow < 16
+    }
+
+    def "Converting XLSX to CSV allocates less per row when reusing rows"() {
+        setup:
+        def rows = 100_000
+        def path = Files.createTempFile("tabitha", ".xlsx")
+
+        // Boolean cells do not allocate a variant per cell, so the allocations left are those per row.
+        XLSXRowWriter.open(path).withCloseable { writer ->
+            writer.write(Variant.of("a"), Variant.of("b"), Variant.of("c"))
+            (rows * 2).times {
+                writer.write(Variant.of(true), Variant.of(it % 2 == 0), Variant.of(false))
+            }
+        }
+
+        when:
+        def copied = convertBytesPerRow(path, new ReaderOptions(), rows)
+        def reused = convertBytesPerRow(path, new ReaderOptions().withReuseRows(true), rows)
+
+        then:
+        // Allow for allocations made by the XML scanner and the JIT, which vary between runs.
+        reused < copied / 2
+
+        cleanup:
+        Files.delete(path)
+    }
+
+    // Convert the rows of a file to CSV, returning the bytes allocated per row for the second half of the rows.
+    private static double convertBytesPerRow(java.nio.file.Path path, ReaderOptions options, int rows) {
+        def reader = RowReaders.open(path, options).blockingGet()
+        def writer = new DelimitedRowWriter(new NullOutputStream(), DelimitedFormat.CSV)
+
+        try {
+            // Warm up so that allocations made while opening the file and compiling are not counted.
+            convert(reader, writer, rows)
+            def before = allocatedBytes()
+            convert(reader, writer, rows)
+
+            return (allocatedBytes() - before) / rows
+        }
+        finally {
+            writer.close()
+            reader.close()
+        }
+    }
+
+    @CompileStatic
+    private static void convert(RowReader reader, RowWriter writer, int rows) {
+        for (int i = 0; i < rows; ++i) {
+            writer.write(reader.read().get())
+        }
+    }
+
+    @CompileStatic
+    private static long drain(RowReader reader, int rows) {
+        long cells = 0
+
+        for (int i = 0; i < rows; ++i) {
+            Row row = reader.read().get()
+            cells += row.cells().size()
+        }
+
+        return cells
+    }
+
+    private static long allocatedBytes() {
+        def threadBean = ManagementFactory.threadMXBean as com.sun.management.ThreadMXBean
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().id)
+    }
+
+    @CompileStatic
+    private static class ReusingReader implements RowReader {
+        static final Variant[] VALUES = [Variant.of("foo"), Variant.of(42), Variant.NONE] as Variant[]
+
+        private final MutableRow row = new MutableRow()
+        private final long count
+        private long index = 0
+
+        ReusingReader(long count) {
+            this.count = count
+        }
+
+        @Override
+        Optional<Row> read() {
+            if (index >= count) {
+                return Optional.empty()
+            }
+
+            row.begin(0, index++)
+            for (int column = 0; column < VALUES.length; ++column) {
+                row.set(column, VALUES[column])
+            }
+            row.end()
+
+            return row.asOptional()
+        }
+    }
+}
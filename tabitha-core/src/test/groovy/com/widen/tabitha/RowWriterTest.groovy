@@ -1,5 +1,7 @@
 package com.widen.tabitha
 
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowReader
 import com.widen.tabitha.writer.RowWriter
 import spock.lang.Specification
 
@@ -10,4 +12,19 @@ class RowWriterTest extends Specification {
             RowWriter.VOID.write([Variant.from("hello")])
         }
     }
+
+    def "write all rows from a reader"() {
+        setup:
+        def writer = Spy(RowWriter)
+        def reader = RowReader.from(Row.fromArray(0, 0, [Variant.of(1)] as Variant[]), Row.fromArray(0, 1, [Variant.of(2)] as Variant[]))
+
+        when:
+        writer.writeAll(reader)
+
+        then:
+        1 * writer.write([Variant.of(1)]) >> null
+
+        then:
+        1 * writer.write([Variant.of(2)]) >> null
+    }
 }
@@ -0,0 +1,46 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.RowReaders
+import org.apache.poi.xssf.streaming.SXSSFWorkbook
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class SharedStringsTableTest extends Specification {
+    def "shared strings are read from large tables"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xlsx")
+        def workbook = new SXSSFWorkbook(null, 100, false, true)
+        def sheet = workbook.createSheet()
+
+        // Enough unique strings for the table to be stored in a temporary file.
+        200000.times {
+            def row = sheet.createRow(it)
+            row.createCell(0).setCellValue("string $it".toString())
+            row.createCell(1).setCellValue(it % 3 == 0 ? "fizz 😀" : "buzz")
+        }
+
+        Files.newOutputStream(path).withCloseable {
+            workbook.write(it)
+        }
+        workbook.dispose()
+
+        when:
+        def rows = RowReaders.open(path, new ReaderOptions().withSharedStringsCacheSize(cacheSize))
+            .blockingGet()
+            .rows()
+            .toList()
+            .blockingGet()
+
+        then:
+        rows.size() == 200000
+        rows.every { it.cells() == [Variant.of("string ${it.index()}".toString()), Variant.of(it.index() % 3 == 0 ? "fizz 😀" : "buzz")] }
+
+        cleanup:
+        Files.deleteIfExists(path)
+
+        where:
+        cacheSize << [0, 16]
+    }
+}
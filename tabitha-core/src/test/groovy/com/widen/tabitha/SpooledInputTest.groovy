@@ -0,0 +1,53 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.reader.SpooledInput
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class SpooledInputTest extends Specification {
+    def "streams up to the threshold are held in memory"() {
+        setup:
+        def bytes = new byte[size]
+        new Random(size).nextBytes(bytes)
+
+        when:
+        def input = SpooledInput.spool(new ByteArrayInputStream(bytes), 1000)
+
+        then:
+        !input.path.isPresent()
+        input.newInputStream().bytes == bytes
+
+        cleanup:
+        input.close()
+
+        where:
+        size << [0, 1, 999, 1000]
+    }
+
+    def "streams over the threshold are spooled to a file that is deleted on close"() {
+        setup:
+        def bytes = new byte[size]
+        new Random(size).nextBytes(bytes)
+
+        when:
+        def input = SpooledInput.spool(new ByteArrayInputStream(bytes), threshold)
+        def path = input.path.get()
+
+        then:
+        Files.readAllBytes(path) == bytes
+        input.newInputStream().bytes == bytes
+
+        when:
+        input.close()
+
+        then:
+        !Files.exists(path)
+
+        where:
+        size    | threshold
+        1       | 0
+        1001    | 1000
+        300_000 | 70_000
+    }
+}
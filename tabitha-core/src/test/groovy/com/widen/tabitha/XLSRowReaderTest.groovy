@@ -0,0 +1,273 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.plugins.excel.XLSRowReader
+import com.widen.tabitha.plugins.excel.XLSRowWriter
+import com.widen.tabitha.reader.ReaderOptions
+import org.apache.poi.hssf.usermodel.HSSFRichTextString
+import org.apache.poi.hssf.usermodel.HSSFWorkbook
+import org.apache.poi.poifs.filesystem.POIFSFileSystem
+import org.apache.poi.ss.usermodel.CellType
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+class XLSRowReaderTest extends Specification {
+    def "cells are decoded from every sheet"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xls")
+        XLSRowWriter.open(path).withCloseable { writer ->
+            writer.write(Variant.of("name"), Variant.of(42), Variant.of(0.5d), Variant.of(true))
+            writer.write(Variant.of("café ☃"), Variant.NONE, Variant.of(-123456789012L))
+            writer.beginPage("Second")
+            5000.times { writer.write(Variant.of("row $it".toString()), Variant.of(it as long)) }
+        }
+
+        when:
+        def rows = XLSRowReader.open(path, new ReaderOptions()).withCloseable { it.rows().toList().blockingGet() }
+
+        then:
+        rows.size() == 5002
+        rows[0].cells() == [Variant.of("name"), Variant.of(42d), Variant.of(0.5d), Variant.of(true)]
+        rows[1].cells() == [Variant.of("café ☃"), Variant.NONE, Variant.of(-123456789012d)]
+        rows[0].pageName().get() == "Sheet 0"
+        rows[2].pageIndex() == 1
+        rows[2].index() == 0
+        rows[2].pageName().get() == "Second"
+        rows.last().index() == 4999
+        rows.last().cells() == [Variant.of("row 4999"), Variant.of(4999d)]
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    def "rows without cells are returned as empty rows"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xls")
+        XLSRowWriter.open(path).withCloseable { writer ->
+            writer.write(Variant.of("first"))
+            writer.write()
+            writer.write(Variant.of("third"))
+        }
+
+        when:
+        def rows = XLSRowReader.open(path, new ReaderOptions()).withCloseable { it.rows().toList().blockingGet() }
+
+        then:
+        rows*.cells() == [[Variant.of("first")], [], [Variant.of("third")]]
+        rows*.index() == [0L, 1L, 2L]
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    def "streams are read the same whether or not they are spooled"() {
+        setup:
+        def file = Helpers.getResourceFile("Workbook1.xls")
+        def expected = XLSRowReader.open(file, new ReaderOptions()).withCloseable { it.rows().toList().blockingGet() }
+
+        when:
+        def actual = XLSRowReader.open(Files.newInputStream(file), new ReaderOptions().withSpoolThreshold(threshold))
+            .withCloseable { it.rows().toList().blockingGet() }
+
+        then:
+        actual == expected
+
+        where:
+        threshold << [-1, 0, 1024, Long.MAX_VALUE]
+    }
+
+    def "inspecting counts formatted rows after the last value"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xls")
+        def workbook = new HSSFWorkbook()
+        def sheet = workbook.createSheet("Data")
+        def style = workbook.createCellStyle()
+        style.wrapText = true
+
+        3.times { sheet.createRow(it).createCell(0).setCellValue("row $it".toString()) }
+        // Formatted rows without any cells. Blank cells would be read as cells.
+        (3..9).each { sheet.createRow(it).rowStyle = style }
+
+        Files.newOutputStream(path).withCloseable { workbook.write(it) }
+
+        when:
+        def stats = XLSRowReader.inspect(path, new ReaderOptions())
+        def rows = XLSRowReader.open(path, new ReaderOptions()).withCloseable { it.rows().toList().blockingGet() }
+
+        then:
+        stats*.rowCount() == [10L]
+        stats*.columnCount() == [1]
+        rows.size() == 3
+        rows*.cells() == (0..2).collect { [Variant.of("row $it".toString())] }
+
+        cleanup:
+        workbook.close()
+        Files.deleteIfExists(path)
+    }
+
+    def "workbooks written by POI are read the same as POI reads them"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xls")
+        Files.write(path, poiWorkbook())
+
+        when:
+        def rows = XLSRowReader.open(path, new ReaderOptions()).withCloseable { it.rows().toList().blockingGet() }
+        def expected = new HSSFWorkbook(Files.newInputStream(path)).withCloseable { readWithPoi(it) }
+
+        then:
+        rows.collect { [it.pageName().get(), it.index(), it.cells()] } == expected
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    // Create a workbook with POI that has the records Excel writes but our own writer does not: a shared string table
+    // split over CONTINUE records with formatting runs, MULBLANK, FORMULA with STRING, MULRK and LABEL. POI cannot write
+    // the last two, so they are patched into the records of the last sheet.
+    private static byte[] poiWorkbook() {
+        def workbook = new HSSFWorkbook()
+        def bold = workbook.createFont()
+        bold.bold = true
+        def style = workbook.createCellStyle()
+        style.wrapText = true
+
+        def strings = workbook.createSheet("Strings")
+        2000.times {
+            def text = new HSSFRichTextString("string $it ${'\u00e9' * (it % 7)}".toString())
+            if (it % 3 == 0) {
+                text.applyFont(0, 6, bold)
+            }
+            strings.createRow(it).createCell(0).setCellValue(text)
+        }
+
+        // Strings longer than a record are split over CONTINUE records themselves.
+        def longText = new HSSFRichTextString('x' * 9000 + '\u2603' * 9000)
+        longText.applyFont(8990, 9010, bold)
+        strings.createRow(2001).createCell(1).setCellValue(longText)
+
+        def cells = workbook.createSheet("Cells")
+        def row = cells.createRow(0)
+        row.createCell(0).setCellValue(1.5d)
+        (1..4).each { row.createCell(it).cellStyle = style }
+        row.createCell(5).setCellValue(true)
+        row.createCell(6).setCellValue("after blanks")
+        row = cells.createRow(2)
+        row.createCell(0).cellFormula = '"abc"&"def"'
+        row.createCell(1).cellFormula = '1+2'
+        row.createCell(2).cellFormula = '1<2'
+        row.createCell(3).cellFormula = '""&""'
+        row.createCell(4).setCellValue(-0.25d)
+        workbook.creationHelper.createFormulaEvaluator().evaluateAll()
+
+        def patched = workbook.createSheet("Patched")
+        row = patched.createRow(0)
+        (0..3).each { row.createCell(it).setCellValue((it * 1000 - 1) as double) }
+        patched.createRow(1).createCell(2).setCellValue("label text")
+
+        def output = new ByteArrayOutputStream()
+        workbook.write(output)
+        workbook.close()
+
+        byte[] stream = new POIFSFileSystem(new ByteArrayInputStream(output.toByteArray())).withCloseable {
+            it.createDocumentInputStream("Workbook").bytes
+        }
+
+        def fileSystem = new POIFSFileSystem()
+        fileSystem.createDocument(new ByteArrayInputStream(patchLastSheet(stream, "label text")), "Workbook")
+        output.reset()
+        fileSystem.writeFilesystem(output)
+        fileSystem.close()
+
+        return output.toByteArray()
+    }
+
+    // Replace the NUMBER records of the first row of the last sheet with one MULRK record, and its LABELSST record with a
+    // LABEL record of the given text. Only records after the BOF of the last sheet change size, so no sheet offsets have
+    // to be updated.
+    private static byte[] patchLastSheet(byte[] stream, String labelText) {
+        def records = []
+        def buffer = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN)
+        while (buffer.remaining() >= 4) {
+            int sid = buffer.getShort() & 0xffff
+            byte[] data = new byte[buffer.getShort() & 0xffff]
+            buffer.get(data)
+            records << [sid, data]
+        }
+
+        int lastSheet = records.findLastIndexOf { it[0] == 0x0809 }
+        def output = new ByteArrayOutputStream()
+        def numbers = []
+
+        records.eachWithIndex { record, i ->
+            int sid = record[0]
+            def data = ByteBuffer.wrap(record[1] as byte[]).order(ByteOrder.LITTLE_ENDIAN)
+
+            if (i > lastSheet && sid == 0x0203 && data.getShort(0) == 0) {
+                numbers << data
+                return
+            }
+
+            if (numbers) {
+                def mulrk = ByteBuffer.allocate(6 + numbers.size() * 6).order(ByteOrder.LITTLE_ENDIAN)
+                mulrk.putShort(0 as short).putShort(numbers[0].getShort(2))
+                numbers.each { mulrk.putShort(it.getShort(4)).putInt(((int) it.getDouble(6)) << 2 | 2) }
+                mulrk.putShort(numbers.last().getShort(2))
+                putRecord(output, 0x00bd, mulrk.array())
+                numbers = []
+            }
+
+            if (i > lastSheet && sid == 0x00fd) {
+                byte[] text = labelText.getBytes(StandardCharsets.ISO_8859_1)
+                def label = ByteBuffer.allocate(9 + text.length).order(ByteOrder.LITTLE_ENDIAN)
+                label.put(record[1] as byte[], 0, 6).putShort(text.length as short).put(0 as byte).put(text)
+                putRecord(output, 0x0204, label.array())
+                return
+            }
+
+            putRecord(output, sid, record[1] as byte[])
+        }
+
+        return output.toByteArray()
+    }
+
+    private static void putRecord(ByteArrayOutputStream output, int sid, byte[] data) {
+        def header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putShort(sid as short)
+            .putShort(data.length as short)
+        output.write(header.array())
+        output.write(data)
+    }
+
+    // Read every sheet with POI's own reader, as the page name, row index and cells of each row. Cells are read the same
+    // way XLSRowReader reads them: numbers as doubles, formulas as their cached results and blank cells as empty.
+    private static List readWithPoi(HSSFWorkbook workbook) {
+        def rows = []
+
+        workbook.each { sheet ->
+            for (int index = 0; index <= sheet.lastRowNum; ++index) {
+                def row = sheet.getRow(index)
+                def cells = row == null ? [] : (0..<Math.max(row.lastCellNum as int, 0)).collect { column ->
+                    def cell = row.getCell(column)
+                    def type = cell?.cellTypeEnum == CellType.FORMULA ? cell.cachedFormulaResultTypeEnum : cell?.cellTypeEnum
+
+                    switch (type) {
+                        case CellType.NUMERIC:
+                            return Variant.of(cell.numericCellValue)
+                        case CellType.STRING:
+                            return Variant.of(cell.stringCellValue)
+                        case CellType.BOOLEAN:
+                            return Variant.of(cell.booleanCellValue)
+                        default:
+                            return Variant.NONE
+                    }
+                }
+
+                rows << [sheet.sheetName, index as long, cells]
+            }
+        }
+
+        return rows
+    }
+}
@@ -0,0 +1,107 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.plugins.excel.XLSRowReader
+import com.widen.tabitha.plugins.excel.XLSRowWriter
+import com.widen.tabitha.reader.ReaderOptions
+import org.apache.poi.hssf.usermodel.HSSFWorkbook
+import org.apache.poi.poifs.filesystem.POIFSFileSystem
+import org.apache.poi.ss.usermodel.CellType
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.file.Files
+
+class XLSRowWriterTest extends Specification {
+    def "workbooks written can be opened by POI"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xls")
+
+        when:
+        XLSRowWriter.open(path).withCloseable { writer ->
+            writer.write(Variant.of("name"), Variant.of(42), Variant.of(0.5d), Variant.of(true))
+            writer.write(Variant.of("café ☃"), Variant.NONE, Variant.of(Long.MIN_VALUE))
+            writer.beginPage("Second")
+            10000.times { writer.write(Variant.of("row $it".toString()), Variant.of(it as long)) }
+        }
+        def workbook = new HSSFWorkbook(Files.newInputStream(path))
+
+        then:
+        workbook.numberOfSheets == 2
+        workbook.getSheetName(1) == "Second"
+
+        def first = workbook.getSheetAt(0)
+        first.getRow(0).getCell(0).stringCellValue == "name"
+        first.getRow(0).getCell(1).numericCellValue == 42
+        first.getRow(0).getCell(2).numericCellValue == 0.5d
+        first.getRow(0).getCell(3).booleanCellValue
+        first.getRow(1).getCell(0).stringCellValue == "café ☃"
+        first.getRow(1).getCell(1) == null
+        first.getRow(1).getCell(2).numericCellValue == (double) Long.MIN_VALUE
+
+        def second = workbook.getSheetAt(1)
+        second.lastRowNum == 9999
+        second.getRow(9999).getCell(0).stringCellValue == "row 9999"
+        second.getRow(9999).getCell(1).cellTypeEnum == CellType.NUMERIC
+
+        cleanup:
+        workbook?.close()
+        Files.deleteIfExists(path)
+    }
+
+    def "sheets roll over at the row limit"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xls")
+
+        when:
+        XLSRowWriter.open(path).withCloseable { writer ->
+            70000.times { writer.write(Variant.of(it as long)) }
+        }
+        def workbook = new HSSFWorkbook(Files.newInputStream(path))
+
+        then:
+        workbook.numberOfSheets == 2
+        workbook.getSheetAt(0).lastRowNum == 65535
+        workbook.getSheetAt(1).getRow(0).getCell(0).numericCellValue == 65536
+
+        cleanup:
+        workbook?.close()
+        Files.deleteIfExists(path)
+    }
+
+    def "an empty workbook still has a sheet"() {
+        setup:
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new XLSRowWriter(output).close()
+        def workbook = new HSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))
+
+        then:
+        workbook.numberOfSheets == 1
+    }
+
+    def "small workbooks are not stored in the mini stream"() {
+        setup:
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new XLSRowWriter(output).withCloseable { it.write(Variant.of("small")) }
+        def bytes = ByteBuffer.wrap(output.toByteArray()).order(ByteOrder.LITTLE_ENDIAN)
+        def fileSystem = new POIFSFileSystem(new ByteArrayInputStream(output.toByteArray()))
+        def workbook = new HSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))
+
+        then:
+        // The header has no mini allocation table, which would start at the end of chain marker.
+        bytes.getInt(60) == -2
+        bytes.getInt(64) == 0
+        fileSystem.root.getEntry("Workbook").size >= 4096
+        workbook.getSheetAt(0).getRow(0).getCell(0).stringCellValue == "small"
+        XLSRowReader.open(new ByteArrayInputStream(output.toByteArray()), new ReaderOptions())
+            .withCloseable { it.rows().toList().blockingGet() }*.cells() == [[Variant.of("small")]]
+
+        cleanup:
+        workbook?.close()
+        fileSystem?.close()
+    }
+}
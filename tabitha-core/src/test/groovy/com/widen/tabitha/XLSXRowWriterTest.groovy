@@ -0,0 +1,117 @@
+package com.widen.tabitha
+
+import com.widen.tabitha.plugins.excel.XLSXRowWriter
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowReaders
+import org.apache.poi.xssf.usermodel.XSSFWorkbook
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.zip.ZipFile
+
+class XLSXRowWriterTest extends Specification {
+    def "rows written can be read back"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xlsx")
+        def rows = [
+            [Variant.of("name"), Variant.of("count"), Variant.of("ratio")],
+            [Variant.of("<a & \"b\">"), Variant.of(42), Variant.of(0.5d)],
+            [Variant.of("café 😀"), Variant.of(Long.MIN_VALUE), Variant.of(-1.25e10d)],
+            [Variant.of("  padded  "), Variant.NONE, Variant.of("gap")],
+        ]
+
+        when:
+        XLSXRowWriter.open(path).withCloseable { writer ->
+            rows.each { writer.write(it) }
+            writer.beginPage("Second")
+            1000.times { writer.write(Variant.of("row $it".toString()), Variant.of(it as long)) }
+        }
+        def read = RowReaders.open(path).blockingGet().rows().toList().blockingGet()
+
+        then:
+        read.take(4)*.cells() == rows
+        read.take(4)*.pageIndex().every { it == 0 }
+        read[4].pageIndex() == 1
+        read[4].pageName().get() == "Second"
+        read.size() == 1004
+        read.last().cells() == [Variant.of("row 999"), Variant.of(999)]
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    def "control characters are escaped"() {
+        setup:
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new XLSXRowWriter(output).withCloseable { writer ->
+            writer.write(Variant.of("a\u0001b"))
+        }
+        def read = RowReaders.open(new ByteArrayInputStream(output.toByteArray()), "test.xlsx")
+            .blockingGet().rows().toList().blockingGet()
+
+        then:
+        read*.cells() == [[Variant.of("a_x0001_b")]]
+    }
+
+    def "text that looks like an escape is read back by Excel unchanged"() {
+        expect:
+        readBackWithPoi(value) == value
+
+        where:
+        value << ["a_x0041_b", "_x005F_", "_X00ff_", "plain_x_y", "_x004", "tail_"]
+    }
+
+    def "carriage returns are read back by Excel unchanged"() {
+        expect:
+        readBackWithPoi(value) == value
+
+        where:
+        value << ["line\r\nbreak", "\r", "a\rb\r"]
+    }
+
+    def "an empty workbook still has a sheet"() {
+        setup:
+        def path = Files.createTempFile("tabitha", ".xlsx")
+
+        when:
+        XLSXRowWriter.open(path).close()
+        def entries = new ZipFile(path.toFile()).withCloseable { zip -> zip.entries()*.name }
+
+        then:
+        entries.contains("xl/workbook.xml")
+        entries.contains("xl/worksheets/sheet1.xml")
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    def "sheet names must be unique"() {
+        setup:
+        def writer = new XLSXRowWriter(new ByteArrayOutputStream())
+        writer.beginPage("Data")
+
+        when:
+        writer.beginPage("data")
+
+        then:
+        thrown(IllegalArgumentException)
+
+        cleanup:
+        writer.close()
+    }
+
+    // Write a single string cell and read it back with POI, which decodes escapes the same way as Excel.
+    private static String readBackWithPoi(String value) {
+        def output = new ByteArrayOutputStream()
+
+        new XLSXRowWriter(output).withCloseable { writer ->
+            writer.write(Variant.of(value))
+        }
+
+        return new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray())).withCloseable { workbook ->
+            workbook.getSheetAt(0).getRow(0).getCell(0).stringCellValue
+        }
+    }
+}
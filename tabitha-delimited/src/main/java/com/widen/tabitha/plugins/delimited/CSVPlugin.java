@@ -3,12 +3,16 @@ package com.widen.tabitha.plugins.delimited;
 import com.widen.tabitha.plugins.ReaderPlugin;
 import com.widen.tabitha.plugins.WriterPlugin;
 import com.widen.tabitha.reader.InlineHeaderReader;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.RowReader;
 import com.widen.tabitha.writer.RowWriter;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.stream.Stream;
 
 public class CSVPlugin implements ReaderPlugin, WriterPlugin {
@@ -17,10 +21,21 @@ public class CSVPlugin implements ReaderPlugin, WriterPlugin {
         return Stream.of("text/csv", "text/plain").anyMatch(mimeType::equals);
     }
 
+    @Override
+    public RowReader createReader(Path path, ReaderOptions options) throws IOException {
+        return InlineHeaderReader
+            .decorate(DelimitedRowReader.open(path, DelimitedFormat.CSV, options), options);
+    }
+
     @Override
     public RowReader createReader(InputStream inputStream, ReaderOptions options) {
         return InlineHeaderReader
-            .decorate(new DelimitedRowReader(inputStream, DelimitedFormat.CSV), options);
+            .decorate(new DelimitedRowReader(inputStream, DelimitedFormat.CSV, options), options);
+    }
+
+    @Override
+    public List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        return DelimitedRowReader.inspect(inputStream, DelimitedFormat.CSV, options);
     }
 
     @Override
@@ -0,0 +1,520 @@
+package com.widen.tabitha.plugins.delimited;
+
+import com.widen.tabitha.reader.MappedInputStream;
+import org.apache.commons.io.input.ReaderInputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parses records of a delimiter-separated text stream by scanning the raw bytes.
+ * <p>
+ * Quoting and escaping follow the same rules as opencsv, which was previously used for parsing, so that existing files
+ * are read the same way. Field contents are unescaped into an internal byte buffer as a record is parsed, and are only
+ * decoded into characters when requested, so fields that are never accessed cost nothing beyond the scan.
+ * <p>
+ * UTF-8, US-ASCII and ISO-8859-1 text is decoded directly from bytes. Text in any other encoding is transcoded to UTF-8
+ * first. The delimiter, quote and escape characters must be ASCII characters.
+ */
+class DelimitedParser implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final Decoding decoding;
+    private final int delimiter;
+    private final int quote;
+    private final int escape;
+    private final boolean strictQuotes;
+
+    // Bytes that may change the parser state. All other bytes are copied as-is.
+    private final boolean[] special = new boolean[256];
+
+    private final byte[] buffer;
+    private int bufferPosition;
+    private int bufferLimit;
+    private long bufferOffset;
+
+    // Unescaped contents of every field in the current record, back to back.
+    private byte[] data = new byte[1024];
+    private int dataLength;
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+
+    // Whether field contents are being thrown away instead of copied, while skipping a record.
+    private boolean discarding;
+
+    // Scratch buffer fields are decoded into.
+    private char[] chars = new char[256];
+
+    DelimitedParser(InputStream inputStream, DelimitedFormat format) {
+        this(inputStream, format, BUFFER_SIZE);
+    }
+
+    DelimitedParser(InputStream inputStream, DelimitedFormat format, int bufferSize) {
+        if (format.delimiter > 0x7f || format.quoteCharacter > 0x7f || format.escapeCharacter > 0x7f) {
+            throw new IllegalArgumentException("Delimiter, quote and escape characters must be ASCII characters");
+        }
+
+        if (StandardCharsets.UTF_8.equals(format.charset)) {
+            input = inputStream;
+            decoding = Decoding.UTF_8;
+        }
+        else if (StandardCharsets.US_ASCII.equals(format.charset)) {
+            input = inputStream;
+            decoding = Decoding.ASCII;
+        }
+        else if (StandardCharsets.ISO_8859_1.equals(format.charset)) {
+            input = inputStream;
+            decoding = Decoding.LATIN_1;
+        }
+        else {
+            // Mapped files can be decoded without being copied through a stream buffer first.
+            Reader reader = inputStream instanceof MappedInputStream
+                ? ((MappedInputStream) inputStream).newReader(format.charset)
+                : new InputStreamReader(inputStream, format.charset);
+
+            input = new ReaderInputStream(reader, StandardCharsets.UTF_8);
+            decoding = Decoding.UTF_8;
+        }
+
+        delimiter = format.delimiter;
+        quote = format.quoteCharacter;
+        escape = format.escapeCharacter;
+        strictQuotes = format.strictQuotes;
+        buffer = new byte[bufferSize];
+
+        special['\n'] = true;
+        special['\r'] = true;
+        special[delimiter] = true;
+        special[quote] = true;
+        special[escape] = true;
+    }
+
+    /**
+     * Check if text in the given encoding is parsed directly from the input bytes without being transcoded first, in
+     * which case positions returned by {@link #position()} are positions in the original input stream.
+     *
+     * @param charset The character encoding of the text.
+     * @return True if the input bytes are parsed directly.
+     */
+    static boolean parsesDirectly(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+            || StandardCharsets.US_ASCII.equals(charset)
+            || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * Parse the next record from the stream.
+     *
+     * @return True if a record was parsed, or false if the end of the stream has been reached.
+     * @throws IOException if an I/O error occurs.
+     */
+    boolean next() throws IOException {
+        dataLength = 0;
+        fieldCount = 0;
+
+        int c = read();
+        if (c < 0) {
+            return false;
+        }
+
+        boolean inQuotes = false;
+        boolean inField = false;
+
+        // Position of the current character within the current line, and the byte before it. These are only needed to
+        // detect quotes embedded in the middle of an unquoted field.
+        int linePosition = 0;
+        int previous = -1;
+
+        while (true) {
+            // Fast path: copy a run of ordinary bytes in one go.
+            if (c >= 0 && !special[c]) {
+                int start = bufferPosition - 1;
+                int end = bufferPosition;
+
+                while (end < bufferLimit && !special[buffer[end] & 0xff]) {
+                    ++end;
+                }
+
+                if (!strictQuotes || inQuotes) {
+                    append(buffer, start, end - start);
+                    inField = true;
+                }
+
+                if (linePosition <= 2) {
+                    linePosition += charCount(buffer, start, end);
+                }
+
+                previous = buffer[end - 1] & 0xff;
+                bufferPosition = end;
+                c = read();
+                continue;
+            }
+
+            // End of a line.
+            if (c < 0 || c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+
+                // Quoted fields may span multiple lines, in which case the line break is normalized to a newline.
+                if (inQuotes && c >= 0) {
+                    appendByte('\n');
+                    linePosition = 0;
+                    previous = -1;
+                    c = read();
+                    continue;
+                }
+
+                endField();
+                return true;
+            }
+
+            int next = peekInLine();
+
+            if (c == escape) {
+                // An escape only has meaning before a quote or another escape, otherwise it is dropped.
+                if ((inQuotes || inField) && (next == quote || next == escape)) {
+                    appendByte(next);
+                    read();
+                    ++linePosition;
+                    c = next;
+                }
+            }
+            else if (c == quote) {
+                // Two quotes in a row are an escaped quote.
+                if ((inQuotes || inField) && next == quote) {
+                    appendByte(next);
+                    read();
+                    ++linePosition;
+                }
+                else {
+                    inQuotes = !inQuotes;
+
+                    // A quote in the middle of an unquoted field is kept as part of the value, unless only whitespace
+                    // precedes it in the field.
+                    if (!strictQuotes && linePosition > 2 && previous != delimiter && next >= 0 && next != delimiter) {
+                        if (dataLength > fieldStart(fieldCount) && isWhitespace(fieldStart(fieldCount), dataLength)) {
+                            dataLength = fieldStart(fieldCount);
+                        }
+                        else {
+                            appendByte(c);
+                        }
+                    }
+                }
+
+                inField = !inField;
+            }
+            else if (c == delimiter && !inQuotes) {
+                endField();
+                inField = false;
+            }
+            else if (!strictQuotes || inQuotes) {
+                appendByte(c);
+                inField = true;
+            }
+
+            ++linePosition;
+            previous = c;
+            c = read();
+        }
+    }
+
+    /**
+     * Parse the next record from the stream without keeping the contents of its fields, so that only {@link #size()}
+     * can be used afterwards. Records are split in the same way as by {@link #next()}.
+     *
+     * @return True if a record was parsed, or false if the end of the stream has been reached.
+     * @throws IOException if an I/O error occurs.
+     */
+    boolean skip() throws IOException {
+        discarding = true;
+
+        try {
+            return next();
+        }
+        finally {
+            discarding = false;
+        }
+    }
+
+    /**
+     * Get the number of fields in the current record.
+     *
+     * @return The number of fields.
+     */
+    int size() {
+        return fieldCount;
+    }
+
+    /**
+     * Get the position in the stream of the next byte to be parsed. After a record is parsed, this is the position at
+     * which the next record starts.
+     *
+     * @return The byte offset from the start of the stream.
+     */
+    long position() {
+        return bufferOffset + bufferPosition;
+    }
+
+    /**
+     * Check if a field is empty or contains only whitespace, without decoding it if possible.
+     *
+     * @param field The field index.
+     * @return True if the field is blank.
+     */
+    boolean isBlank(int field) {
+        int start = fieldStart(field);
+        int end = fieldEnds[field];
+
+        for (int i = start; i < end; ++i) {
+            if (data[i] < 0) {
+                // Non-ASCII text, so check the decoded characters instead.
+                int length = decode(field);
+
+                for (int j = 0; j < length; ++j) {
+                    if (!Character.isWhitespace(chars[j])) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            if (!Character.isWhitespace(data[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the value of a field as a string.
+     *
+     * @param field The field index.
+     * @return The field value.
+     */
+    String getString(int field) {
+        // Decode first, as decoding may replace the buffer.
+        int length = decode(field);
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Decode a field into the buffer returned by {@link #chars()}.
+     *
+     * @param field The field index.
+     * @return The number of characters decoded.
+     */
+    int decode(int field) {
+        int start = fieldStart(field);
+        int end = fieldEnds[field];
+
+        // Decoding never produces more characters than there are bytes.
+        if (chars.length < end - start) {
+            chars = new char[Math.max(chars.length * 2, end - start)];
+        }
+
+        switch (decoding) {
+            case UTF_8:
+                return decodeUtf8(start, end);
+
+            case ASCII:
+                for (int i = start; i < end; ++i) {
+                    chars[i - start] = data[i] < 0 ? '\uFFFD' : (char) data[i];
+                }
+                return end - start;
+
+            default:
+                for (int i = start; i < end; ++i) {
+                    chars[i - start] = (char) (data[i] & 0xff);
+                }
+                return end - start;
+        }
+    }
+
+    /**
+     * Get the buffer that fields are decoded into by {@link #decode(int)}. The buffer may be replaced by later calls.
+     *
+     * @return The character buffer.
+     */
+    char[] chars() {
+        return chars;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private int decodeUtf8(int start, int end) {
+        int length = 0;
+        int i = start;
+
+        while (i < end) {
+            int b = data[i++];
+
+            if (b >= 0) {
+                chars[length++] = (char) b;
+                continue;
+            }
+
+            int codePoint = -1;
+
+            if ((b & 0xe0) == 0xc0 && i < end && isContinuation(data[i])) {
+                codePoint = ((b & 0x1f) << 6) | (data[i++] & 0x3f);
+
+                if (codePoint < 0x80) {
+                    codePoint = -1;
+                }
+            }
+            else if ((b & 0xf0) == 0xe0 && i + 1 < end && isContinuation(data[i]) && isContinuation(data[i + 1])) {
+                codePoint = ((b & 0x0f) << 12) | ((data[i] & 0x3f) << 6) | (data[i + 1] & 0x3f);
+                i += 2;
+
+                if (codePoint < 0x800 || Character.isSurrogate((char) codePoint)) {
+                    codePoint = -1;
+                }
+            }
+            else if ((b & 0xf8) == 0xf0 && i + 2 < end
+                && isContinuation(data[i]) && isContinuation(data[i + 1]) && isContinuation(data[i + 2])) {
+                codePoint = ((b & 0x07) << 18) | ((data[i] & 0x3f) << 12) | ((data[i + 1] & 0x3f) << 6)
+                    | (data[i + 2] & 0x3f);
+                i += 3;
+
+                if (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT) {
+                    codePoint = -1;
+                }
+                else {
+                    chars[length++] = Character.highSurrogate(codePoint);
+                    chars[length++] = Character.lowSurrogate(codePoint);
+                    continue;
+                }
+            }
+
+            chars[length++] = codePoint < 0 ? '\uFFFD' : (char) codePoint;
+        }
+
+        return length;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xc0) == 0x80;
+    }
+
+    // Count the characters encoded by a range of bytes, as opencsv counts line positions in characters.
+    private int charCount(byte[] bytes, int start, int end) {
+        if (decoding != Decoding.UTF_8) {
+            return end - start;
+        }
+
+        int count = 0;
+
+        for (int i = start; i < end; ++i) {
+            if ((bytes[i] & 0xf8) == 0xf0) {
+                count += 2;
+            }
+            else if (!isContinuation(bytes[i])) {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    private boolean isWhitespace(int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if (data[i] < 0 || !Character.isWhitespace(data[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int fieldStart(int field) {
+        return field == 0 ? 0 : fieldEnds[field - 1];
+    }
+
+    private void endField() {
+        if (fieldCount == fieldEnds.length) {
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldEnds.length * 2);
+        }
+
+        fieldEnds[fieldCount++] = dataLength;
+    }
+
+    private void appendByte(int b) {
+        if (discarding) {
+            return;
+        }
+
+        if (dataLength == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+
+        data[dataLength++] = (byte) b;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (discarding) {
+            return;
+        }
+
+        if (dataLength + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+        }
+
+        System.arraycopy(bytes, offset, data, dataLength, length);
+        dataLength += length;
+    }
+
+    // Peek at the next byte, or -1 if the current line ends after the current byte.
+    private int peekInLine() throws IOException {
+        int next = peek();
+        return next == '\n' || next == '\r' ? -1 : next;
+    }
+
+    private int peek() throws IOException {
+        if (bufferPosition == bufferLimit && !fill()) {
+            return -1;
+        }
+
+        return buffer[bufferPosition] & 0xff;
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLimit && !fill()) {
+            return -1;
+        }
+
+        return buffer[bufferPosition++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        bufferOffset += bufferLimit;
+        bufferPosition = 0;
+        bufferLimit = 0;
+
+        int count = input.read(buffer);
+        if (count <= 0) {
+            return false;
+        }
+
+        bufferLimit = count;
+        return true;
+    }
+
+    private enum Decoding {
+        UTF_8,
+        ASCII,
+        LATIN_1,
+    }
+}
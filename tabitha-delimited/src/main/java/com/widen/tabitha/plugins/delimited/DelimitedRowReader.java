@@ -1,52 +1,238 @@
 package com.widen.tabitha.plugins.delimited;
 
-import com.opencsv.CSVReader;
 import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.ColumnProjection;
+import com.widen.tabitha.reader.MappedInputStream;
+import com.widen.tabitha.reader.MutableRow;
+import com.widen.tabitha.reader.PageStats;
+import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.reader.RowRange;
 import com.widen.tabitha.reader.RowReader;
-import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * Reads a delimiter-separated text file into rows of values.
  */
 public class DelimitedRowReader implements RowReader {
-    private CSVReader reader;
-    private int currentIndex = 0;
+    private final DelimitedParser parser;
+    private long currentIndex = 0;
+
+    // The file is a single page, which may not be selected.
+    private final boolean pageSelected;
+
+    // The selected columns, resolved against the first record if any are selected by name.
+    private ColumnProjection projection;
+
+    // The records to read, or null to read every record.
+    private final RowRange range;
+
+    // Row reused for every read if enabled in the reader options.
+    private final MutableRow mutableRow;
+
+    /**
+     * Open a delimited text file from the file system.
+     * <p>
+     * If {@link ReaderOptions#getParallelism()} is greater than 1 and the text encoding allows it, the file is read in
+     * parallel by a {@link ParallelDelimitedRowReader}.
+     *
+     * @param path The path of the file to open.
+     * @param format The format of the file.
+     * @param options Options to pass to the reader.
+     * @return A new row reader.
+     */
+    public static RowReader open(Path path, DelimitedFormat format, ReaderOptions options) throws IOException {
+        if (options != null && options.getParallelism() > 1 && DelimitedParser.parsesDirectly(format.charset)) {
+            return new ParallelDelimitedRowReader(path, format, options);
+        }
+
+        InputStream inputStream = options != null && options.isMemoryMapped()
+            ? new MappedInputStream(path)
+            : Files.newInputStream(path);
+
+        return new DelimitedRowReader(inputStream, format, options);
+    }
+
+    /**
+     * Count the records of a delimited text stream and the fields of its widest record, scanning for quotes and line
+     * breaks without keeping any field contents. The stream is closed afterwards.
+     *
+     * @param inputStream The stream to inspect.
+     * @param format The format of the stream.
+     * @param options Options that select the pages to inspect.
+     * @return The stats of the single page of the stream, or nothing if it is not selected.
+     */
+    public static List<PageStats> inspect(InputStream inputStream, DelimitedFormat format, ReaderOptions options)
+        throws IOException {
+        try (DelimitedParser parser = new DelimitedParser(inputStream, format)) {
+            if (options != null && !options.isPageSelected(0, null)) {
+                return Collections.emptyList();
+            }
+
+            long rows = 0;
+            int columns = 0;
+
+            while (parser.skip()) {
+                rows++;
+                columns = Math.max(columns, parser.size());
+            }
+
+            return Collections.singletonList(new PageStats(0, null, rows, columns));
+        }
+    }
 
     public DelimitedRowReader(InputStream inputStream, DelimitedFormat format) {
-        this.reader = new CSVReader(
-            new InputStreamReader(inputStream, format.charset),
-            format.delimiter,
-            format.quoteCharacter,
-            format.escapeCharacter,
-            0,
-            format.strictQuotes
-        );
+        this(inputStream, format, null);
+    }
+
+    public DelimitedRowReader(InputStream inputStream, DelimitedFormat format, ReaderOptions options) {
+        parser = new DelimitedParser(inputStream, format);
+        mutableRow = options != null && options.isReuseRows() ? new MutableRow() : null;
+        pageSelected = options == null || options.isPageSelected(0, null);
+        projection = ColumnProjection.of(options);
+        range = RowRange.of(options);
     }
 
     @Override
     public Optional<Row> read() throws IOException {
-        return Optional
-            .ofNullable(reader.readNext())
-            .map(cells -> Row.fromStream(0, currentIndex++, Arrays
-                .stream(cells)
-                .map(cell -> {
-                    if (StringUtils.isNotBlank(cell)) {
-                        return new Variant.String(cell);
-                    }
-                    return Variant.NONE;
-                })
-            ));
+        if (!nextRecord()) {
+            return Optional.empty();
+        }
+
+        if (mutableRow != null) {
+            mutableRow.begin(0, currentIndex++);
+
+            for (int column = 0; column < parser.size(); ++column) {
+                int position = projection != null ? projection.position(column) : column;
+
+                if (position >= 0) {
+                    mutableRow.set(position, getCell(parser, column));
+                }
+            }
+
+            mutableRow.end();
+            return mutableRow.asOptional();
+        }
+
+        return Optional.of(Row.fromArray(0, currentIndex++, getCells(parser, projection)));
+    }
+
+    @Override
+    public boolean readBatch(RowBatch batch) throws IOException {
+        batch.clear();
+
+        while (!batch.isFull() && nextRecord()) {
+            int row = batch.addRow(0, currentIndex++);
+
+            for (int column = 0; column < parser.size(); ++column) {
+                int position = projection != null ? projection.position(column) : column;
+
+                if (position < 0) {
+                    continue;
+                }
+
+                if (parser.isBlank(column)) {
+                    batch.setNone(row, position);
+                }
+                else {
+                    // Decode straight into the batch without creating a string.
+                    int length = parser.decode(column);
+                    batch.setString(row, position, parser.chars(), 0, length);
+                }
+            }
+        }
+
+        return !batch.isEmpty();
     }
 
     @Override
     public void close() throws IOException {
-        reader.close();
+        parser.close();
+    }
+
+    // Advance to the next record to read, resolving the projection against the first record if needed.
+    private boolean nextRecord() throws IOException {
+        if (!pageSelected) {
+            return false;
+        }
+
+        // Stop reading the stream as soon as the row limit is reached.
+        while (range == null || !range.isFinished()) {
+            if (!parser.next()) {
+                return false;
+            }
+
+            if (projection != null && projection.needsHeader()) {
+                projection = projection.withHeader(getNames(parser));
+            }
+
+            RowRange.Action action = range != null ? range.next(currentIndex == 0) : RowRange.Action.READ;
+
+            if (action == RowRange.Action.READ) {
+                return true;
+            }
+
+            if (action == RowRange.Action.STOP) {
+                return false;
+            }
+
+            // Skipped records are never decoded, but still count towards the row index.
+            currentIndex++;
+        }
+
+        return false;
+    }
+
+    // Get the cells of the current record, only decoding the fields selected by the projection, if any.
+    static Variant[] getCells(DelimitedParser parser, ColumnProjection projection) {
+        if (projection == null) {
+            Variant[] cells = new Variant[parser.size()];
+
+            for (int column = 0; column < cells.length; ++column) {
+                cells[column] = getCell(parser, column);
+            }
+
+            return cells;
+        }
+
+        Variant[] cells = new Variant[projection.size(parser.size())];
+
+        for (int column = 0; column < parser.size(); ++column) {
+            int position = projection.position(column);
+
+            if (position >= 0) {
+                cells[position] = getCell(parser, column);
+            }
+        }
+
+        return cells;
+    }
+
+    // Get the fields of the current record as column names.
+    static List<String> getNames(DelimitedParser parser) {
+        List<String> names = new ArrayList<>(parser.size());
+
+        for (int column = 0; column < parser.size(); ++column) {
+            names.add(parser.isBlank(column) ? null : parser.getString(column));
+        }
+
+        return names;
+    }
+
+    static Variant getCell(DelimitedParser parser, int column) {
+        if (parser.isBlank(column)) {
+            return Variant.NONE;
+        }
+
+        return new Variant.String(parser.getString(column));
     }
 }
@@ -1,43 +1,351 @@
 package com.widen.tabitha.plugins.delimited;
 
-import com.opencsv.CSVWriter;
 import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.RowBatch;
 import com.widen.tabitha.writer.RowWriter;
+import org.apache.commons.io.output.WriterOutputStream;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
  * Writes rows of values to a delimiter-separated text file.
+ * <p>
+ * Values are encoded directly into a reusable output buffer, so writing a row does not allocate any strings. A field
+ * is only quoted if it contains the delimiter, quote or escape character or a line break; inside a quoted field, quote
+ * and escape characters are prefixed with the escape character. If the format has no quote character, special
+ * characters are escaped instead.
+ * <p>
+ * UTF-8, US-ASCII and ISO-8859-1 text is encoded directly into bytes, with characters that cannot be encoded replaced
+ * with {@code ?}. Text in any other encoding is transcoded from UTF-8. The delimiter, quote and escape characters must
+ * be ASCII characters.
  */
 public class DelimitedRowWriter implements RowWriter {
-    private CSVWriter writer;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The most bytes a single character can be encoded as, including an escape character.
+    private static final int MAX_CHAR_BYTES = 4;
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    private static final char[] TRUE = "true".toCharArray();
+    private static final char[] FALSE = "false".toCharArray();
+
+    private final OutputStream output;
+    private final Encoding encoding;
+    private final byte delimiter;
+    private final byte quote;
+    private final byte escape;
+
+    // ASCII characters that require a field to be quoted, and characters that must be escaped when written.
+    private final boolean[] special = new boolean[128];
+    private final boolean[] escaped = new boolean[128];
+
+    private final byte[] buffer;
+    private int bufferPosition;
+
+    // Scratch space that values are formatted into before being encoded.
+    private char[] chars = new char[256];
+    private final StringBuilder numberBuilder = new StringBuilder(32);
 
     public DelimitedRowWriter(OutputStream outputStream, DelimitedFormat format) {
-        this.writer = new CSVWriter(
-            new OutputStreamWriter(outputStream, format.charset),
-            format.delimiter,
-            format.quoteCharacter,
-            format.escapeCharacter
-        );
+        this(outputStream, format, BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new writer with a specific output buffer size.
+     *
+     * @param outputStream The stream to write to.
+     * @param format The format to write in.
+     * @param bufferSize The number of bytes to buffer before writing to the stream.
+     */
+    public DelimitedRowWriter(OutputStream outputStream, DelimitedFormat format, int bufferSize) {
+        if (format.delimiter > 0x7f || format.quoteCharacter > 0x7f || format.escapeCharacter > 0x7f) {
+            throw new IllegalArgumentException("Delimiter, quote and escape characters must be ASCII characters");
+        }
+
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE + " bytes");
+        }
+
+        if (StandardCharsets.UTF_8.equals(format.charset)) {
+            output = outputStream;
+            encoding = Encoding.UTF_8;
+        }
+        else if (StandardCharsets.US_ASCII.equals(format.charset)) {
+            output = outputStream;
+            encoding = Encoding.ASCII;
+        }
+        else if (StandardCharsets.ISO_8859_1.equals(format.charset)) {
+            output = outputStream;
+            encoding = Encoding.LATIN_1;
+        }
+        else {
+            output = new WriterOutputStream(new OutputStreamWriter(outputStream, format.charset), StandardCharsets.UTF_8);
+            encoding = Encoding.UTF_8;
+        }
+
+        delimiter = (byte) format.delimiter;
+        quote = (byte) format.quoteCharacter;
+        escape = (byte) format.escapeCharacter;
+        buffer = new byte[bufferSize];
+
+        special['\n'] = true;
+        special['\r'] = true;
+        special[delimiter] = true;
+        special[quote] = true;
+        special[escape] = true;
+
+        if (escape != 0) {
+            escaped[quote] = true;
+            escaped[escape] = true;
+
+            // Without quotes, delimiters can only be escaped.
+            if (quote == 0) {
+                escaped[delimiter] = true;
+            }
+        }
     }
 
     @Override
-    public void write(List<Variant> cells) {
-        String[] cols = cells
-            .stream()
-            .map(Variant::toString)
-            .map(String.class::cast)
-            .toArray(String[]::new);
+    public void write(List<Variant> cells) throws IOException {
+        for (int column = 0; column < cells.size(); ++column) {
+            if (column > 0) {
+                put(delimiter);
+            }
+
+            writeCell(cells.get(column));
+        }
 
-        writer.writeNext(cols);
+        put((byte) '\n');
+    }
+
+    @Override
+    public void writeBatch(RowBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); ++row) {
+            int width = batch.width(row);
+
+            for (int column = 0; column < width; ++column) {
+                if (column > 0) {
+                    put(delimiter);
+                }
+
+                RowBatch.Column values = batch.column(column);
+
+                switch (values.type(row)) {
+                    case BOOL:
+                        writeBoolean(values.getBoolean(row));
+                        break;
+                    case INT:
+                        writeLong(values.getLong(row));
+                        break;
+                    case FLOAT:
+                        writeDouble(values.getDouble(row));
+                        break;
+                    case STRING:
+                        writeField(values.stringData(), values.stringOffset(row), values.stringLength(row));
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            put((byte) '\n');
+        }
     }
 
     @Override
     public void close() throws IOException {
-        writer.flush();
-        writer.close();
+        flush();
+        output.close();
+    }
+
+    private void writeCell(Variant cell) throws IOException {
+        if (cell instanceof Variant.String) {
+            String value = cell.toString();
+            int length = value.length();
+
+            value.getChars(0, length, reserveChars(length), 0);
+            writeField(chars, 0, length);
+        }
+        else if (cell instanceof Variant.Int) {
+            writeLong(((Variant.Int) cell).value());
+        }
+        else if (cell instanceof Variant.Float) {
+            writeDouble(((Variant.Float) cell).value());
+        }
+        else if (cell instanceof Variant.Bool) {
+            writeBoolean(cell == Variant.Bool.TRUE);
+        }
+    }
+
+    private void writeBoolean(boolean value) throws IOException {
+        char[] text = value ? TRUE : FALSE;
+        writeField(text, 0, text.length);
+    }
+
+    // Format an integer into the scratch buffer from the end, counting in negatives so that Long.MIN_VALUE works.
+    private void writeLong(long value) throws IOException {
+        char[] digits = reserveChars(20);
+        int start = 20;
+        boolean negative = value < 0;
+
+        if (!negative) {
+            value = -value;
+        }
+
+        do {
+            digits[--start] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        if (negative) {
+            digits[--start] = '-';
+        }
+
+        writeField(digits, start, 20 - start);
+    }
+
+    private void writeDouble(double value) throws IOException {
+        // Appending to a builder formats the same way as Double.toString without creating a string.
+        numberBuilder.setLength(0);
+        numberBuilder.append(value);
+
+        int length = numberBuilder.length();
+        numberBuilder.getChars(0, length, reserveChars(length), 0);
+        writeField(chars, 0, length);
+    }
+
+    private void writeField(char[] text, int offset, int length) throws IOException {
+        if (quote != 0 && needsQuotes(text, offset, length)) {
+            put(quote);
+            encode(text, offset, length, true);
+            put(quote);
+        }
+        else {
+            encode(text, offset, length, quote == 0);
+        }
+    }
+
+    private boolean needsQuotes(char[] text, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            char c = text[i];
+
+            if (c < 0x80 && special[c]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Encode characters into the output buffer, in chunks small enough that the buffer never has to be checked for
+    // space within a chunk.
+    private void encode(char[] text, int offset, int length, boolean escaping) throws IOException {
+        int end = offset + length;
+
+        while (offset < end) {
+            int room = (buffer.length - bufferPosition) / MAX_CHAR_BYTES;
+
+            if (room == 0) {
+                flush();
+                continue;
+            }
+
+            offset = encodeChunk(text, offset, Math.min(end, offset + room), end, escaping);
+        }
+    }
+
+    // Encode characters up to the chunk end, returning the index of the next character to encode. A surrogate pair
+    // may extend one character past the chunk end, which is fine as a pair never takes more than four bytes.
+    private int encodeChunk(char[] text, int offset, int chunkEnd, int end, boolean escaping) {
+        byte[] buffer = this.buffer;
+        int position = bufferPosition;
+        int i = offset;
+
+        while (i < chunkEnd) {
+            char c = text[i++];
+
+            if (c < 0x80) {
+                if (escaping && escaped[c]) {
+                    buffer[position++] = escape;
+                }
+
+                buffer[position++] = (byte) c;
+                continue;
+            }
+
+            // Combine a surrogate pair into a single code point, or leave a lone surrogate to be replaced.
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(text[i])) {
+                codePoint = Character.toCodePoint(c, text[i++]);
+            }
+            else if (Character.isSurrogate(c)) {
+                codePoint = -1;
+            }
+
+            switch (encoding) {
+                case UTF_8:
+                    if (codePoint < 0) {
+                        buffer[position++] = '?';
+                    }
+                    else if (codePoint < 0x800) {
+                        buffer[position++] = (byte) (0xc0 | codePoint >> 6);
+                        buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+                    }
+                    else if (codePoint < 0x10000) {
+                        buffer[position++] = (byte) (0xe0 | codePoint >> 12);
+                        buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                        buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+                    }
+                    else {
+                        buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+                        buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                        buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                        buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+                    }
+                    break;
+                case LATIN_1:
+                    buffer[position++] = codePoint >= 0 && codePoint < 0x100 ? (byte) codePoint : (byte) '?';
+                    break;
+                default:
+                    buffer[position++] = '?';
+                    break;
+            }
+        }
+
+        bufferPosition = position;
+        return i;
+    }
+
+    private void put(byte b) throws IOException {
+        if (bufferPosition == buffer.length) {
+            flush();
+        }
+
+        buffer[bufferPosition++] = b;
+    }
+
+    private void flush() throws IOException {
+        if (bufferPosition > 0) {
+            output.write(buffer, 0, bufferPosition);
+            bufferPosition = 0;
+        }
+    }
+
+    private char[] reserveChars(int length) {
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+
+        return chars;
+    }
+
+    private enum Encoding {
+        UTF_8,
+        ASCII,
+        LATIN_1
     }
 }
@@ -0,0 +1,382 @@
+package com.widen.tabitha.plugins.delimited;
+
+import com.widen.tabitha.reader.ColumnProjection;
+import com.widen.tabitha.reader.MappedInputStream;
+import com.widen.tabitha.reader.ReaderOptions;
+import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowRange;
+import com.widen.tabitha.reader.RowReader;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a delimiter-separated text file from the file system using multiple threads.
+ * <p>
+ * The file is split into fixed-size byte ranges which are read in two steps. First, each range is scanned for record
+ * boundaries in parallel, starting from the first line break in the range. Since that line break could be inside a
+ * quoted field, the boundaries found are then checked in order against where the record straddling the end of the
+ * previous range actually ends, and the range is scanned again from the correct position if they do not line up. This
+ * also gives the number of records in each range, so that every row is given the same index it would have when read
+ * sequentially. Second, the records in each range are parsed into rows in parallel.
+ * <p>
+ * Rows are produced in their original order unless {@link ReaderOptions#isPreserveOrder()} is disabled, in which case
+ * the rows of each range are produced as soon as the range is parsed. The rows of the first range are always produced
+ * first, so that an inline header row is still read before any other row.
+ * <p>
+ * Ranges are parsed ahead of the rows being read, so rows outside of {@link ReaderOptions#getRowOffset()} and
+ * {@link ReaderOptions#getRowLimit()} are parsed before being dropped, but no more ranges are scheduled once the limit
+ * is reached.
+ * <p>
+ * Rows are never reused by this reader, regardless of {@link ReaderOptions#isReuseRows()}.
+ */
+public class ParallelDelimitedRowReader implements RowReader {
+    private static final long RANGE_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private final DelimitedFormat format;
+    private final long rangeSize;
+    private final boolean memoryMapped;
+    private final long rangeCount;
+    private final int window;
+    private final ColumnProjection projection;
+    private final ExecutorService executor;
+    private final CompletionService<List<Row>> completionService;
+
+    // Ranges being scanned for record boundaries, in order.
+    private final ArrayDeque<Future<Scan>> scans = new ArrayDeque<>();
+    private long nextScanRange;
+    private long nextResolvedRange;
+
+    // Position and index of the first record not yet assigned to a range.
+    private long nextRecordStart;
+    private long nextRecordIndex;
+
+    // Ranges being parsed into rows. When preserving order these are taken in order from the queue, otherwise the queue
+    // only ever contains the first range and the rest are taken from the completion service.
+    private final ArrayDeque<Future<List<Row>>> parses = new ArrayDeque<>();
+    private int parsesPending;
+
+    private List<Row> currentRows;
+    private int currentRowIndex;
+
+    // The rows to produce, and whether any row has been produced yet.
+    private final RowRange range;
+    private boolean started;
+
+    public ParallelDelimitedRowReader(Path path, DelimitedFormat format, ReaderOptions options) throws IOException {
+        this(path, format, options, RANGE_SIZE);
+    }
+
+    ParallelDelimitedRowReader(Path path, DelimitedFormat format, ReaderOptions options, long rangeSize) throws IOException {
+        if (!DelimitedParser.parsesDirectly(format.charset)) {
+            throw new IllegalArgumentException("Parallel reading is not supported for " + format.charset);
+        }
+
+        int parallelism = Math.max(options.getParallelism(), 1);
+
+        this.path = path;
+        this.format = format;
+        this.rangeSize = rangeSize;
+        memoryMapped = options.isMemoryMapped();
+        rangeCount = options.isPageSelected(0, null) ? (Files.size(path) + rangeSize - 1) / rangeSize : 0;
+        window = parallelism * 2;
+        projection = resolveProjection(ColumnProjection.of(options));
+        range = RowRange.of(options);
+
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "tabitha-delimited-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        completionService = options.isPreserveOrder() ? null : new ExecutorCompletionService<>(executor);
+    }
+
+    @Override
+    public Optional<Row> read() throws IOException {
+        while (true) {
+            if (range != null && range.isFinished()) {
+                return Optional.empty();
+            }
+
+            Optional<Row> row = readParsed();
+
+            if (range == null || !row.isPresent()) {
+                return row;
+            }
+
+            boolean pageStart = !started;
+            started = true;
+
+            switch (range.next(pageStart)) {
+                case READ:
+                    return row;
+                case STOP:
+                    return Optional.empty();
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // Take the next row parsed from any range.
+    private Optional<Row> readParsed() throws IOException {
+        while (currentRows == null || currentRowIndex == currentRows.size()) {
+            schedule();
+
+            if (parsesPending == 0) {
+                currentRows = null;
+                return Optional.empty();
+            }
+
+            if (!parses.isEmpty()) {
+                currentRows = await(parses.poll());
+            }
+            else {
+                try {
+                    currentRows = await(completionService.take());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+
+            parsesPending--;
+            currentRowIndex = 0;
+        }
+
+        return Optional.of(currentRows.get(currentRowIndex++));
+    }
+
+    // Keep the scan and parse queues topped up, resolving scanned ranges into parse tasks in order.
+    private void schedule() throws IOException {
+        while (true) {
+            while (scans.size() < window && nextScanRange < rangeCount) {
+                long range = nextScanRange++;
+                scans.add(executor.submit(() -> scan(range)));
+            }
+
+            if (scans.isEmpty() || parsesPending >= window) {
+                return;
+            }
+
+            // Only wait for a scan to finish if there are no parsed rows to wait for instead.
+            if (parsesPending > 0 && !scans.peek().isDone()) {
+                return;
+            }
+
+            resolve(await(scans.poll()), nextResolvedRange++);
+        }
+    }
+
+    // Work out which records belong to a range now that the end of the previous range is known, and submit them to be
+    // parsed.
+    private void resolve(Scan scan, long range) throws IOException {
+        long rangeEnd = rangeEnd(range);
+
+        // The last record of the previous range covered this entire range.
+        if (nextRecordStart >= rangeEnd) {
+            return;
+        }
+
+        int first = scan.indexOf(nextRecordStart);
+
+        // The scan started in the middle of a quoted field and never lined up with the actual records, so scan again
+        // from the right place.
+        if (first < 0) {
+            scan = scan(nextRecordStart, rangeEnd);
+            first = 0;
+        }
+
+        long start = nextRecordStart;
+        long end = scan.end;
+        long index = nextRecordIndex;
+
+        nextRecordStart = end;
+        nextRecordIndex += scan.count - first;
+
+        if (end > start) {
+            if (completionService == null || index == 0) {
+                parses.add(executor.submit(() -> parse(start, end, index)));
+            }
+            else {
+                completionService.submit(() -> parse(start, end, index));
+            }
+
+            parsesPending++;
+        }
+    }
+
+    private Scan scan(long range) throws IOException {
+        long start = range == 0 ? 0 : findLineStart(range * rangeSize, rangeEnd(range));
+        return scan(start, rangeEnd(range));
+    }
+
+    // Find the positions of all records starting from the given position up to the given end position.
+    private Scan scan(long start, long end) throws IOException {
+        Scan scan = new Scan(start);
+
+        try (DelimitedParser parser = new DelimitedParser(open(start), format)) {
+            long position = start;
+
+            while (position < end && parser.next()) {
+                scan.add(position);
+                position = start + parser.position();
+            }
+
+            scan.end = position;
+        }
+
+        return scan;
+    }
+
+    // Parse all records between two record boundaries.
+    private List<Row> parse(long start, long end, long firstIndex) throws IOException {
+        ArrayList<Row> rows = new ArrayList<>();
+        long index = firstIndex;
+
+        try (DelimitedParser parser = new DelimitedParser(new BoundedInputStream(open(start), end - start), format)) {
+            while (parser.next()) {
+                rows.add(Row.fromArray(0, index++, DelimitedRowReader.getCells(parser, projection)));
+            }
+        }
+
+        return rows;
+    }
+
+    // Columns selected by name are found in the first record, which has to be read before any range can be parsed.
+    private ColumnProjection resolveProjection(ColumnProjection projection) throws IOException {
+        if (projection != null && projection.needsHeader()) {
+            try (DelimitedParser parser = new DelimitedParser(open(0), format)) {
+                if (parser.next()) {
+                    return projection.withHeader(DelimitedRowReader.getNames(parser));
+                }
+            }
+        }
+
+        return projection;
+    }
+
+    // Find the start of the first line beginning at or after the given position. Only line breaks before the end
+    // position are considered, so that a very long line is not searched again by every range it spans.
+    private long findLineStart(long position, long end) throws IOException {
+        // Start from the previous byte in case the position is already the start of a line.
+        long next = position - 1;
+
+        try (InputStream inputStream = new BufferedInputStream(open(next))) {
+            int c;
+
+            while (next < end && (c = inputStream.read()) >= 0) {
+                ++next;
+
+                if (c == '\n') {
+                    return next;
+                }
+
+                if (c == '\r') {
+                    return inputStream.read() == '\n' ? next + 1 : next;
+                }
+            }
+        }
+
+        return next;
+    }
+
+    private long rangeEnd(long range) {
+        return (range + 1) * rangeSize;
+    }
+
+    private InputStream open(long position) throws IOException {
+        if (memoryMapped) {
+            // Ranges are small, so only map about as much as each one will read.
+            InputStream inputStream = new MappedInputStream(path, (int) Math.min(rangeSize, Integer.MAX_VALUE));
+            inputStream.skip(position);
+            return inputStream;
+        }
+
+        SeekableByteChannel channel = Files.newByteChannel(path);
+
+        try {
+            channel.position(position);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return Channels.newInputStream(channel);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Positions of the records found when scanning a range.
+     */
+    private static class Scan {
+        private final long start;
+        private int[] offsets = new int[1024];
+        private int count;
+        private long end;
+
+        Scan(long start) {
+            this.start = start;
+        }
+
+        void add(long position) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+
+            // Records are always scanned from within a single range, so offsets from the start will fit in an int.
+            offsets[count++] = (int) (position - start);
+        }
+
+        int indexOf(long position) {
+            if (position < start || position - start > Integer.MAX_VALUE) {
+                return -1;
+            }
+
+            int index = Arrays.binarySearch(offsets, 0, count, (int) (position - start));
+            return index >= 0 ? index : -1;
+        }
+    }
+}
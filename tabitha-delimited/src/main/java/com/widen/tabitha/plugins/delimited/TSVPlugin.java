@@ -3,12 +3,16 @@ package com.widen.tabitha.plugins.delimited;
 import com.widen.tabitha.plugins.ReaderPlugin;
 import com.widen.tabitha.plugins.WriterPlugin;
 import com.widen.tabitha.reader.InlineHeaderReader;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.RowReader;
 import com.widen.tabitha.writer.RowWriter;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
 
 public class TSVPlugin implements ReaderPlugin, WriterPlugin {
     @Override
@@ -16,10 +20,21 @@ public class TSVPlugin implements ReaderPlugin, WriterPlugin {
         return "text/tab-separated-values".equals(mimeType);
     }
 
+    @Override
+    public RowReader createReader(Path path, ReaderOptions options) throws IOException {
+        return InlineHeaderReader
+            .decorate(DelimitedRowReader.open(path, DelimitedFormat.TSV, options), options);
+    }
+
     @Override
     public RowReader createReader(InputStream inputStream, ReaderOptions options) {
         return InlineHeaderReader
-            .decorate(new DelimitedRowReader(inputStream, DelimitedFormat.TSV), options);
+            .decorate(new DelimitedRowReader(inputStream, DelimitedFormat.TSV, options), options);
+    }
+
+    @Override
+    public List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        return DelimitedRowReader.inspect(inputStream, DelimitedFormat.TSV, options);
     }
 
     @Override
@@ -0,0 +1,118 @@
+package com.widen.tabitha.plugins.delimited
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class DelimitedParserTest extends Specification {
+    def "parse records"() {
+        expect:
+        parse(text, DelimitedFormat.CSV) == records
+
+        where:
+        text                        | records
+        ''                          | []
+        'a,b,c'                     | [['a', 'b', 'c']]
+        'a,b\nc,d\n'                | [['a', 'b'], ['c', 'd']]
+        'a\r\nb\rc'                 | [['a'], ['b'], ['c']]
+        'a\n\nb'                    | [['a'], [''], ['b']]
+        'a,,'                       | [['a', '', '']]
+        '"a,b",c'                   | [['a,b', 'c']]
+        '"say ""hi""",x'            | [['say "hi"', 'x']]
+        '"a\\"b",c'                 | [['a"b', 'c']]
+        'a\\b,c'                    | [['ab', 'c']]
+        '"line 1\r\nline 2",x\ny'   | [['line 1\nline 2', 'x'], ['y']]
+        'abc"def"ghi,x'             | [['abc"def"ghi', 'x']]
+        '   "quoted",x'             | [['quoted', 'x']]
+        'caf\u00e9,\ud83d\ude00' | [['caf\u00e9', '\ud83d\ude00']]
+    }
+
+    def "parse long fields"() {
+        setup:
+        def field = 'x' * 10000
+
+        expect:
+        parse("$field,\"$field\"", DelimitedFormat.CSV) == [[field, field]]
+    }
+
+    def "decode fields longer than the char buffer"() {
+        setup:
+        def field = 'caf\u00e9 ' * 100
+        def parser = new DelimitedParser(stream("short,$field", StandardCharsets.UTF_8), DelimitedFormat.CSV)
+
+        when:
+        parser.next()
+        def shortLength = parser.decode(0)
+        def length = parser.decode(1)
+
+        then:
+        shortLength == 5
+        new String(parser.chars(), 0, length) == field
+        parser.getString(1) == field
+    }
+
+    def "parse with strict quotes"() {
+        expect:
+        parse('ignored"kept",x"y"z', DelimitedFormat.CSV.withStrictQuotes(true)) == [['kept', 'y']]
+    }
+
+    def "parse tab-separated"() {
+        expect:
+        parse('a,b\t"c\td"\n', DelimitedFormat.TSV) == [['a,b', 'c\td']]
+    }
+
+    def "parse across buffer boundaries"() {
+        setup:
+        def text = '"one ""two""",caf\u00e9\r\n"x\ny",\ud83d\ude00\n'
+
+        expect:
+        (1..8).every { bufferSize ->
+            parse(text, DelimitedFormat.CSV, bufferSize) == [['one "two"', 'caf\u00e9'], ['x\ny', '\ud83d\ude00']]
+        }
+    }
+
+    def "parse other encodings"() {
+        expect:
+        parse('caf\u00e9,\u00fc', DelimitedFormat.CSV.withCharset(charset)) == [['caf\u00e9', '\u00fc']]
+
+        where:
+        charset << [StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16LE]
+    }
+
+    def "blank fields"() {
+        setup:
+        def parser = new DelimitedParser(stream(' ,\t,x,\u3000', StandardCharsets.UTF_8), DelimitedFormat.CSV)
+
+        when:
+        parser.next()
+
+        then:
+        parser.isBlank(0)
+        parser.isBlank(1)
+        !parser.isBlank(2)
+        parser.isBlank(3)
+    }
+
+    def "non-ASCII delimiters are rejected"() {
+        when:
+        new DelimitedParser(stream('', StandardCharsets.UTF_8), DelimitedFormat.CSV.withDelimiter('§' as char))
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    private static List<List<String>> parse(String text, DelimitedFormat format, int bufferSize = 1024) {
+        def parser = new DelimitedParser(stream(text, format.charset), format, bufferSize)
+        def records = []
+
+        while (parser.next()) {
+            records << (0..<parser.size()).collect { parser.getString(it) }
+        }
+
+        return records
+    }
+
+    private static InputStream stream(String text, java.nio.charset.Charset charset) {
+        return new ByteArrayInputStream(text.getBytes(charset))
+    }
+}
@@ -0,0 +1,103 @@
+package com.widen.tabitha.plugins.delimited
+
+import com.widen.tabitha.Variant
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowBatch
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class DelimitedRowWriterTest extends Specification {
+    def "write values"() {
+        expect:
+        write(DelimitedFormat.CSV, cells) == text
+
+        where:
+        cells                                                   | text
+        []                                                      | '\n'
+        ['a', 'b', 'c']                                         | 'a,b,c\n'
+        [Variant.NONE, '', 'x']                                 | ',,x\n'
+        [42L, -7L, Long.MIN_VALUE]                              | '42,-7,-9223372036854775808\n'
+        [1.5d, -0.25d, 1e21d]                                   | '1.5,-0.25,1.0E21\n'
+        [true, false]                                           | 'true,false\n'
+        ['a,b', 'say "hi"', 'back\\slash', 'line 1\nline 2']    | '"a,b","say \\"hi\\"","back\\\\slash","line 1\nline 2"\n'
+        ['caf\u00e9', '\ud83d\ude00']                           | 'caf\u00e9,\ud83d\ude00\n'
+    }
+
+    def "write without quote character"() {
+        expect:
+        write(DelimitedFormat.CSV.withQuoteCharacter('\0' as char), ['a,b', 'c"d']) == 'a\\,b,c"d\n'
+    }
+
+    def "write unencodable characters"() {
+        expect:
+        write(DelimitedFormat.CSV.withCharset(StandardCharsets.US_ASCII), ['caf\u00e9', '\ud83d\ude00']) == 'caf?,?\n'
+        write(DelimitedFormat.CSV.withCharset(StandardCharsets.ISO_8859_1), ['caf\u00e9', '\u20ac']) == 'caf\u00e9,?\n'
+    }
+
+    def "write other encodings"() {
+        setup:
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new DelimitedRowWriter(output, DelimitedFormat.CSV.withCharset(StandardCharsets.UTF_16BE)).withCloseable {
+            it.write(Variant.of('caf\u00e9'), Variant.of(1L))
+        }
+
+        then:
+        new String(output.toByteArray(), StandardCharsets.UTF_16BE) == 'caf\u00e9,1\n'
+    }
+
+    def "write batches the same as rows"() {
+        setup:
+        def rows = [
+            [Variant.of('plain'), Variant.of('a,b'), Variant.of('x' * 100)],
+            [Variant.of(1L), Variant.of(2.5d), Variant.NONE, Variant.of(true)],
+            [Variant.of('\ud83d\ude00 "quoted"\r\n')],
+        ]
+        def batch = new RowBatch(4)
+        rows.each { batch.add(Row.fromArray(0, 0, it as Variant[])) }
+
+        def rowOutput = new ByteArrayOutputStream()
+        def batchOutput = new ByteArrayOutputStream()
+
+        when:
+        new DelimitedRowWriter(rowOutput, DelimitedFormat.CSV, 16).withCloseable { writer ->
+            rows.each { writer.write(it) }
+        }
+        new DelimitedRowWriter(batchOutput, DelimitedFormat.CSV, 16).withCloseable { writer ->
+            writer.writeBatch(batch)
+        }
+
+        then:
+        batchOutput.toByteArray() == rowOutput.toByteArray()
+    }
+
+    def "written rows are read back unchanged"() {
+        setup:
+        def cells = ['a,b', 'say "hi"', 'back\\slash', 'line 1\nline 2', 'caf\u00e9 \ud83d\ude00', '  padded  ']
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new DelimitedRowWriter(output, DelimitedFormat.CSV, 16).withCloseable {
+            it.write(cells.collect { Variant.of(it) })
+        }
+        def reader = new DelimitedRowReader(new ByteArrayInputStream(output.toByteArray()), DelimitedFormat.CSV)
+
+        then:
+        reader.read().get().cells()*.toString() == cells
+
+        cleanup:
+        reader?.close()
+    }
+
+    private static String write(DelimitedFormat format, List cells) {
+        def output = new ByteArrayOutputStream()
+
+        new DelimitedRowWriter(output, format).withCloseable {
+            it.write(cells.collect { it instanceof Variant ? it : Variant.of(it) })
+        }
+
+        return new String(output.toByteArray(), format.charset)
+    }
+}
@@ -0,0 +1,95 @@
+package com.widen.tabitha.plugins.delimited
+
+import com.widen.tabitha.reader.ReaderOptions
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowReaders
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class ParallelDelimitedRowReaderTest extends Specification {
+    Path path
+
+    def setup() {
+        path = Files.createTempFile("tabitha", ".csv")
+    }
+
+    def cleanup() {
+        Files.delete(path)
+    }
+
+    @Unroll
+    def "parallel read with range size #rangeSize matches sequential read"() {
+        setup:
+        def random = new Random(rangeSize)
+        def text = new StringBuilder()
+
+        1000.times {
+            text << (0..random.nextInt(5)).collect {
+                switch (random.nextInt(6)) {
+                    case 0: return '"multi\nline, ""quoted""\r\nfield"'
+                    case 1: return '"\n"'
+                    case 2: return ''
+                    case 3: return 'café'
+                    default: return "value ${random.nextInt()}"
+                }
+            }.join(',')
+            text << (random.nextBoolean() ? '\n' : '\r\n')
+        }
+
+        path.setText(text.toString(), 'UTF-8')
+        def expected = readSequential()
+
+        expect:
+        readParallel(rangeSize, true) == expected
+        readParallel(rangeSize, false).sort { it.index() } == expected
+
+        where:
+        rangeSize << [1, 2, 7, 64, 1000, 100_000]
+    }
+
+    def "ranges inside a quoted field are rescanned"() {
+        setup:
+        path.setText('a,"' + ('line\n' * 100) + '",b\nc\n"\nd\ne"\n', 'UTF-8')
+
+        expect:
+        readParallel(16, true) == readSequential()
+    }
+
+    def "unordered read produces the first row first"() {
+        setup:
+        path.setText((0..<1000).collect { "row $it" }.join('\n'), 'UTF-8')
+
+        expect:
+        readParallel(16, false).first().index() == 0
+    }
+
+    def "plugin reads in parallel with inline headers"() {
+        setup:
+        path.setText("name,value\n" + (0..<1000).collect { "row $it,$it" }.join('\n'), 'UTF-8')
+        def options = new ReaderOptions().withParallelism(4)
+
+        when:
+        def rows = RowReaders.open(path, options).blockingGet().withCloseable { it.rows().toList().blockingGet() }
+
+        then:
+        rows.size() == 1000
+        rows.every { it.get('value').get().toString() == String.valueOf(it.index() - 1) }
+    }
+
+    private List<Row> readSequential() {
+        return new DelimitedRowReader(Files.newInputStream(path), DelimitedFormat.CSV).withCloseable {
+            it.rows().toList().blockingGet()
+        }
+    }
+
+    private List<Row> readParallel(long rangeSize, boolean preserveOrder) {
+        def options = new ReaderOptions().withParallelism(4).withPreserveOrder(preserveOrder)
+
+        return new ParallelDelimitedRowReader(path, DelimitedFormat.CSV, options, rangeSize).withCloseable {
+            it.rows().toList().blockingGet()
+        }
+    }
+}
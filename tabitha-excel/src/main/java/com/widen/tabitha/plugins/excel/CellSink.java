@@ -0,0 +1,180 @@
+package com.widen.tabitha.plugins.excel;
+
+import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.ColumnProjection;
+import com.widen.tabitha.reader.MutableRow;
+import com.widen.tabitha.reader.RowBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives typed cell values for a single row as they are parsed from a spreadsheet.
+ * <p>
+ * This allows the sheet parsers to produce either boxed {@link Variant} rows or columnar {@link RowBatch} rows from the
+ * same parsing code.
+ */
+interface CellSink {
+    void none(int column);
+
+    void bool(int column, boolean value);
+
+    void integer(int column, long value);
+
+    void floating(int column, double value);
+
+    void string(int column, String value);
+
+    void variant(int column, Variant value);
+
+    /**
+     * Collects cells into a list of variants, filling any gaps with {@link Variant#NONE}.
+     */
+    final class ListSink implements CellSink {
+        final ArrayList<Variant> cells = new ArrayList<>();
+
+        @Override
+        public void none(int column) {
+            add(column, Variant.NONE);
+        }
+
+        @Override
+        public void bool(int column, boolean value) {
+            add(column, Variant.of(value));
+        }
+
+        @Override
+        public void integer(int column, long value) {
+            add(column, Variant.of(value));
+        }
+
+        @Override
+        public void floating(int column, double value) {
+            add(column, Variant.of(value));
+        }
+
+        @Override
+        public void string(int column, String value) {
+            add(column, Variant.of(value));
+        }
+
+        @Override
+        public void variant(int column, Variant value) {
+            add(column, value);
+        }
+
+        /**
+         * Get the collected cells as column names, for finding the columns selected by name.
+         */
+        List<String> names() {
+            List<String> names = new ArrayList<>(cells.size());
+
+            for (Variant cell : cells) {
+                names.add(cell.isNone() ? null : cell.toString());
+            }
+
+            return names;
+        }
+
+        /**
+         * Write the collected cells that are selected by a projection to another sink.
+         */
+        void project(ColumnProjection projection, CellSink sink) {
+            for (int column = 0; column < cells.size(); ++column) {
+                int position = projection.position(column);
+
+                if (position >= 0) {
+                    sink.variant(position, cells.get(column));
+                }
+            }
+        }
+
+        private void add(int column, Variant value) {
+            // Fill in any "missing" / blank cells.
+            while (cells.size() < column) {
+                cells.add(Variant.NONE);
+            }
+
+            cells.add(value);
+        }
+    }
+
+    /**
+     * Writes cells into a reused row.
+     */
+    final class RowSink implements CellSink {
+        final MutableRow row = new MutableRow();
+
+        @Override
+        public void none(int column) {
+            row.set(column, Variant.NONE);
+        }
+
+        @Override
+        public void bool(int column, boolean value) {
+            row.set(column, Variant.of(value));
+        }
+
+        @Override
+        public void integer(int column, long value) {
+            row.set(column, Variant.of(value));
+        }
+
+        @Override
+        public void floating(int column, double value) {
+            row.set(column, Variant.of(value));
+        }
+
+        @Override
+        public void string(int column, String value) {
+            row.set(column, Variant.of(value));
+        }
+
+        @Override
+        public void variant(int column, Variant value) {
+            row.set(column, value);
+        }
+    }
+
+    /**
+     * Writes cells directly into a row of a batch.
+     */
+    final class BatchSink implements CellSink {
+        private final RowBatch batch;
+        int row;
+
+        BatchSink(RowBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void none(int column) {
+            batch.setNone(row, column);
+        }
+
+        @Override
+        public void bool(int column, boolean value) {
+            batch.setBoolean(row, column, value);
+        }
+
+        @Override
+        public void integer(int column, long value) {
+            batch.setLong(row, column, value);
+        }
+
+        @Override
+        public void floating(int column, double value) {
+            batch.setDouble(row, column, value);
+        }
+
+        @Override
+        public void string(int column, String value) {
+            batch.setString(row, column, value);
+        }
+
+        @Override
+        public void variant(int column, Variant value) {
+            batch.set(row, column, value);
+        }
+    }
+}
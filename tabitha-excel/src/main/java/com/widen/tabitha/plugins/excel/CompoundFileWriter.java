@@ -0,0 +1,262 @@
+package com.widen.tabitha.plugins.excel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes an OLE2 compound file containing a single stream, without buffering the stream in memory.
+ * <p>
+ * Since the size of the stream must be known up front, the sector allocation tables can be computed before any data
+ * is written. The file is laid out as the header, followed by the stream data, followed by the allocation tables and
+ * the directory. Streams smaller than the mini stream cutoff are stored in the mini stream as the format requires.
+ * <p>
+ * To use, call {@link #begin()}, write exactly the given number of bytes of stream data to the output, then call
+ * {@link #finish()}.
+ */
+final class CompoundFileWriter {
+    private static final int SECTOR_SIZE = 512;
+    private static final int MINI_SECTOR_SIZE = 64;
+    private static final int MINI_STREAM_CUTOFF = 4096;
+    private static final int ENTRIES_PER_SECTOR = SECTOR_SIZE / 4;
+    private static final int HEADER_DIFAT_ENTRIES = 109;
+    private static final int DIRECTORY_ENTRY_SIZE = 128;
+
+    private static final int DIFAT_SECTOR = 0xfffffffc;
+    private static final int FAT_SECTOR = 0xfffffffd;
+    private static final int END_OF_CHAIN = 0xfffffffe;
+    private static final int FREE_SECTOR = 0xffffffff;
+    private static final int NO_STREAM = 0xffffffff;
+
+    private final OutputStream output;
+    private final String streamName;
+    private final long streamSize;
+    private final byte[] sector = new byte[SECTOR_SIZE];
+
+    // Sector counts and locations, in file order.
+    private final boolean mini;
+    private final int dataSectors;
+    private final int miniFatSectors;
+    private int fatSectors = 1;
+    private int difatSectors = 0;
+
+    /**
+     * Create a new compound file writer.
+     *
+     * @param output The stream to write the file to.
+     * @param streamName The name of the single stream in the file.
+     * @param streamSize The exact size of the stream in bytes.
+     */
+    CompoundFileWriter(OutputStream output, String streamName, long streamSize) throws IOException {
+        if (streamSize > 0x7fffffffL) {
+            throw new IOException("Stream is too large for a compound file");
+        }
+
+        this.output = output;
+        this.streamName = streamName;
+        this.streamSize = streamSize;
+
+        mini = streamSize < MINI_STREAM_CUTOFF;
+        dataSectors = (int) ((allocatedSize() + SECTOR_SIZE - 1) / SECTOR_SIZE);
+        miniFatSectors = mini ? 1 : 0;
+
+        // The allocation table has to include its own sectors, so iterate until the size settles.
+        while (true) {
+            int total = dataSectors + miniFatSectors + fatSectors + difatSectors + 1;
+            int fat = (total + ENTRIES_PER_SECTOR - 1) / ENTRIES_PER_SECTOR;
+            int difat = fat > HEADER_DIFAT_ENTRIES
+                ? (fat - HEADER_DIFAT_ENTRIES + ENTRIES_PER_SECTOR - 2) / (ENTRIES_PER_SECTOR - 1)
+                : 0;
+
+            if (fat == fatSectors && difat == difatSectors) {
+                break;
+            }
+
+            fatSectors = fat;
+            difatSectors = difat;
+        }
+    }
+
+    /**
+     * Write the file header. The stream data should be written to the output immediately after.
+     */
+    void begin() throws IOException {
+        clearSector();
+
+        // Signature.
+        putInt(0, 0xe011cfd0);
+        putInt(4, 0xe11ab1a1);
+
+        // Minor version, major version 3, byte order, sector shift and mini sector shift.
+        putShort(24, 0x003e);
+        putShort(26, 0x0003);
+        putShort(28, 0xfffe);
+        putShort(30, 9);
+        putShort(32, 6);
+
+        putInt(44, fatSectors);
+        putInt(48, directorySector());
+        putInt(56, MINI_STREAM_CUTOFF);
+        putInt(60, mini ? miniFatSector() : END_OF_CHAIN);
+        putInt(64, miniFatSectors);
+        putInt(68, difatSectors > 0 ? difatSector(0) : END_OF_CHAIN);
+        putInt(72, difatSectors);
+
+        for (int i = 0; i < HEADER_DIFAT_ENTRIES; ++i) {
+            putInt(76 + i * 4, i < fatSectors ? fatSector(i) : FREE_SECTOR);
+        }
+
+        output.write(sector);
+    }
+
+    /**
+     * Pad the stream data to a whole sector and write the allocation tables and directory.
+     */
+    void finish() throws IOException {
+        long padding = (long) dataSectors * SECTOR_SIZE - streamSize;
+        clearSector();
+
+        while (padding > 0) {
+            int length = (int) Math.min(padding, SECTOR_SIZE);
+            output.write(sector, 0, length);
+            padding -= length;
+        }
+
+        if (mini) {
+            writeMiniFat();
+        }
+
+        writeFat();
+        writeDifat();
+        writeDirectory();
+    }
+
+    private void writeMiniFat() throws IOException {
+        int miniSectors = (int) (allocatedSize() / MINI_SECTOR_SIZE);
+
+        for (int i = 0; i < ENTRIES_PER_SECTOR; ++i) {
+            int next = i < miniSectors - 1 ? i + 1 : i == miniSectors - 1 ? END_OF_CHAIN : FREE_SECTOR;
+            putInt(i * 4, next);
+        }
+
+        output.write(sector);
+    }
+
+    private void writeFat() throws IOException {
+        int totalSectors = directorySector() + 1;
+
+        for (int fat = 0; fat < fatSectors; ++fat) {
+            for (int i = 0; i < ENTRIES_PER_SECTOR; ++i) {
+                int index = fat * ENTRIES_PER_SECTOR + i;
+                int entry;
+
+                if (index < dataSectors) {
+                    entry = index == dataSectors - 1 ? END_OF_CHAIN : index + 1;
+                }
+                else if (index >= totalSectors) {
+                    entry = FREE_SECTOR;
+                }
+                else if (index >= difatSector(0) && index < directorySector()) {
+                    entry = DIFAT_SECTOR;
+                }
+                else if (index >= fatSector(0) && index < difatSector(0)) {
+                    entry = FAT_SECTOR;
+                }
+                else {
+                    // The mini allocation table and the directory are both a single sector.
+                    entry = END_OF_CHAIN;
+                }
+
+                putInt(i * 4, entry);
+            }
+
+            output.write(sector);
+        }
+    }
+
+    // Each DIFAT sector lists the locations of the allocation table sectors that did not fit in the header, followed
+    // by the location of the next DIFAT sector.
+    private void writeDifat() throws IOException {
+        for (int difat = 0; difat < difatSectors; ++difat) {
+            for (int i = 0; i < ENTRIES_PER_SECTOR - 1; ++i) {
+                int fat = HEADER_DIFAT_ENTRIES + difat * (ENTRIES_PER_SECTOR - 1) + i;
+                putInt(i * 4, fat < fatSectors ? fatSector(fat) : FREE_SECTOR);
+            }
+
+            putInt(SECTOR_SIZE - 4, difat < difatSectors - 1 ? difatSector(difat + 1) : END_OF_CHAIN);
+            output.write(sector);
+        }
+    }
+
+    private void writeDirectory() throws IOException {
+        clearSector();
+
+        // The root entry owns the mini stream, if there is one.
+        putEntry(0, "Root Entry", 5, mini ? 0 : END_OF_CHAIN, mini ? allocatedSize() : 0);
+        putInt(76, 1);
+        putEntry(1, streamName, 2, 0, streamSize);
+
+        // Unused entries have no siblings or children.
+        for (int entry = 2; entry < SECTOR_SIZE / DIRECTORY_ENTRY_SIZE; ++entry) {
+            int offset = entry * DIRECTORY_ENTRY_SIZE;
+            putInt(offset + 68, NO_STREAM);
+            putInt(offset + 72, NO_STREAM);
+            putInt(offset + 76, NO_STREAM);
+        }
+
+        output.write(sector);
+    }
+
+    private void putEntry(int entry, String name, int type, int startSector, long size) {
+        int offset = entry * DIRECTORY_ENTRY_SIZE;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_16LE);
+
+        System.arraycopy(nameBytes, 0, sector, offset, nameBytes.length);
+        putShort(offset + 64, nameBytes.length + 2);
+        sector[offset + 66] = (byte) type;
+        sector[offset + 67] = 1;
+        putInt(offset + 68, NO_STREAM);
+        putInt(offset + 72, NO_STREAM);
+        putInt(offset + 76, NO_STREAM);
+        putInt(offset + 116, startSector);
+        putInt(offset + 120, (int) size);
+    }
+
+    // The number of bytes allocated to the stream, rounded up to a whole mini sector if stored in the mini stream.
+    private long allocatedSize() {
+        return mini ? (streamSize + MINI_SECTOR_SIZE - 1) / MINI_SECTOR_SIZE * MINI_SECTOR_SIZE : streamSize;
+    }
+
+    private int miniFatSector() {
+        return dataSectors;
+    }
+
+    private int fatSector(int index) {
+        return dataSectors + miniFatSectors + index;
+    }
+
+    private int difatSector(int index) {
+        return fatSector(fatSectors) + index;
+    }
+
+    private int directorySector() {
+        return difatSector(difatSectors);
+    }
+
+    private void clearSector() {
+        Arrays.fill(sector, (byte) 0);
+    }
+
+    private void putShort(int offset, int value) {
+        sector[offset] = (byte) value;
+        sector[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private void putInt(int offset, int value) {
+        sector[offset] = (byte) value;
+        sector[offset + 1] = (byte) (value >>> 8);
+        sector[offset + 2] = (byte) (value >>> 16);
+        sector[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,319 @@
+package com.widen.tabitha.plugins.excel;
+
+import com.widen.tabitha.reader.ReaderOptions;
+import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowRange;
+import com.widen.tabitha.reader.RowReader;
+import com.widen.tabitha.reader.SpooledInput;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads rows from an Office Open XML spreadsheet, parsing multiple sheets at once using multiple threads.
+ * <p>
+ * Each sheet is a separate part of the package, so up to {@link ReaderOptions#getParallelism()} sheets are parsed at
+ * the same time, all sharing a single shared strings table. Rows are handed over in chunks through a bounded queue, so
+ * a sheet that gets ahead of the reader waits instead of being buffered in memory.
+ * <p>
+ * If {@link ReaderOptions#isPreserveOrder()} is enabled, pages are produced one at a time in their original order while
+ * the sheets after the current one are parsed ahead, each buffering at most a few chunks of rows. Otherwise the rows of
+ * all sheets being parsed are produced as soon as they are ready, so rows from different pages are interleaved. The
+ * rows of each page are still produced in order, and row and page indexes are the same either way.
+ * <p>
+ * Since sheets are parsed ahead, rows outside of {@link ReaderOptions#getRowOffset()} and
+ * {@link ReaderOptions#getRowLimit()} are parsed before being dropped, but no more sheets are started once the limit is
+ * reached.
+ * <p>
+ * Rows are never reused by this reader, regardless of {@link ReaderOptions#isReuseRows()}.
+ */
+public class ParallelXLSXRowReader implements RowReader {
+    private static final int CHUNK_SIZE = 256;
+    private static final int CHUNKS_PER_SHEET = 8;
+
+    private final ReaderOptions options;
+    private final OPCPackage opcPackage;
+    private final SpooledInput spooledInput;
+    private final SharedStringsTable stringsTable;
+    private final XSSFReader.SheetIterator sheetIterator;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    // The queue shared by every sheet when not preserving order.
+    private final BlockingQueue<Chunk> sharedQueue;
+
+    // Sheets that have been started but whose last chunk has not been read yet, in order.
+    private final ArrayDeque<Sheet> sheets = new ArrayDeque<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private long nextSheetIndex;
+
+    private List<Row> currentRows;
+    private int currentRowIndex;
+
+    // The rows to produce, and the pages that have produced a row so far.
+    private final RowRange range;
+    private final Set<Long> startedPages = new HashSet<>();
+
+    /**
+     * Open an XLSX file from the file system.
+     *
+     * @param path The path of the file to open.
+     * @param options Options to pass to the reader.
+     * @return A new row reader.
+     */
+    public static ParallelXLSXRowReader open(Path path, ReaderOptions options) throws IOException {
+        return XLSXRowReader.open(path, options, ParallelXLSXRowReader::new);
+    }
+
+    /**
+     * Open an XLSX file from a stream. See {@link XLSXRowReader#open(InputStream, ReaderOptions)} for how the stream is
+     * buffered.
+     *
+     * @param inputStream The stream to open.
+     * @param options Options to pass to the reader.
+     * @return A new row reader.
+     */
+    public static ParallelXLSXRowReader open(InputStream inputStream, ReaderOptions options) throws IOException {
+        return XLSXRowReader.open(inputStream, options, ParallelXLSXRowReader::new);
+    }
+
+    private ParallelXLSXRowReader(OPCPackage opcPackage, SpooledInput spooledInput, ReaderOptions options) throws IOException {
+        this.options = options != null ? options : new ReaderOptions();
+        this.opcPackage = opcPackage;
+        this.spooledInput = spooledInput;
+        parallelism = Math.max(this.options.getParallelism(), 1);
+        range = RowRange.of(this.options);
+        stringsTable = new SharedStringsTable(opcPackage, this.options.getSharedStringsCacheSize());
+
+        try {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+        }
+        catch (Exception e) {
+            stringsTable.close();
+            throw new IOException(e);
+        }
+
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "tabitha-xlsx-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sharedQueue = this.options.isPreserveOrder() ? null : new ArrayBlockingQueue<>(CHUNKS_PER_SHEET * parallelism);
+    }
+
+    @Override
+    public Optional<Row> read() throws IOException {
+        while (true) {
+            if (range != null && range.isFinished()) {
+                return Optional.empty();
+            }
+
+            Optional<Row> row = readParsed();
+
+            if (range == null || !row.isPresent()) {
+                return row;
+            }
+
+            switch (range.next(startedPages.add(row.get().pageIndex()))) {
+                case READ:
+                    return row;
+                case STOP:
+                    return Optional.empty();
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+
+        // Wait for sheets being parsed to stop before closing the strings table and package they read from.
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            stringsTable.close();
+        }
+        finally {
+            try {
+                opcPackage.revert();
+            }
+            finally {
+                if (spooledInput != null) {
+                    spooledInput.close();
+                }
+            }
+        }
+    }
+
+    // Take the next row parsed by any sheet.
+    private Optional<Row> readParsed() throws IOException {
+        while (currentRows == null || currentRowIndex == currentRows.size()) {
+            schedule();
+
+            if (sheets.isEmpty()) {
+                currentRows = null;
+                return Optional.empty();
+            }
+
+            Chunk chunk = take(sharedQueue != null ? sharedQueue : sheets.peek().queue);
+
+            if (chunk.last) {
+                sheets.remove(chunk.sheet);
+            }
+
+            if (chunk.error != null) {
+                if (chunk.error instanceof IOException) {
+                    throw (IOException) chunk.error;
+                }
+
+                if (chunk.error instanceof Error) {
+                    throw (Error) chunk.error;
+                }
+
+                throw new IOException(chunk.error);
+            }
+
+            currentRows = chunk.rows;
+            currentRowIndex = 0;
+        }
+
+        return Optional.of(currentRows.get(currentRowIndex++));
+    }
+
+    // Start parsing more sheets while there are threads free. Sheets are only started from the reading thread, since
+    // the sheet iterator is not thread safe.
+    private void schedule() throws IOException {
+        while (running.get() < parallelism && sheets.size() < parallelism * 2 && sheetIterator.hasNext()) {
+            InputStream inputStream = sheetIterator.next();
+            long index = nextSheetIndex++;
+            String name = sheetIterator.getSheetName();
+
+            // Skip sheets that are not selected without parsing them.
+            if (!options.isPageSelected(index, name)) {
+                inputStream.close();
+                continue;
+            }
+
+            Sheet sheet = new Sheet(
+                index,
+                name,
+                sharedQueue != null ? sharedQueue : new ArrayBlockingQueue<>(CHUNKS_PER_SHEET)
+            );
+
+            sheets.add(sheet);
+            running.incrementAndGet();
+            executor.execute(() -> parse(sheet, inputStream));
+        }
+    }
+
+    // Parse all rows of a sheet into its queue, ending with a chunk marked as the last.
+    private void parse(Sheet sheet, InputStream inputStream) {
+        try {
+            List<Row> rows = new ArrayList<>(CHUNK_SIZE);
+            Throwable error = null;
+
+            try (SpreadsheetMLReader reader = new SpreadsheetMLReader(inputStream, stringsTable, options, null)) {
+                while (true) {
+                    CellSink.ListSink cells = new CellSink.ListSink();
+
+                    if (!reader.readRow(cells)) {
+                        break;
+                    }
+
+                    rows.add(Row
+                        .fromStream(sheet.index, reader.getRowIndex() - 1, cells.cells.stream())
+                        .withPageName(sheet.name));
+
+                    if (rows.size() == CHUNK_SIZE) {
+                        sheet.queue.put(new Chunk(sheet, rows, false, null));
+                        rows = new ArrayList<>(CHUNK_SIZE);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                throw e;
+            }
+            catch (Throwable e) {
+                // Errors must be passed on as well, or the reading thread would wait for the last chunk forever.
+                rows = Collections.emptyList();
+                error = e;
+            }
+
+            // Free up the thread before the last chunk can be read, so that the next sheet can be started as soon as
+            // this one is finished with.
+            running.decrementAndGet();
+            sheet.queue.put(new Chunk(sheet, rows, true, error));
+        }
+        catch (InterruptedException e) {
+            // The reader was closed.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Chunk take(BlockingQueue<Chunk> queue) throws IOException {
+        try {
+            return queue.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * A sheet being parsed.
+     */
+    private static class Sheet {
+        private final long index;
+        private final String name;
+        private final BlockingQueue<Chunk> queue;
+
+        Sheet(long index, String name, BlockingQueue<Chunk> queue) {
+            this.index = index;
+            this.name = name;
+            this.queue = queue;
+        }
+    }
+
+    /**
+     * Rows parsed from a sheet, or the error that stopped it from being parsed.
+     */
+    private static class Chunk {
+        private final Sheet sheet;
+        private final List<Row> rows;
+        private final boolean last;
+        private final Throwable error;
+
+        Chunk(Sheet sheet, List<Row> rows, boolean last, Throwable error) {
+            this.sheet = sheet;
+            this.rows = rows;
+            this.last = last;
+            this.error = error;
+        }
+    }
+}
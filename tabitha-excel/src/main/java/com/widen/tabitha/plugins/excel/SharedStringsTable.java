@@ -0,0 +1,386 @@
+package com.widen.tabitha.plugins.excel;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only shared strings table that keeps the strings of a workbook off the heap.
+ * <p>
+ * Each string is stored as UTF-8 bytes along with an index of where each string starts. Small tables are kept in heap
+ * arrays, but once either grows past a limit it is written to a temporary file that is memory-mapped once the table
+ * has been read, so the heap used does not grow with the number of strings. Strings are only decoded when requested,
+ * and an optional cache keeps the most recently used strings decoded.
+ * <p>
+ * The table is not read until the first string is requested, so that reading only a few rows, or sheets without any
+ * shared strings, does not pay for reading a large table.
+ * <p>
+ * Strings can be read by multiple threads at once. Closing deletes any temporary files.
+ */
+final class SharedStringsTable implements Closeable {
+    // Files are mapped in windows of this size. Strings never cross a window boundary.
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    // Tables up to this size are kept on the heap.
+    private static final int IN_MEMORY_LIMIT = 1 << 20;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OPCPackage opcPackage;
+    private final Storage data = new Storage();
+    private final Storage index = new Storage();
+    private final Map<Integer, String> cache;
+
+    // Set once the table has been read. The fields below are only written before then.
+    private volatile boolean loaded;
+    private IOException loadFailure;
+    private List<ByteBuffer> dataWindows;
+    private List<ByteBuffer> indexWindows;
+    private int count;
+
+    // Scratch space that mapped strings are copied into before being decoded, for each thread reading the table.
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[256]);
+
+    /**
+     * Create a shared strings table for a package, which is read when first used.
+     *
+     * @param opcPackage The package to read from.
+     * @param cacheSize The number of decoded strings to cache, or zero to disable caching.
+     */
+    SharedStringsTable(OPCPackage opcPackage, int cacheSize) {
+        this.opcPackage = opcPackage;
+        cache = cacheSize > 0 ? new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > cacheSize;
+            }
+        } : null;
+    }
+
+    /**
+     * Get the number of strings in the table.
+     */
+    int getCount() throws IOException {
+        load();
+        return count;
+    }
+
+    /**
+     * Get a string from the table.
+     *
+     * @param index The index of the string.
+     * @return The string.
+     * @throws IndexOutOfBoundsException if there is no string with the given index.
+     */
+    String getEntryAt(int index) throws IOException {
+        load();
+
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("No shared string at index " + index);
+        }
+
+        if (cache == null) {
+            return decode(index);
+        }
+
+        String value;
+        synchronized (cache) {
+            value = cache.get(index);
+        }
+
+        if (value == null) {
+            value = decode(index);
+
+            synchronized (cache) {
+                cache.put(index, value);
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            data.close();
+        }
+        finally {
+            index.close();
+        }
+    }
+
+    // Read the table if it has not been read yet. A table that failed to be read fails the same way every time.
+    private void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+
+            if (loadFailure != null) {
+                throw loadFailure;
+            }
+
+            try {
+                List<PackagePart> parts = opcPackage
+                    .getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+
+                if (!parts.isEmpty()) {
+                    try (InputStream inputStream = parts.get(0).getInputStream()) {
+                        count = readStrings(inputStream);
+                    }
+                }
+
+                dataWindows = data.map();
+                indexWindows = index.map();
+            }
+            catch (XMLStreamException | RuntimeException e) {
+                loadFailure = new IOException(e);
+                throw loadFailure;
+            }
+            catch (IOException e) {
+                loadFailure = e;
+                throw e;
+            }
+
+            loaded = true;
+        }
+    }
+
+    private String decode(int entry) {
+        long position = indexWindows
+            .get((int) (entry * 8L / WINDOW_SIZE))
+            .getLong((int) (entry * 8L % WINDOW_SIZE));
+
+        ByteBuffer window = dataWindows.get((int) (position / WINDOW_SIZE));
+        int offset = (int) (position % WINDOW_SIZE);
+        int length = window.getInt(offset);
+
+        // Small tables can be decoded straight from the heap.
+        if (window.hasArray()) {
+            return new String(window.array(), window.arrayOffset() + offset + 4, length, StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes = scratch.get();
+
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            scratch.set(bytes);
+        }
+
+        // Read through a duplicate so that the shared buffer's position is never changed.
+        ByteBuffer view = window.duplicate();
+        view.position(offset + 4);
+        view.get(bytes, 0, length);
+
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Parse each string item and store it, returning the number of strings. Rich text runs are concatenated.
+    private int readStrings(InputStream inputStream) throws IOException, XMLStreamException {
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+        StringBuilder builder = new StringBuilder();
+        boolean inText = false;
+        int count = 0;
+
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if ("si".equals(reader.getLocalName())) {
+                        builder.setLength(0);
+                    }
+                    else if ("t".equals(reader.getLocalName())) {
+                        inText = true;
+                    }
+                }
+                else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    if (inText) {
+                        builder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if ("t".equals(reader.getLocalName())) {
+                        inText = false;
+                    }
+                    else if ("si".equals(reader.getLocalName())) {
+                        add(builder.toString());
+                        ++count;
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        return count;
+    }
+
+    private void add(String value) throws IOException {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+
+        if (encoded.length + 4 > WINDOW_SIZE) {
+            throw new IOException("Shared string is too long");
+        }
+
+        // Start a new window if the string would cross the end of the current one.
+        long position = data.position();
+        int remaining = (int) (WINDOW_SIZE - position % WINDOW_SIZE);
+
+        if (encoded.length + 4 > remaining) {
+            data.skip(remaining);
+            position += remaining;
+        }
+
+        index.writeLong(position);
+        data.writeInt(encoded.length);
+        data.write(encoded, 0, encoded.length);
+    }
+
+    /**
+     * An append-only byte store that is kept on the heap until it grows past {@link #IN_MEMORY_LIMIT}, after which it
+     * is written to a temporary file.
+     */
+    private static class Storage implements Closeable {
+        private byte[] buffer = new byte[8 * 1024];
+        private int buffered;
+        private long written;
+        private Path path;
+        private FileChannel channel;
+
+        long position() {
+            return written + buffered;
+        }
+
+        void writeInt(int value) throws IOException {
+            reserve(4);
+            ByteBuffer.wrap(buffer, buffered, 4).putInt(value);
+            buffered += 4;
+        }
+
+        void writeLong(long value) throws IOException {
+            reserve(8);
+            ByteBuffer.wrap(buffer, buffered, 8).putLong(value);
+            buffered += 8;
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                reserve(1);
+
+                int chunk = Math.min(length, buffer.length - buffered);
+                System.arraycopy(bytes, offset, buffer, buffered, chunk);
+                buffered += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        // Write padding bytes, whose values are never read.
+        void skip(int length) throws IOException {
+            while (length > 0) {
+                reserve(1);
+
+                int chunk = Math.min(length, buffer.length - buffered);
+                Arrays.fill(buffer, buffered, buffered + chunk, (byte) 0);
+                buffered += chunk;
+                length -= chunk;
+            }
+        }
+
+        // Get the stored bytes as a list of windows of at most WINDOW_SIZE bytes.
+        List<ByteBuffer> map() throws IOException {
+            if (channel == null) {
+                return Collections.singletonList(ByteBuffer.wrap(buffer, 0, buffered).slice());
+            }
+
+            flush();
+
+            List<ByteBuffer> windows = new ArrayList<>();
+            for (long position = 0; position < written; position += WINDOW_SIZE) {
+                windows.add(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, written - position)));
+            }
+
+            // Mappings remain valid after the channel is closed.
+            channel.close();
+            return windows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+
+            if (path != null) {
+                try {
+                    Files.deleteIfExists(path);
+                }
+                catch (IOException e) {
+                    // Some platforms do not allow deleting a file while it is mapped.
+                    path.toFile().deleteOnExit();
+                }
+            }
+        }
+
+        // Make room for at least the given number of bytes in the buffer, growing it while the store is small enough
+        // to stay on the heap.
+        private void reserve(int length) throws IOException {
+            if (buffer.length - buffered >= length) {
+                return;
+            }
+
+            if (channel == null && buffered + length <= IN_MEMORY_LIMIT) {
+                buffer = Arrays.copyOf(buffer, Math.min(IN_MEMORY_LIMIT, Math.max(buffer.length * 2, buffered + length)));
+                return;
+            }
+
+            if (channel == null) {
+                path = Files.createTempFile("tabitha", ".strings");
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            flush();
+
+            if (buffer.length > BUFFER_SIZE) {
+                buffer = new byte[BUFFER_SIZE];
+            }
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer source = ByteBuffer.wrap(buffer, 0, buffered);
+
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+
+            written += buffered;
+            buffered = 0;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.widen.tabitha.plugins.excel;
+
+import com.widen.tabitha.reader.ColumnProjection;
+import com.widen.tabitha.reader.PageStats;
+import com.widen.tabitha.reader.ReaderOptions;
+import com.widen.tabitha.reader.RowRange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses an XML stream of an OpenXML sheet in a lazy manner.
+ */
+@Slf4j
+final class SpreadsheetMLReader implements Closeable {
+    private final SpreadsheetMLScanner scanner;
+    private final SharedStringsTable stringsTable;
+    private final ReaderOptions options;
+    private final RowRange range;
+    private ColumnProjection projection;
+    private long rowIndex = 0;
+    private int cellColumn = 0;
+    private boolean started = false;
+    private boolean finished = false;
+
+    /**
+     * @param range The rows to read, shared by the readers of every sheet, or null to read every row.
+     */
+    SpreadsheetMLReader(InputStream stream, SharedStringsTable stringsTable, ReaderOptions options, RowRange range)
+        throws IOException {
+        scanner = new SpreadsheetMLScanner(stream);
+        this.stringsTable = stringsTable;
+        this.options = options;
+        this.range = range;
+        projection = ColumnProjection.of(options);
+    }
+
+    /**
+     * Get the row number of the last row read, where the first row is 1.
+     */
+    long getRowIndex() {
+        return rowIndex;
+    }
+
+    /**
+     * Reads the next row in the spreadsheet into a cell sink.
+     *
+     * @param cells The sink to write the cell values to.
+     * @return True if a row was read, or false if no more rows exist.
+     * @throws IOException Thrown if any I/O or parsing error occurs.
+     */
+    public boolean readRow(CellSink cells) throws IOException {
+        while (!finished) {
+            int event = scanner.next();
+
+            // Start of a new row.
+            if (event == SpreadsheetMLScanner.START_ELEMENT && scanner.nameEquals("row")) {
+                // Ignore hidden rows.
+                if (!options.isIncludeHiddenRows() && scanner.attribute("hidden") && isTrue()) {
+                    continue;
+                }
+
+                if (scanner.attribute("r") && scanner.parseLong()) {
+                    rowIndex = scanner.longValue();
+                }
+                else {
+                    log.debug("Row is missing an index number!");
+                    rowIndex++;
+                }
+
+                RowRange.Action action = range != null ? range.next(!started) : RowRange.Action.READ;
+                started = true;
+
+                if (action == RowRange.Action.STOP) {
+                    finished = true;
+                    break;
+                }
+
+                // Columns selected by name are found in the first row, so it has to be read in full even if skipped.
+                if (projection != null && projection.needsHeader()) {
+                    CellSink.ListSink header = new CellSink.ListSink();
+                    parseRow(header, null);
+                    projection = projection.withHeader(header.names());
+
+                    if (action == RowRange.Action.SKIP) {
+                        continue;
+                    }
+
+                    header.project(projection, cells);
+                    return true;
+                }
+
+                // The cells of a skipped row are passed over like any other element outside of a row.
+                if (action == RowRange.Action.SKIP) {
+                    continue;
+                }
+
+                parseRow(cells, projection);
+                return true;
+            }
+
+            // Rows only appear within the sheet data, so the rest of the sheet can be skipped.
+            if (event == SpreadsheetMLScanner.END_DOCUMENT
+                || event == SpreadsheetMLScanner.END_ELEMENT && scanner.nameEquals("sheetData")) {
+                finished = true;
+            }
+        }
+
+        // Could not find a row element.
+        return false;
+    }
+
+    /**
+     * Counts the rows of the sheet and finds its width without reading any cell values. The width is taken from the
+     * dimension of the sheet if it has one, and otherwise from the cell refs of each row.
+     *
+     * @param pageIndex The index of the sheet.
+     * @param pageName The name of the sheet.
+     * @return The stats of the sheet.
+     * @throws IOException Thrown if any I/O or parsing error occurs.
+     */
+    PageStats inspect(long pageIndex, String pageName) throws IOException {
+        long rows = 0;
+        int columns = 0;
+        boolean dimensioned = false;
+        boolean hidden = false;
+
+        while (true) {
+            int event = scanner.next();
+
+            if (event == SpreadsheetMLScanner.END_DOCUMENT
+                || event == SpreadsheetMLScanner.END_ELEMENT && scanner.nameEquals("sheetData")) {
+                break;
+            }
+
+            if (event != SpreadsheetMLScanner.START_ELEMENT) {
+                continue;
+            }
+
+            if (scanner.nameEquals("dimension") && scanner.attribute("ref")) {
+                // Only a range is trusted, since some writers always give a single cell when they don't track it.
+                String ref = scanner.valueAsString();
+                int separator = ref.indexOf(':');
+
+                if (separator >= 0) {
+                    columns = ParseHelpers.getColumnFromCellName(ref.substring(separator + 1)) + 1;
+                    dimensioned = true;
+                }
+            }
+            else if (scanner.nameEquals("row")) {
+                hidden = !options.isIncludeHiddenRows() && scanner.attribute("hidden") && isTrue();
+                cellColumn = 0;
+
+                if (!hidden) {
+                    rows++;
+                }
+            }
+            else if (scanner.nameEquals("c") && !dimensioned && !hidden) {
+                if (scanner.attribute("r")) {
+                    cellColumn = scanner.columnValue();
+                }
+
+                columns = Math.max(columns, ++cellColumn);
+            }
+        }
+
+        finished = true;
+        return new PageStats(pageIndex, pageName, rows, columns);
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.close();
+    }
+
+    private void parseRow(CellSink cells, ColumnProjection projection) throws IOException {
+        cellColumn = 0;
+
+        while (true) {
+            int event = scanner.next();
+
+            // The start of a new cell.
+            if (event == SpreadsheetMLScanner.START_ELEMENT && scanner.nameEquals("c")) {
+                parseCell(cells, projection);
+            }
+
+            // Reached the end of the row.
+            else if (event == SpreadsheetMLScanner.END_ELEMENT && scanner.nameEquals("row")) {
+                break;
+            }
+
+            else if (event == SpreadsheetMLScanner.END_DOCUMENT) {
+                finished = true;
+                break;
+            }
+        }
+    }
+
+    private void parseCell(CellSink cells, ColumnProjection projection) throws IOException {
+        // Parse the cell ref so we know what column the cell belongs to.
+        if (scanner.attribute("r")) {
+            cellColumn = scanner.columnValue();
+        }
+
+        int column = projection != null ? projection.position(cellColumn) : cellColumn;
+
+        // A following cell without a ref string belongs in the next column.
+        cellColumn++;
+
+        // Skip cells outside of the projection without decoding their values.
+        if (column < 0) {
+            skipCell();
+            return;
+        }
+
+        CellType cellType = CellType.NUMBER;
+
+        // Extract the cell data type.
+        if (scanner.attribute("t")) {
+            cellType = CellType.of(scanner);
+        }
+
+        // Get the cell value.
+        while (true) {
+            int event = scanner.next();
+
+            // An inline string value. We know how this is structured, so we will simply ignore the cell type attribute
+            // from earlier.
+            if (event == SpreadsheetMLScanner.START_ELEMENT && scanner.nameEquals("is")) {
+                cells.string(column, parseInlineString());
+            }
+
+            // Normal cell value. We'll need the cell type attribute to help us here.
+            else if (event == SpreadsheetMLScanner.START_ELEMENT && scanner.nameEquals("v")) {
+                scanner.readText();
+                parseValue(cells, column, cellType);
+            }
+
+            // Reached the end of the cell.
+            else if (event == SpreadsheetMLScanner.END_ELEMENT && scanner.nameEquals("c")) {
+                break;
+            }
+
+            else if (event == SpreadsheetMLScanner.END_DOCUMENT) {
+                throw new IOException("Unexpected end of sheet");
+            }
+        }
+    }
+
+    private void skipCell() throws IOException {
+        while (true) {
+            int event = scanner.next();
+
+            if (event == SpreadsheetMLScanner.END_ELEMENT && scanner.nameEquals("c")) {
+                break;
+            }
+
+            if (event == SpreadsheetMLScanner.END_DOCUMENT) {
+                throw new IOException("Unexpected end of sheet");
+            }
+        }
+    }
+
+    private void parseValue(CellSink cells, int column, CellType cellType) throws IOException {
+        switch (cellType) {
+            // Boolean type.
+            case BOOLEAN:
+                if (!scanner.isValueEmpty()) {
+                    cells.bool(column, isTrue());
+                }
+                break;
+
+            // Shared string table string; the value is the index into the actual string value in the table.
+            case SHARED_STRING:
+                if (!scanner.parseLong() || scanner.longValue() < 0 || scanner.longValue() > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid shared string index: " + scanner.valueAsString());
+                }
+                cells.string(column, stringsTable.getEntryAt((int) scanner.longValue()));
+                break;
+
+            // Error type. Basically an inline string.
+            case ERROR:
+                cells.string(column, "ERROR:" + scanner.valueAsString());
+                break;
+
+            // Formula type. The <v> tag here will be the precomputed formula value, which is exactly what we
+            // want to return.
+            case FORMULA_STRING:
+                cells.string(column, scanner.valueAsString());
+                break;
+
+            // Number type. We are going to ignore any special number formatting for performance purposes.
+            default:
+                // Integers are parsed straight from the bytes. Anything else is a floating point number.
+                if (scanner.parseLong()) {
+                    cells.integer(column, scanner.longValue());
+                }
+                else if (!scanner.isValueEmpty()) {
+                    cells.floating(column, scanner.doubleValue());
+                }
+                break;
+        }
+    }
+
+    private String parseInlineString() throws IOException {
+        String string = "";
+
+        while (true) {
+            int event = scanner.next();
+
+            if (event == SpreadsheetMLScanner.START_ELEMENT && scanner.nameEquals("t")) {
+                scanner.readText();
+
+                // Rich text has multiple runs, but most strings only have one.
+                string = string.isEmpty() ? scanner.valueAsString() : string + scanner.valueAsString();
+            }
+            else if (event == SpreadsheetMLScanner.END_ELEMENT && scanner.nameEquals("is")) {
+                break;
+            }
+            else if (event == SpreadsheetMLScanner.END_DOCUMENT) {
+                throw new IOException("Unexpected end of sheet");
+            }
+        }
+
+        return string;
+    }
+
+    // Check if the current value is a true boolean value.
+    private boolean isTrue() {
+        return scanner.valueEquals("1") || scanner.valueEquals("true");
+    }
+
+    /**
+     * The types of cell values that are handled differently.
+     */
+    private enum CellType {
+        NUMBER,
+        BOOLEAN,
+        SHARED_STRING,
+        ERROR,
+        FORMULA_STRING;
+
+        static CellType of(SpreadsheetMLScanner scanner) {
+            if (scanner.valueEquals("s")) {
+                return SHARED_STRING;
+            }
+            if (scanner.valueEquals("b")) {
+                return BOOLEAN;
+            }
+            if (scanner.valueEquals("e")) {
+                return ERROR;
+            }
+            if (scanner.valueEquals("str")) {
+                return FORMULA_STRING;
+            }
+            return NUMBER;
+        }
+    }
+}
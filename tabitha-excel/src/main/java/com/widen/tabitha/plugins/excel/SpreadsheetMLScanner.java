@@ -0,0 +1,618 @@
+package com.widen.tabitha.plugins.excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal pull scanner for SpreadsheetML worksheet parts that works directly on UTF-8 encoded bytes.
+ * <p>
+ * Only the subset of XML needed to read worksheets is supported: elements, attributes, character data, the predefined
+ * and numeric character references, and CDATA sections. Processing instructions, comments and document type
+ * declarations are skipped. Namespaces are not resolved, so element names are compared without their prefix.
+ * <p>
+ * Attribute values and text are exposed as a current value that can be compared or parsed in place, so that numbers
+ * and cell references never have to be turned into strings. Attribute values are not unescaped.
+ */
+final class SpreadsheetMLScanner implements Closeable {
+    static final int START_ELEMENT = 1;
+    static final int END_ELEMENT = 2;
+    static final int END_DOCUMENT = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Character references longer than this are not valid.
+    private static final int MAX_REFERENCE_LENGTH = 12;
+
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] CDATA_START = ascii("<![CDATA[");
+    private static final byte[] CDATA_END = ascii("]]>");
+    private static final byte[] PROCESSING_INSTRUCTION_END = ascii("?>");
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+
+    private final InputStream inputStream;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    // The local name and attributes of the current element, which stay in the buffer until the next call to next().
+    private int nameStart;
+    private int nameEnd;
+    private int attributesStart;
+    private int attributesEnd;
+
+    // Set for an empty element tag, which produces an end element event on the following call to next().
+    private boolean pendingEnd;
+
+    // The current attribute value or text, which is either in the buffer or in the scratch array.
+    private byte[] value;
+    private int valueStart;
+    private int valueEnd;
+    private long longValue;
+
+    // Text containing references or CDATA sections is decoded into this array.
+    private byte[] scratch = new byte[256];
+
+    SpreadsheetMLScanner(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+
+        if (startsWith(position, BYTE_ORDER_MARK)) {
+            position += BYTE_ORDER_MARK.length;
+        }
+    }
+
+    /**
+     * Advance to the next start or end tag, skipping any text before it.
+     *
+     * @return The type of the event, one of {@link #START_ELEMENT}, {@link #END_ELEMENT} or {@link #END_DOCUMENT}.
+     */
+    int next() throws IOException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            return END_ELEMENT;
+        }
+
+        while (true) {
+            if (!skipTo('<')) {
+                return END_DOCUMENT;
+            }
+
+            if (ensure(position, 2) + 2 > limit) {
+                throw new IOException("Unexpected end of document");
+            }
+
+            byte type = buffer[position + 1];
+
+            if (type == '?') {
+                skipPast(PROCESSING_INSTRUCTION_END);
+                continue;
+            }
+
+            if (type == '!') {
+                if (startsWith(position, COMMENT_START)) {
+                    skipPast(COMMENT_END);
+                }
+                else if (startsWith(position, CDATA_START)) {
+                    skipPast(CDATA_END);
+                }
+                else {
+                    position = findTagEnd() + 1;
+                }
+                continue;
+            }
+
+            int end = findTagEnd();
+
+            if (type == '/') {
+                setName(position + 2, end);
+                position = end + 1;
+                return END_ELEMENT;
+            }
+
+            int nameLimit = position + 1;
+            while (nameLimit < end && buffer[nameLimit] != '/' && !isWhitespace(buffer[nameLimit])) {
+                ++nameLimit;
+            }
+
+            setName(position + 1, nameLimit);
+            attributesStart = nameLimit;
+            attributesEnd = end;
+
+            if (buffer[end - 1] == '/') {
+                pendingEnd = true;
+                attributesEnd = end - 1;
+            }
+
+            position = end + 1;
+            return START_ELEMENT;
+        }
+    }
+
+    /**
+     * Check if the local name of the current element is equal to an ASCII name.
+     */
+    boolean nameEquals(String name) {
+        return equals(buffer, nameStart, nameEnd, name);
+    }
+
+    /**
+     * Find an attribute of the current start element and make its value the current value.
+     *
+     * @param name The qualified name of the attribute.
+     * @return True if the attribute was found.
+     */
+    boolean attribute(String name) {
+        int i = attributesStart;
+
+        while (true) {
+            while (i < attributesEnd && isWhitespace(buffer[i])) {
+                ++i;
+            }
+
+            int start = i;
+            while (i < attributesEnd && buffer[i] != '=' && !isWhitespace(buffer[i])) {
+                ++i;
+            }
+
+            int end = i;
+            while (i < attributesEnd && buffer[i] != '"' && buffer[i] != '\'') {
+                ++i;
+            }
+
+            if (i >= attributesEnd) {
+                return false;
+            }
+
+            byte quote = buffer[i++];
+            int valueStart = i;
+            while (i < attributesEnd && buffer[i] != quote) {
+                ++i;
+            }
+
+            if (equals(buffer, start, end, name)) {
+                setValue(buffer, valueStart, i);
+                return true;
+            }
+
+            ++i;
+        }
+    }
+
+    /**
+     * Read the character data up to the next tag and make it the current value. References and CDATA sections are
+     * decoded.
+     */
+    void readText() throws IOException {
+        if (pendingEnd) {
+            setValue(buffer, position, position);
+            return;
+        }
+
+        // Bytes from the position onwards have not been copied yet. Until a reference or CDATA section is found, the
+        // text can be used in place without copying.
+        int length = 0;
+        boolean copying = false;
+        int i = position;
+
+        while (true) {
+            i = ensure(i, 1);
+
+            if (i == limit) {
+                throw new IOException("Unexpected end of document");
+            }
+
+            byte b = buffer[i];
+
+            if (b != '<' && b != '&') {
+                ++i;
+                continue;
+            }
+
+            i = ensure(i, CDATA_START.length);
+            boolean cdata = b == '<' && startsWith(i, CDATA_START);
+
+            if (b == '<' && !cdata) {
+                if (copying) {
+                    length = copy(i, length);
+                    setValue(scratch, 0, length);
+                }
+                else {
+                    setValue(buffer, position, i);
+                }
+
+                position = i;
+                return;
+            }
+
+            length = copy(i, length);
+            copying = true;
+
+            if (cdata) {
+                i = position + CDATA_START.length;
+
+                while (true) {
+                    i = ensure(i, CDATA_END.length);
+
+                    if (limit - i < CDATA_END.length) {
+                        throw new IOException("Unterminated CDATA section");
+                    }
+
+                    if (startsWith(i, CDATA_END)) {
+                        break;
+                    }
+
+                    ++i;
+                }
+
+                position += CDATA_START.length;
+                length = copy(i, length);
+                position = i + CDATA_END.length;
+            }
+            else {
+                i = ensure(i, MAX_REFERENCE_LENGTH);
+
+                int end = i + 1;
+                while (end < limit && end - i < MAX_REFERENCE_LENGTH && buffer[end] != ';') {
+                    ++end;
+                }
+
+                if (end == limit || buffer[end] != ';') {
+                    throw new IOException("Invalid character reference");
+                }
+
+                length = appendCodePoint(decodeReference(i + 1, end), length);
+                position = end + 1;
+            }
+
+            i = position;
+        }
+    }
+
+    /**
+     * Check if the current value is equal to an ASCII string.
+     */
+    boolean valueEquals(String string) {
+        return equals(value, valueStart, valueEnd, string);
+    }
+
+    /**
+     * Check if the current value is empty.
+     */
+    boolean isValueEmpty() {
+        return valueStart == valueEnd;
+    }
+
+    /**
+     * Get the current value as a string.
+     */
+    String valueAsString() {
+        return new String(value, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse the current value as a decimal integer. If it is one, it is then available from {@link #longValue()}.
+     *
+     * @return True if the value is an integer that fits in a long.
+     */
+    boolean parseLong() {
+        int i = valueStart;
+        boolean negative = false;
+
+        if (i < valueEnd && (value[i] == '-' || value[i] == '+')) {
+            negative = value[i++] == '-';
+        }
+
+        if (i == valueEnd) {
+            return false;
+        }
+
+        // Accumulate negatively, since the negative range is larger.
+        long result = 0;
+
+        for (; i < valueEnd; ++i) {
+            int digit = value[i] - '0';
+
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                return false;
+            }
+
+            result = result * 10 - digit;
+        }
+
+        if (!negative && result == Long.MIN_VALUE) {
+            return false;
+        }
+
+        longValue = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * Get the integer parsed by the last successful call to {@link #parseLong()}.
+     */
+    long longValue() {
+        return longValue;
+    }
+
+    /**
+     * Parse the current value as a floating point number.
+     *
+     * @throws NumberFormatException if the value is not a number.
+     */
+    double doubleValue() {
+        return Double.parseDouble(new String(value, valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Get the column number of the current value as a cell reference, such as "AJ23".
+     *
+     * @return The column number, where "A" = 0.
+     * @see ParseHelpers#getColumnFromCellName(String)
+     */
+    int columnValue() {
+        int column = 0;
+
+        for (int i = valueStart; i < valueEnd; ++i) {
+            int c = value[i];
+
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+
+            column = (column * 26) + (c - 'A' + 1);
+        }
+
+        return column - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private void setName(int start, int end) {
+        nameStart = start;
+        nameEnd = end;
+
+        for (int i = start; i < end; ++i) {
+            if (buffer[i] == ':') {
+                nameStart = i + 1;
+            }
+            else if (isWhitespace(buffer[i])) {
+                nameEnd = i;
+                break;
+            }
+        }
+    }
+
+    private void setValue(byte[] bytes, int start, int end) {
+        value = bytes;
+        valueStart = start;
+        valueEnd = end;
+    }
+
+    // Find the closing '>' of the tag starting at the position, skipping over any quoted attribute values.
+    private int findTagEnd() throws IOException {
+        int i = position + 1;
+        byte quote = 0;
+
+        while (true) {
+            i = ensure(i, 1);
+
+            if (i == limit) {
+                throw new IOException("Unexpected end of document");
+            }
+
+            byte b = buffer[i];
+
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            }
+            else if (b == '"' || b == '\'') {
+                quote = b;
+            }
+            else if (b == '>') {
+                return i;
+            }
+
+            ++i;
+        }
+    }
+
+    // Move the position to the next occurrence of a byte, discarding everything before it.
+    private boolean skipTo(char c) throws IOException {
+        while (true) {
+            for (int i = position; i < limit; ++i) {
+                if (buffer[i] == c) {
+                    position = i;
+                    return true;
+                }
+            }
+
+            position = limit;
+
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private void skipPast(byte[] terminator) throws IOException {
+        while (!startsWith(position, terminator)) {
+            if (ensure(position, terminator.length) + terminator.length > limit) {
+                throw new IOException("Unexpected end of document");
+            }
+
+            ++position;
+        }
+
+        position += terminator.length;
+    }
+
+    private boolean startsWith(int index, byte[] prefix) throws IOException {
+        index = ensure(index, prefix.length);
+
+        if (limit - index < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; ++i) {
+            if (buffer[index + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Make sure that at least the given number of bytes from an index are buffered, unless the stream ends first.
+    // Returns the index adjusted for any bytes moved by reading more.
+    private int ensure(int index, int count) throws IOException {
+        while (limit - index < count) {
+            int offset = index - position;
+            boolean filled = fill();
+            index = position + offset;
+
+            if (!filled) {
+                break;
+            }
+        }
+
+        return index;
+    }
+
+    // Read more of the stream into the buffer, keeping everything from the position onwards.
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+
+        limit += read;
+        return true;
+    }
+
+    // Copy the bytes from the position up to an index onto the end of the scratch array, returning the new length.
+    private int copy(int index, int length) {
+        int count = index - position;
+
+        if (length + count > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(length + count, scratch.length * 2));
+        }
+
+        System.arraycopy(buffer, position, scratch, length, count);
+        position = index;
+        return length + count;
+    }
+
+    private int appendCodePoint(int codePoint, int length) {
+        if (length + 4 > scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+
+        if (codePoint < 0x80) {
+            scratch[length++] = (byte) codePoint;
+        }
+        else if (codePoint < 0x800) {
+            scratch[length++] = (byte) (0xc0 | codePoint >> 6);
+            scratch[length++] = (byte) (0x80 | codePoint & 0x3f);
+        }
+        else if (codePoint < 0x10000) {
+            scratch[length++] = (byte) (0xe0 | codePoint >> 12);
+            scratch[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            scratch[length++] = (byte) (0x80 | codePoint & 0x3f);
+        }
+        else {
+            scratch[length++] = (byte) (0xf0 | codePoint >> 18);
+            scratch[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            scratch[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            scratch[length++] = (byte) (0x80 | codePoint & 0x3f);
+        }
+
+        return length;
+    }
+
+    // Decode the character reference between '&' and ';'.
+    private int decodeReference(int start, int end) throws IOException {
+        if (equals(buffer, start, end, "amp")) {
+            return '&';
+        }
+        if (equals(buffer, start, end, "lt")) {
+            return '<';
+        }
+        if (equals(buffer, start, end, "gt")) {
+            return '>';
+        }
+        if (equals(buffer, start, end, "quot")) {
+            return '"';
+        }
+        if (equals(buffer, start, end, "apos")) {
+            return '\'';
+        }
+
+        boolean hex = end - start > 2 && buffer[start] == '#' && buffer[start + 1] == 'x';
+
+        if (hex || end - start > 1 && buffer[start] == '#') {
+            int codePoint = 0;
+
+            for (int i = start + (hex ? 2 : 1); i < end; ++i) {
+                int digit = Character.digit(buffer[i], hex ? 16 : 10);
+
+                if (digit < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    throw new IOException("Invalid character reference");
+                }
+
+                codePoint = codePoint * (hex ? 16 : 10) + digit;
+            }
+
+            if (Character.isValidCodePoint(codePoint)) {
+                return codePoint;
+            }
+        }
+
+        throw new IOException("Invalid character reference");
+    }
+
+    private static boolean equals(byte[] bytes, int start, int end, String string) {
+        if (end - start != string.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < string.length(); ++i) {
+            if (bytes[start + i] != string.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static byte[] ascii(String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,6 +1,7 @@
 package com.widen.tabitha.plugins.excel;
 
 import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.RowBatch;
 import com.widen.tabitha.writer.PagedWriter;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
@@ -137,6 +138,44 @@ public class WorkbookRowWriter implements PagedWriter {
         }
     }
 
+    @Override
+    public void writeBatch(RowBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); ++row) {
+            org.apache.poi.ss.usermodel.Row workbookRow = getOrCreateSheet().createRow(rowIndex++);
+
+            for (int column = 0; column < batch.width(row); ++column) {
+                RowBatch.Column vector = batch.column(column);
+                Cell workbookCell = workbookRow.createCell(column);
+
+                switch (vector.type(row)) {
+                    case INT:
+                        workbookCell.setCellType(CellType.NUMERIC);
+                        workbookCell.setCellValue(vector.getLong(row));
+                        break;
+
+                    case FLOAT:
+                        workbookCell.setCellType(CellType.NUMERIC);
+                        workbookCell.setCellValue(vector.getDouble(row));
+                        break;
+
+                    case BOOL:
+                        workbookCell.setCellType(CellType.BOOLEAN);
+                        workbookCell.setCellValue(vector.getBoolean(row));
+                        break;
+
+                    case STRING:
+                        workbookCell.setCellType(CellType.STRING);
+                        workbookCell.setCellValue(vector.getString(row));
+                        break;
+
+                    default:
+                        workbookCell.setCellType(CellType.BLANK);
+                        break;
+                }
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         if (output != null) {
@@ -3,6 +3,7 @@ package com.widen.tabitha.plugins.excel;
 import com.widen.tabitha.plugins.ReaderPlugin;
 import com.widen.tabitha.plugins.WriterPlugin;
 import com.widen.tabitha.reader.InlineHeaderReader;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.RowReader;
 import com.widen.tabitha.writer.RowWriter;
@@ -11,6 +12,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.List;
 
 public class XLSPlugin implements ReaderPlugin, WriterPlugin {
     @Override
@@ -30,8 +32,18 @@ public class XLSPlugin implements ReaderPlugin, WriterPlugin {
             .decorate(XLSRowReader.open(inputStream, options), options);
     }
 
+    @Override
+    public List<PageStats> inspect(Path path, ReaderOptions options) throws IOException {
+        return XLSRowReader.inspect(path, options);
+    }
+
+    @Override
+    public List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        return XLSRowReader.inspect(inputStream, options);
+    }
+
     @Override
     public RowWriter createWriter(OutputStream outputStream) {
-        return WorkbookRowWriter.xls(outputStream);
+        return new XLSRowWriter(outputStream);
     }
 }
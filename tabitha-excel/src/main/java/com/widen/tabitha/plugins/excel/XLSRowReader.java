@@ -1,45 +1,108 @@
 package com.widen.tabitha.plugins.excel;
 
-import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.ColumnProjection;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.reader.RowRange;
 import com.widen.tabitha.reader.RowReader;
-import org.apache.poi.hssf.record.BoundSheetRecord;
-import org.apache.poi.hssf.record.CellRecord;
-import org.apache.poi.hssf.record.LabelSSTRecord;
-import org.apache.poi.hssf.record.MulBlankRecord;
-import org.apache.poi.hssf.record.MulRKRecord;
-import org.apache.poi.hssf.record.NumberRecord;
-import org.apache.poi.hssf.record.Record;
-import org.apache.poi.hssf.record.RecordFactory;
-import org.apache.poi.hssf.record.RecordFactoryInputStream;
-import org.apache.poi.hssf.record.SSTRecord;
+import com.widen.tabitha.reader.SpooledInput;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * Streams rows from an Excel binary spreadsheet file.
+ * <p>
+ * BIFF8 records are scanned directly from the workbook stream. Only the records needed to locate sheets and decode
+ * cell values are parsed; every other record is skipped by its length without being decoded. Cell values are decoded
+ * straight from the read buffer, including the cached values of formula cells.
  */
 public class XLSRowReader implements RowReader {
+    private static final int BUFFER_SIZE = 128 * 1024;
+
+    // Record identifiers.
+    private static final int BOF = 0x0809;
+    private static final int EOF = 0x000a;
+    private static final int FILEPASS = 0x002f;
+    private static final int BOUNDSHEET = 0x0085;
+    private static final int SST = 0x00fc;
+    private static final int CONTINUE = 0x003c;
+    private static final int NUMBER = 0x0203;
+    private static final int RK = 0x027e;
+    private static final int MULRK = 0x00bd;
+    private static final int BLANK = 0x0201;
+    private static final int MULBLANK = 0x00be;
+    private static final int LABEL = 0x0204;
+    private static final int LABELSST = 0x00fd;
+    private static final int BOOLERR = 0x0205;
+    private static final int FORMULA = 0x0006;
+    private static final int STRING = 0x0207;
+    private static final int DIMENSIONS = 0x0200;
+    private static final int ROW = 0x0208;
+
+    private static final int WORKSHEET = 0x0010;
+
     private final ReaderOptions options;
     private final POIFSFileSystem fileSystem;
     private final InputStream documentStream;
-    private final RecordFactoryInputStream recordStream;
+    private final RecordInput input;
+
+    // The temporary file the workbook was spooled to, if any.
+    private final SpooledInput spooledInput;
+
+    // Workbook globals.
+    private final List<String> sheetNames = new ArrayList<>();
+    private final List<Boolean> sheetHidden = new ArrayList<>();
+    private final Map<Long, Integer> sheetOffsets = new HashMap<>();
+    private String[] stringTable = new String[0];
+
+    // Position within the substreams of the workbook.
+    private int depth;
+    private int substreamCount;
+    private int scanSheetIndex = -1;
+    private boolean scanningCells;
+
+    // The next cell to be returned, if one has been scanned.
+    private boolean cellPending;
+    private int cellSheet;
+    private int cellRow;
+    private int cellColumn;
+    private int cellKind;
+    private double cellNumber;
+    private String cellString;
+
+    // The remaining columns of a MULRK or MULBLANK record being returned one cell at a time.
+    private int multiSid;
+    private int multiColumn;
+    private int multiLastColumn;
 
-    // Temporary buffer of records that have been read but not yet been parsed.
-    private final ArrayDeque<Record> recordBuffer = new ArrayDeque<>();
+    // A formula cell whose string value is stored in the following STRING record.
+    private boolean formulaStringPending;
 
-    private Record currentRecord;
-    private SSTRecord stringTable;
-    private BoundSheetRecord currentSheet;
-    private long currentSheetIndex = -1;
-    private long currentRowIndex = 0;
+    private int currentSheetIndex = -1;
+    private long currentRowIndex;
+    private long nextRowIndex;
+
+    // The selected columns, and their positions in the current sheet once resolved.
+    private final ColumnProjection projection;
+    private ColumnProjection sheetProjection;
+
+    // The rows to read, or null to read every row.
+    private final RowRange range;
+
+    // Sink for the row reused for every read if enabled in the reader options.
+    private final CellSink.RowSink rowSink;
 
     /**
      * Open an XLS file from the file system.
@@ -49,137 +112,744 @@ public class XLSRowReader implements RowReader {
      * @return A new row reader.
      */
     public static XLSRowReader open(Path path, ReaderOptions options) throws IOException {
-        return new XLSRowReader(new POIFSFileSystem(path.toFile()), options);
+        return new XLSRowReader(new POIFSFileSystem(path.toFile()), null, options);
     }
 
     /**
      * Open an XLS file from a stream.
+     * <p>
+     * By default the entire stream is read into memory. If {@link ReaderOptions#getSpoolThreshold()} is set, streams
+     * larger than the threshold are spooled to a temporary file instead, which is then opened as if by
+     * {@link #open(Path, ReaderOptions)} and deleted when the reader is closed.
      *
      * @param inputStream The stream to open.
      * @param options Options to pass to the reader.
      * @return A new row reader.
      */
     public static XLSRowReader open(InputStream inputStream, ReaderOptions options) throws IOException {
-        return new XLSRowReader(new POIFSFileSystem(inputStream), options);
+        if (options == null || options.getSpoolThreshold() < 0) {
+            return new XLSRowReader(new POIFSFileSystem(inputStream), null, options);
+        }
+
+        SpooledInput spooledInput = SpooledInput.spool(inputStream, options.getSpoolThreshold());
+
+        try {
+            POIFSFileSystem fileSystem = spooledInput.getPath().isPresent()
+                ? new POIFSFileSystem(spooledInput.getPath().get().toFile())
+                : new POIFSFileSystem(spooledInput.newInputStream());
+
+            return new XLSRowReader(fileSystem, spooledInput, options);
+        }
+        catch (IOException | RuntimeException e) {
+            spooledInput.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Count the rows and find the width of each sheet of an XLS file from the file system, using the DIMENSIONS and ROW
+     * records of each sheet without reading any cell records or the shared string table.
+     * <p>
+     * These records cover rows and cells that are only formatted, so trailing rows without values are counted even
+     * though reading the sheet stops at its last value.
+     *
+     * @param path The path of the file to inspect.
+     * @param options Options that select the sheets to count.
+     * @return The stats of each selected sheet, in order.
+     */
+    public static List<PageStats> inspect(Path path, ReaderOptions options) throws IOException {
+        try (XLSRowReader reader = open(path, options)) {
+            return reader.readStats();
+        }
     }
 
-    private XLSRowReader(POIFSFileSystem poifsFileSystem, ReaderOptions options) throws IOException {
+    /**
+     * Count the rows and find the width of each sheet of an XLS file from a stream, which is buffered as described by
+     * {@link #open(InputStream, ReaderOptions)}.
+     *
+     * @param inputStream The stream to inspect.
+     * @param options Options that select the sheets to count.
+     * @return The stats of each selected sheet, in order.
+     */
+    public static List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        try (XLSRowReader reader = open(inputStream, options)) {
+            return reader.readStats();
+        }
+    }
+
+    private XLSRowReader(POIFSFileSystem poifsFileSystem, SpooledInput spooledInput, ReaderOptions options)
+        throws IOException {
         fileSystem = poifsFileSystem;
+        this.spooledInput = spooledInput;
         documentStream = fileSystem.createDocumentInputStream("Workbook");
-        recordStream = new RecordFactoryInputStream(documentStream, false);
+        input = new RecordInput(documentStream);
         this.options = options != null ? options : new ReaderOptions();
+        rowSink = this.options.isReuseRows() ? new CellSink.RowSink() : null;
+        projection = ColumnProjection.of(this.options);
+        range = RowRange.of(this.options);
     }
 
     @Override
-    public Optional<Row> read() {
-        ArrayList<Variant> currentCells = new ArrayList<>();
-        boolean rowFound = false;
+    public Optional<Row> read() throws IOException {
+        if (rowSink != null) {
+            rowSink.row.begin(0, 0);
 
-        while (advance()) {
-            // Store the string table for later.
-            if (currentRecord.getSid() == SSTRecord.sid) {
-                stringTable = (SSTRecord) currentRecord;
+            if (!readRow(rowSink)) {
+                return Optional.empty();
             }
 
-            // This indicates the start of a new sheet.
-            else if (currentRecord.getSid() == BoundSheetRecord.sid) {
-                currentSheet = (BoundSheetRecord) currentRecord;
-                currentSheetIndex++;
-                currentRowIndex = 0;
+            rowSink.row.end();
+            rowSink.row.setPageIndex(currentSheetIndex);
+            rowSink.row.setIndex(currentRowIndex);
+            rowSink.row.setPageName(sheetName(currentSheetIndex));
+            return rowSink.row.asOptional();
+        }
+
+        CellSink.ListSink cells = new CellSink.ListSink();
 
-                // If we already populated some cells, then end of sheet implies end of row.
-                if (rowFound) {
-                    break;
-                }
+        if (readRow(cells)) {
+            return Optional.of(Row
+                .fromStream(currentSheetIndex, currentRowIndex, cells.cells.stream())
+                .withPageName(sheetName(currentSheetIndex)));
+        }
+
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean readBatch(RowBatch batch) throws IOException {
+        batch.clear();
+        CellSink.BatchSink sink = new CellSink.BatchSink(batch);
+
+        while (!batch.isFull()) {
+            sink.row = batch.addRow(0, 0);
+
+            if (!readRow(sink)) {
+                batch.removeRow(sink.row);
+                break;
             }
 
-            // These appear in the middle of the cell records, to
-            // specify that the next bunch are empty but styled.
-            // Expand this out into multiple blank cells.
-            else if (currentRecord.getSid() == MulBlankRecord.sid) {
-                pushBack(RecordFactory.convertBlankRecords((MulBlankRecord) currentRecord));
+            batch.setPageIndex(sink.row, currentSheetIndex);
+            batch.setIndex(sink.row, currentRowIndex);
+            batch.setPageName(sink.row, sheetName(currentSheetIndex));
+        }
+
+        return !batch.isEmpty();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            documentStream.close();
+            fileSystem.close();
+        }
+        finally {
+            if (spooledInput != null) {
+                spooledInput.close();
             }
+        }
+    }
 
-            // This is multiple consecutive number cells in one record
-            // Expand this out into multiple regular number cells.
-            else if (currentRecord.getSid() == MulRKRecord.sid) {
-                pushBack(RecordFactory.convertRKRecords((MulRKRecord) currentRecord));
+    // Read the cells of the next row into the given sink. Rows without any cells before the last row of a sheet are
+    // returned as empty rows. Returns false if there are no more rows.
+    private boolean readRow(CellSink cells) throws IOException {
+        // Stop scanning the workbook as soon as the row limit is reached.
+        while (range == null || !range.isFinished()) {
+            if (!cellPending && !(cellPending = nextCell())) {
+                return false;
             }
 
-            // Indicates an actual cell, which is what we are interested in.
-            else if (currentRecord instanceof CellRecord) {
-                CellRecord cellRecord = (CellRecord) currentRecord;
+            boolean pageStart = cellSheet != currentSheetIndex;
 
-                // Ignore rows in hidden sheets.
-                if (!currentSheet.isHidden() || options.isIncludeHiddenRows()) {
-                    rowFound = true;
+            if (pageStart) {
+                currentSheetIndex = cellSheet;
+                nextRowIndex = 0;
+                sheetProjection = projection;
+            }
 
-                    // Make sure the cell actually belongs to the row we are currently reading.
-                    if (cellRecord.getRow() == currentRowIndex) {
-                        // Fill in any "missing" / blank cells.
-                        while (currentCells.size() < cellRecord.getColumn()) {
-                            currentCells.add(Variant.NONE);
-                        }
+            currentRowIndex = nextRowIndex++;
 
-                        // Parse a numeric cell.
-                        if (cellRecord.getSid() == NumberRecord.sid) {
-                            NumberRecord numberRecord = (NumberRecord) cellRecord;
-                            currentCells.add(Variant.of(numberRecord.getValue()));
-                        }
+            RowRange.Action action = range != null ? range.next(pageStart) : RowRange.Action.READ;
 
-                        // Parse a shared string cell.
-                        else if (cellRecord.getSid() == LabelSSTRecord.sid) {
-                            int index = ((LabelSSTRecord) cellRecord).getSSTIndex();
-                            String value = stringTable.getString(index).getString();
-                            currentCells.add(Variant.of(value));
-                        }
+            if (action == RowRange.Action.STOP) {
+                return false;
+            }
 
-                        // Any other type of cell we don't support, so just put a blank.
-                        else {
-                            currentCells.add(Variant.NONE);
-                        }
+            // Columns selected by name are found in the first row, so it has to be read in full even if skipped.
+            CellSink.ListSink header = sheetProjection != null && sheetProjection.needsHeader()
+                ? new CellSink.ListSink()
+                : null;
+
+            // Cells for earlier rows are out of order and are ignored, as are the cells of skipped rows.
+            while (cellPending && cellSheet == currentSheetIndex && cellRow <= currentRowIndex) {
+                if (cellRow == currentRowIndex) {
+                    if (header != null) {
+                        emitCell(header, cellColumn);
                     }
+                    else if (action == RowRange.Action.READ) {
+                        int column = sheetProjection != null ? sheetProjection.position(cellColumn) : cellColumn;
 
-                    // Cell belongs to a future row, so we need to return empty rows until we reach the row index this
-                    // cell belongs to.
-                    else if (cellRecord.getRow() > currentRowIndex) {
-                        pushBack(cellRecord);
-                        break;
+                        if (column >= 0) {
+                            emitCell(cells, column);
+                        }
                     }
                 }
+
+                cellPending = nextCell();
+            }
+
+            if (header != null) {
+                sheetProjection = sheetProjection.withHeader(header.names());
+
+                if (action == RowRange.Action.READ) {
+                    header.project(sheetProjection, cells);
+                }
+            }
+
+            if (action == RowRange.Action.READ) {
+                return true;
             }
         }
 
-        if (rowFound) {
-            return Optional.of(Row
-                .fromStream(currentSheetIndex, currentRowIndex++, currentCells.stream())
-                .withPageName(currentSheet.getSheetname()));
+        return false;
+    }
+
+    private void emitCell(CellSink cells, int column) {
+        switch (cellKind) {
+            case CellKind.BOOL:
+                cells.bool(column, cellNumber != 0);
+                break;
+            case CellKind.FLOAT:
+                cells.floating(column, cellNumber);
+                break;
+            case CellKind.STRING:
+                cells.string(column, cellString);
+                break;
+            default:
+                cells.none(column);
+                break;
         }
+    }
 
-        return Optional.empty();
+    // Scan forward to the next cell in a visible worksheet, parsing any workbook globals along the way. Returns false
+    // if the end of the workbook has been reached.
+    private boolean nextCell() throws IOException {
+        if (multiSid != 0) {
+            if (nextMultiCell()) {
+                return true;
+            }
+
+            multiSid = 0;
+        }
+
+        while (input.next()) {
+            int sid = input.sid;
+
+            if (sid == BOF) {
+                beginSubstream();
+                continue;
+            }
+
+            if (sid == EOF) {
+                if (--depth == 0) {
+                    scanningCells = false;
+                }
+                continue;
+            }
+
+            // Records in the globals substream.
+            if (depth == 1 && substreamCount == 1) {
+                if (sid == BOUNDSHEET) {
+                    readBoundSheet();
+                }
+                else if (sid == SST) {
+                    readStringTable();
+                }
+                else if (sid == FILEPASS) {
+                    throw new IOException("Encrypted workbooks are not supported");
+                }
+                continue;
+            }
+
+            // Skip substreams embedded in sheets, such as charts.
+            if (!scanningCells || depth != 1) {
+                continue;
+            }
+
+            if (sid == STRING && formulaStringPending) {
+                formulaStringPending = false;
+                cellKind = CellKind.STRING;
+                input.beginContinuable(3);
+                cellString = input.nextChars(input.getShort(0), (input.getByte(2) & 0x01) != 0);
+                return true;
+            }
+
+            if (readCell(sid)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
-    @Override
-    public void close() throws IOException {
-        documentStream.close();
-        fileSystem.close();
+    // Scan the workbook for the extent of each selected sheet. Every row up to the last one with a cell is read, which
+    // the DIMENSIONS record gives as one past its index. ROW records are checked too, in case DIMENSIONS is missing.
+    private List<PageStats> readStats() throws IOException {
+        List<PageStats> pages = new ArrayList<>();
+        long rows = 0;
+        int columns = 0;
+
+        while (input.next()) {
+            int sid = input.sid;
+
+            if (sid == BOF) {
+                beginSubstream();
+
+                if (depth == 1) {
+                    rows = 0;
+                    columns = 0;
+                }
+                continue;
+            }
+
+            if (sid == EOF) {
+                if (--depth == 0 && scanningCells) {
+                    pages.add(new PageStats(scanSheetIndex, sheetName(scanSheetIndex), rows, columns));
+                    scanningCells = false;
+                }
+                continue;
+            }
+
+            // Only the sheet names are needed from the workbook globals.
+            if (depth == 1 && substreamCount == 1) {
+                if (sid == BOUNDSHEET) {
+                    readBoundSheet();
+                }
+                else if (sid == FILEPASS) {
+                    throw new IOException("Encrypted workbooks are not supported");
+                }
+                continue;
+            }
+
+            if (!scanningCells || depth != 1) {
+                continue;
+            }
+
+            if (sid == DIMENSIONS) {
+                rows = Math.max(rows, input.getInt(4) & 0xffffffffL);
+                columns = Math.max(columns, input.getShort(10));
+            }
+            else if (sid == ROW) {
+                rows = Math.max(rows, input.getShort(0) + 1L);
+                columns = Math.max(columns, input.getShort(4));
+            }
+        }
+
+        return pages;
+    }
+
+    private void beginSubstream() {
+        if (depth++ > 0) {
+            return;
+        }
+
+        ++substreamCount;
+
+        // The first substream holds the workbook globals, and each following one is a sheet.
+        if (substreamCount > 1) {
+            Integer index = sheetOffsets.get(input.recordOffset);
+            scanSheetIndex = index != null ? index : substreamCount - 2;
+
+            boolean hidden = scanSheetIndex < sheetHidden.size() && sheetHidden.get(scanSheetIndex);
+
+            // Cell records of sheets that are not selected are skipped like any other record.
+            scanningCells = input.getShort(2) == WORKSHEET
+                && (!hidden || options.isIncludeHiddenRows())
+                && options.isPageSelected(scanSheetIndex, sheetName(scanSheetIndex));
+        }
+    }
+
+    // Decode a cell record into the pending cell. Returns false if the record is not a cell with a value.
+    private boolean readCell(int sid) {
+        switch (sid) {
+            case NUMBER:
+                beginCell(CellKind.FLOAT);
+                cellNumber = input.getDouble(6);
+                return true;
+
+            case RK:
+                beginCell(CellKind.FLOAT);
+                cellNumber = decodeRk(input.getInt(6));
+                return true;
+
+            case LABELSST:
+                beginCell(CellKind.STRING);
+                int index = input.getInt(6);
+                cellString = index >= 0 && index < stringTable.length ? stringTable[index] : null;
+                return true;
+
+            case LABEL:
+                beginCell(CellKind.STRING);
+                cellString = input.readString(6, 2);
+                return true;
+
+            case BOOLERR:
+                if (input.getByte(7) == 0) {
+                    beginCell(CellKind.BOOL);
+                    cellNumber = input.getByte(6);
+                }
+                else {
+                    beginCell(CellKind.STRING);
+                    cellString = errorString(input.getByte(6));
+                }
+                return true;
+
+            case FORMULA:
+                return readFormula();
+
+            case BLANK:
+                beginCell(CellKind.NONE);
+                return true;
+
+            case MULRK:
+            case MULBLANK:
+                formulaStringPending = false;
+                multiSid = sid;
+                multiColumn = input.getShort(2);
+                multiLastColumn = input.getShort(input.length - 2);
+                return nextMultiCell();
+
+            default:
+                return false;
+        }
+    }
+
+    // Decode the cached result of a formula. String results are stored in the following STRING record.
+    private boolean readFormula() {
+        // A value whose last two bytes are all ones is not a number, and its first byte gives the type of the result.
+        if (input.getShort(12) != 0xffff) {
+            beginCell(CellKind.FLOAT);
+            cellNumber = input.getDouble(6);
+            return true;
+        }
+
+        switch (input.getByte(6)) {
+            case 0:
+                beginCell(CellKind.STRING);
+                formulaStringPending = true;
+                return false;
+
+            case 1:
+                beginCell(CellKind.BOOL);
+                cellNumber = input.getByte(8);
+                return true;
+
+            case 2:
+                beginCell(CellKind.STRING);
+                cellString = errorString(input.getByte(8));
+                return true;
+
+            case 3:
+                beginCell(CellKind.STRING);
+                cellString = "";
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private boolean nextMultiCell() {
+        if (multiColumn > multiLastColumn) {
+            return false;
+        }
+
+        int offset = 4 + (multiColumn - input.getShort(2)) * (multiSid == MULRK ? 6 : 2);
+        cellSheet = scanSheetIndex;
+        cellRow = input.getShort(0);
+        cellColumn = multiColumn++;
+
+        if (multiSid == MULRK) {
+            cellKind = CellKind.FLOAT;
+            cellNumber = decodeRk(input.getInt(offset + 2));
+        }
+        else {
+            cellKind = CellKind.NONE;
+        }
+
+        return true;
+    }
+
+    private void beginCell(int kind) {
+        formulaStringPending = false;
+        cellSheet = scanSheetIndex;
+        cellRow = input.getShort(0);
+        cellColumn = input.getShort(2);
+        cellKind = kind;
+    }
+
+    private void readBoundSheet() {
+        sheetOffsets.put(input.getInt(0) & 0xffffffffL, sheetNames.size());
+        sheetHidden.add((input.getByte(4) & 0x03) != 0);
+        sheetNames.add(input.readString(6, 1));
+    }
+
+    // Read the shared string table, which may be split over any number of CONTINUE records.
+    private void readStringTable() throws IOException {
+        int count = input.getInt(4);
+        stringTable = new String[Math.max(count, 0)];
+        input.beginContinuable(8);
+
+        for (int i = 0; i < stringTable.length; ++i) {
+            int length = input.nextUnsignedShort();
+            int flags = input.nextByte();
+            int runs = (flags & 0x08) != 0 ? input.nextUnsignedShort() : 0;
+            long extendedLength = (flags & 0x04) != 0 ? input.nextInt() & 0xffffffffL : 0;
+
+            stringTable[i] = input.nextChars(length, (flags & 0x01) != 0);
+            input.skipContinuable(runs * 4L + extendedLength);
+        }
+    }
+
+    private String sheetName(int index) {
+        return index >= 0 && index < sheetNames.size() ? sheetNames.get(index) : null;
+    }
+
+    // Decode an RK value, which is either a 30-bit integer or the top 30 bits of a double, optionally divided by 100.
+    private static double decodeRk(int rk) {
+        double value = (rk & 0x02) != 0
+            ? rk >> 2
+            : Double.longBitsToDouble((long) (rk & 0xfffffffc) << 32);
+
+        return (rk & 0x01) != 0 ? value / 100 : value;
     }
 
-    // Push the given records onto the stack to be read again in order.
-    private void pushBack(Record... records) {
-        for (int i = records.length - 1; i >= 0; --i) {
-            recordBuffer.push(records[i]);
+    private static String errorString(int code) {
+        switch (code) {
+            case 0x00:
+                return "ERROR:#NULL!";
+            case 0x07:
+                return "ERROR:#DIV/0!";
+            case 0x0f:
+                return "ERROR:#VALUE!";
+            case 0x17:
+                return "ERROR:#REF!";
+            case 0x1d:
+                return "ERROR:#NAME?";
+            case 0x24:
+                return "ERROR:#NUM!";
+            case 0x2a:
+                return "ERROR:#N/A";
+            default:
+                return "ERROR:" + code;
         }
     }
 
-    // Consume the next record in the stream.
-    private boolean advance() {
-        currentRecord = recordBuffer.poll();
+    private static final class CellKind {
+        static final int NONE = 0;
+        static final int BOOL = 1;
+        static final int FLOAT = 2;
+        static final int STRING = 3;
+    }
+
+    /**
+     * Reads records from a workbook stream into a buffer that always holds the entire current record, so that record
+     * data can be decoded in place and uninteresting records can be skipped without decoding them.
+     */
+    private static class RecordInput {
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int bufferPosition;
+        private int bufferLimit;
+
+        // The stream offset of the start of the buffer.
+        private long bufferOffset;
+
+        int sid;
+        int length;
+        long recordOffset;
+
+        // Start of the current record data in the buffer.
+        private int start;
 
-        if (currentRecord == null) {
-            currentRecord = recordStream.nextRecord();
+        // Position within the current record while reading data that may be continued in CONTINUE records.
+        private int position;
+
+        RecordInput(InputStream inputStream) {
+            this.inputStream = inputStream;
         }
 
-        return currentRecord != null;
+        // Advance to the next record, returning false at the end of the stream.
+        boolean next() throws IOException {
+            if (!fill(4)) {
+                return false;
+            }
+
+            recordOffset = bufferOffset + bufferPosition;
+            sid = getUnsignedShort(buffer, bufferPosition);
+            length = getUnsignedShort(buffer, bufferPosition + 2);
+            bufferPosition += 4;
+
+            if (!fill(length)) {
+                throw new EOFException("Unexpected end of workbook stream");
+            }
+
+            start = bufferPosition;
+            bufferPosition += length;
+            return true;
+        }
+
+        int getByte(int offset) {
+            return buffer[start + offset] & 0xff;
+        }
+
+        int getShort(int offset) {
+            return getUnsignedShort(buffer, start + offset);
+        }
+
+        int getInt(int offset) {
+            return getInt(buffer, start + offset);
+        }
+
+        double getDouble(int offset) {
+            long low = getInt(offset) & 0xffffffffL;
+            long high = getInt(offset + 4) & 0xffffffffL;
+            return Double.longBitsToDouble(high << 32 | low);
+        }
+
+        // Read a string that lies entirely within the current record, with a one or two byte length.
+        String readString(int offset, int lengthSize) {
+            int count = lengthSize == 1 ? getByte(offset) : getShort(offset);
+            boolean wide = (getByte(offset + lengthSize) & 0x01) != 0;
+            int dataOffset = start + offset + lengthSize + 1;
+
+            if (wide) {
+                count = Math.min(count, (start + length - dataOffset) / 2);
+                return new String(buffer, dataOffset, count * 2, StandardCharsets.UTF_16LE);
+            }
+
+            count = Math.min(count, start + length - dataOffset);
+            return new String(buffer, dataOffset, count, StandardCharsets.ISO_8859_1);
+        }
+
+        void beginContinuable(int offset) {
+            position = offset;
+        }
+
+        int nextByte() throws IOException {
+            ensureContinuable();
+            return getByte(position++);
+        }
+
+        int nextUnsignedShort() throws IOException {
+            return nextByte() | nextByte() << 8;
+        }
+
+        int nextInt() throws IOException {
+            return nextUnsignedShort() | nextUnsignedShort() << 16;
+        }
+
+        // Read characters that may be split over CONTINUE records. Each continuation of the characters starts with a
+        // flags byte that specifies whether the characters in that record are compressed.
+        String nextChars(int count, boolean wide) throws IOException {
+            StringBuilder builder = null;
+            String chunk = null;
+
+            while (count > 0) {
+                if (position >= length) {
+                    ensureContinuable();
+                    wide = (getByte(position++) & 0x01) != 0;
+                }
+
+                int charSize = wide ? 2 : 1;
+                int chunkCount = Math.min(count, (length - position) / charSize);
+                chunk = new String(
+                    buffer,
+                    start + position,
+                    chunkCount * charSize,
+                    wide ? StandardCharsets.UTF_16LE : StandardCharsets.ISO_8859_1
+                );
+                position += chunkCount * charSize;
+                count -= chunkCount;
+
+                // Avoid copying strings that are not split.
+                if (count > 0 || builder != null) {
+                    if (builder == null) {
+                        builder = new StringBuilder();
+                    }
+
+                    builder.append(chunk);
+                }
+            }
+
+            if (builder != null) {
+                return builder.toString();
+            }
+
+            return chunk != null ? chunk : "";
+        }
+
+        void skipContinuable(long count) throws IOException {
+            while (count > 0) {
+                ensureContinuable();
+
+                int skipped = (int) Math.min(count, length - position);
+                position += skipped;
+                count -= skipped;
+            }
+        }
+
+        // Move to the next CONTINUE record if the current record has been read entirely.
+        private void ensureContinuable() throws IOException {
+            while (position >= length) {
+                if (!next()) {
+                    throw new EOFException("Unexpected end of workbook stream");
+                }
+
+                if (sid != CONTINUE) {
+                    throw new IOException("Expected a CONTINUE record but found " + sid);
+                }
+
+                position = 0;
+            }
+        }
+
+        // Make sure that at least the given number of bytes are in the buffer, returning false if the stream ends
+        // first.
+        private boolean fill(int count) throws IOException {
+            if (bufferLimit - bufferPosition >= count) {
+                return true;
+            }
+
+            // Move the remaining bytes to the start of the buffer.
+            int remaining = bufferLimit - bufferPosition;
+            System.arraycopy(buffer, bufferPosition, buffer, 0, remaining);
+            bufferOffset += bufferPosition;
+            bufferPosition = 0;
+            bufferLimit = remaining;
+
+            while (bufferLimit < count) {
+                int read = inputStream.read(buffer, bufferLimit, buffer.length - bufferLimit);
+
+                if (read < 0) {
+                    return false;
+                }
+
+                bufferLimit += read;
+            }
+
+            return true;
+        }
+
+        private static int getUnsignedShort(byte[] bytes, int offset) {
+            return bytes[offset] & 0xff | (bytes[offset + 1] & 0xff) << 8;
+        }
+
+        private static int getInt(byte[] bytes, int offset) {
+            return bytes[offset] & 0xff
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+        }
     }
 }
@@ -0,0 +1,645 @@
+package com.widen.tabitha.plugins.excel;
+
+import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.writer.PagedWriter;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Writes rows to an Excel binary spreadsheet by encoding BIFF8 records directly.
+ * <p>
+ * Unlike {@link WorkbookRowWriter#xls(OutputStream)}, cells are not kept in memory. Cell records for each sheet are
+ * written to a temporary file as rows are written, and the workbook is assembled into an OLE2 compound file when
+ * {@link #close()} is called. The only data kept in memory is the shared string table, so memory use is bounded by the
+ * number of distinct strings rather than the number of cells.
+ * <p>
+ * A sheet can hold at most 65,536 rows, so a new page is started automatically when the current sheet is full.
+ */
+public class XLSRowWriter implements PagedWriter {
+    private static final int MAX_ROWS = 1 << 16;
+    private static final int MAX_COLUMNS = 1 << 8;
+    private static final int MAX_STRING_LENGTH = 32767;
+    private static final int MAX_RECORD_LENGTH = 8224;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Record identifiers.
+    private static final int BOF = 0x0809;
+    private static final int EOF = 0x000a;
+    private static final int INTERFACEHDR = 0x00e1;
+    private static final int INTERFACEEND = 0x00e2;
+    private static final int CODEPAGE = 0x0042;
+    private static final int WINDOW1 = 0x003d;
+    private static final int FONT = 0x0031;
+    private static final int XF = 0x00e0;
+    private static final int STYLE = 0x0293;
+    private static final int BOUNDSHEET = 0x0085;
+    private static final int SST = 0x00fc;
+    private static final int EXTSST = 0x00ff;
+    private static final int CONTINUE = 0x003c;
+    private static final int DIMENSIONS = 0x0200;
+    private static final int WINDOW2 = 0x023e;
+    private static final int NUMBER = 0x0203;
+    private static final int RK = 0x027e;
+    private static final int LABELSST = 0x00fd;
+    private static final int BOOLERR = 0x0205;
+
+    // The default cell format, following the fifteen built-in style formats.
+    private static final int CELL_XF = 15;
+
+    // Sizes of the records written before and after the cells of a sheet.
+    private static final int SHEET_HEADER_SIZE = 20 + 18;
+    private static final int SHEET_TRAILER_SIZE = 22 + 4;
+
+    private static final int UTF_16_CODE_PAGE = 0x04b0;
+
+    // Excel only opens workbook streams that are stored outside of the mini stream, so small workbooks are padded with
+    // zeros after their last record up to the mini stream cutoff. Readers stop at the EOF record of the last sheet.
+    private static final int MIN_WORKBOOK_SIZE = 4096;
+
+    private final OutputStream output;
+    private final List<Sheet> sheets = new ArrayList<>();
+    private final Set<String> lowerCaseSheetNames = new HashSet<>();
+    private Sheet sheet;
+    private RecordBuffer sheetRecords;
+    private boolean closed;
+
+    // The shared string table.
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private long stringCellCount;
+
+    /**
+     * Create a new XLS row writer.
+     *
+     * @param output The output stream to write to.
+     */
+    public XLSRowWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Create a new XLS row writer.
+     *
+     * @param path The path of the file to write to.
+     * @return The new row writer.
+     */
+    public static XLSRowWriter open(Path path) throws IOException {
+        return new XLSRowWriter(Files.newOutputStream(path));
+    }
+
+    public int getPageIndex() {
+        ensureSheet();
+        return sheets.size() - 1;
+    }
+
+    public Optional<String> getPageName() {
+        ensureSheet();
+        return Optional.of(sheet.name);
+    }
+
+    /**
+     * Create a new Excel sheet.
+     * <p>
+     * The new sheet will be named "Sheet {num}", where {num} is the sheet's offset from the beginning.
+     */
+    @Override
+    public void beginPage() {
+        beginPage("Sheet " + sheets.size());
+    }
+
+    /**
+     * Create a new Excel sheet with the given name. Subsequent writes will go to this new sheet.
+     *
+     * @param name The name of the sheet.
+     * @throws IllegalArgumentException if the name is not a valid sheet name or is already in use.
+     */
+    @Override
+    public void beginPage(String name) {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+
+        WorkbookUtil.validateSheetName(name);
+
+        // Excel compares sheet names case-insensitively.
+        if (!lowerCaseSheetNames.add(name.toLowerCase())) {
+            throw new IllegalArgumentException("The workbook already contains a sheet named '" + name + "'");
+        }
+
+        try {
+            finishSheet();
+            sheet = new Sheet(name, Files.createTempFile("tabitha", ".biff"));
+            sheets.add(sheet);
+            sheetRecords = new RecordBuffer(BUFFER_SIZE, Files.newOutputStream(sheet.path));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(List<Variant> cells) throws IOException {
+        int row = beginRow(cells.size());
+
+        for (int column = 0; column < cells.size(); ++column) {
+            Variant cell = cells.get(column);
+
+            if (cell instanceof Variant.String) {
+                writeString(row, column, cell.toString());
+            }
+            else if (cell instanceof Variant.Int) {
+                writeLong(row, column, ((Variant.Int) cell).value());
+            }
+            else if (cell instanceof Variant.Float) {
+                writeDouble(row, column, ((Variant.Float) cell).value());
+            }
+            else if (cell instanceof Variant.Bool) {
+                writeBoolean(row, column, cell == Variant.Bool.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void writeBatch(RowBatch batch) throws IOException {
+        for (int index = 0; index < batch.size(); ++index) {
+            int width = batch.width(index);
+            int row = beginRow(width);
+
+            for (int column = 0; column < width; ++column) {
+                RowBatch.Column values = batch.column(column);
+
+                switch (values.type(index)) {
+                    case BOOL:
+                        writeBoolean(row, column, values.getBoolean(index));
+                        break;
+                    case INT:
+                        writeLong(row, column, values.getLong(index));
+                        break;
+                    case FLOAT:
+                        writeDouble(row, column, values.getDouble(index));
+                        break;
+                    case STRING:
+                        writeString(row, column, values.getString(index));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Assemble the workbook from the sheets written and write it to the output. If no sheets were created, a single
+     * empty sheet is created so that the file is a valid workbook.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try (OutputStream out = new BufferedOutputStream(output, BUFFER_SIZE)) {
+            ensureSheet();
+            finishSheet();
+            closed = true;
+
+            RecordBuffer globals = writeGlobals();
+            long size = globals.position;
+            for (Sheet sheet : sheets) {
+                size += SHEET_HEADER_SIZE + sheet.cellBytes + SHEET_TRAILER_SIZE;
+            }
+
+            CompoundFileWriter compoundFile = new CompoundFileWriter(out, "Workbook", Math.max(size, MIN_WORKBOOK_SIZE));
+            compoundFile.begin();
+            out.write(globals.data, 0, globals.position);
+
+            for (int i = 0; i < sheets.size(); ++i) {
+                Sheet sheet = sheets.get(i);
+                RecordBuffer records = new RecordBuffer(SHEET_HEADER_SIZE, null);
+
+                writeBof(records, 0x0010);
+
+                records.beginRecord(DIMENSIONS, 14);
+                records.putInt(0);
+                records.putInt(sheet.rows);
+                records.putShort(0);
+                records.putShort(sheet.columns);
+                records.putShort(0);
+
+                out.write(records.data, 0, records.position);
+                Files.copy(sheet.path, out);
+
+                // Only the first sheet is selected.
+                records.position = 0;
+                records.beginRecord(WINDOW2, 18);
+                records.putShort(i == 0 ? 0x06b6 : 0x00b6);
+                records.putShort(0);
+                records.putShort(0);
+                records.putInt(0x40);
+                records.putShort(0);
+                records.putShort(0);
+                records.putInt(0);
+                records.beginRecord(EOF, 0);
+
+                out.write(records.data, 0, records.position);
+            }
+
+            for (long padding = size; padding < MIN_WORKBOOK_SIZE; ++padding) {
+                out.write(0);
+            }
+
+            compoundFile.finish();
+        }
+        finally {
+            closed = true;
+
+            if (sheetRecords != null) {
+                sheetRecords.sink.close();
+            }
+
+            for (Sheet sheet : sheets) {
+                Files.deleteIfExists(sheet.path);
+            }
+        }
+    }
+
+    private void ensureSheet() {
+        if (sheet == null && !closed) {
+            beginPage();
+        }
+    }
+
+    private void finishSheet() throws IOException {
+        if (sheetRecords != null) {
+            RecordBuffer records = sheetRecords;
+            sheetRecords = null;
+
+            try (OutputStream sink = records.sink) {
+                records.flush();
+            }
+
+            sheet.cellBytes = Files.size(sheet.path);
+        }
+    }
+
+    // Start a new row in the current sheet, starting a new sheet if the current one is full. Returns the row index.
+    private int beginRow(int width) {
+        if (width > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Row cannot have more than " + MAX_COLUMNS + " columns");
+        }
+
+        ensureSheet();
+
+        if (sheet.rows >= MAX_ROWS) {
+            beginPage();
+        }
+
+        sheet.columns = Math.max(sheet.columns, width);
+        return sheet.rows++;
+    }
+
+    private void writeBoolean(int row, int column, boolean value) throws IOException {
+        beginCell(BOOLERR, 8, row, column);
+        sheetRecords.putByte(value ? 1 : 0);
+        sheetRecords.putByte(0);
+    }
+
+    private void writeLong(int row, int column, long value) throws IOException {
+        // Small integers can be stored as a 30-bit RK value instead of a double.
+        if (value >= -(1 << 29) && value < 1 << 29) {
+            beginCell(RK, 10, row, column);
+            sheetRecords.putInt((int) value << 2 | 0x02);
+        }
+        else {
+            writeNumber(row, column, value);
+        }
+    }
+
+    private void writeDouble(int row, int column, double value) throws IOException {
+        // Excel has no representation for infinity or NaN, so write them as text.
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeString(row, column, Double.toString(value));
+        }
+        else {
+            writeNumber(row, column, value);
+        }
+    }
+
+    private void writeNumber(int row, int column, double value) throws IOException {
+        beginCell(NUMBER, 14, row, column);
+        sheetRecords.putLong(Double.doubleToLongBits(value));
+    }
+
+    private void writeString(int row, int column, String value) throws IOException {
+        if (value.length() > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Cell text cannot be longer than " + MAX_STRING_LENGTH + " characters");
+        }
+
+        Integer index = stringIndexes.get(value);
+
+        if (index == null) {
+            index = strings.size();
+            stringIndexes.put(value, index);
+            strings.add(value);
+        }
+
+        ++stringCellCount;
+        beginCell(LABELSST, 10, row, column);
+        sheetRecords.putInt(index);
+    }
+
+    private void beginCell(int sid, int length, int row, int column) throws IOException {
+        sheetRecords.reserve(4 + length);
+        sheetRecords.beginRecord(sid, length);
+        sheetRecords.putShort(row);
+        sheetRecords.putShort(column);
+        sheetRecords.putShort(CELL_XF);
+    }
+
+    // Write the workbook globals substream, which describes the formatting, sheets and shared strings.
+    private RecordBuffer writeGlobals() throws IOException {
+        RecordBuffer records = new RecordBuffer(BUFFER_SIZE, null);
+
+        writeBof(records, 0x0005);
+
+        records.beginRecord(INTERFACEHDR, 2);
+        records.putShort(UTF_16_CODE_PAGE);
+        records.beginRecord(INTERFACEEND, 0);
+
+        records.beginRecord(CODEPAGE, 2);
+        records.putShort(UTF_16_CODE_PAGE);
+
+        records.beginRecord(WINDOW1, 18);
+        records.putShort(0x0168);
+        records.putShort(0x010e);
+        records.putShort(0x3a5c);
+        records.putShort(0x23be);
+        records.putShort(0x0038);
+        records.putShort(0);
+        records.putShort(0);
+        records.putShort(1);
+        records.putShort(0x0258);
+
+        // Excel expects the first four fonts to be present.
+        for (int i = 0; i < 4; ++i) {
+            records.beginRecord(FONT, 21);
+            records.putShort(200);
+            records.putShort(0);
+            records.putShort(0x7fff);
+            records.putShort(400);
+            records.putShort(0);
+            records.putInt(0);
+            records.putString8("Arial");
+        }
+
+        // Fifteen style formats followed by the cell format used by every cell.
+        for (int i = 0; i <= CELL_XF; ++i) {
+            records.beginRecord(XF, 20);
+            records.putShort(0);
+            records.putShort(0);
+            records.putShort(i < CELL_XF ? 0xfff5 : 0x0001);
+            records.putShort(0x0020);
+            records.putShort(i < CELL_XF ? 0xf400 : 0x0000);
+            records.putInt(0);
+            records.putInt(0);
+            records.putShort(0x20c0);
+        }
+
+        records.beginRecord(STYLE, 4);
+        records.putShort(0x8000);
+        records.putByte(0);
+        records.putByte(0xff);
+
+        // The sheet offsets are not known until the size of the string table is known, so fill them in afterwards.
+        int[] sheetOffsets = new int[sheets.size()];
+        for (int i = 0; i < sheets.size(); ++i) {
+            String name = sheets.get(i).name;
+
+            records.beginRecord(BOUNDSHEET, 6 + 2 + name.length() * (isCompressible(name) ? 1 : 2));
+            sheetOffsets[i] = records.position;
+            records.putInt(0);
+            records.putByte(0);
+            records.putByte(0);
+            records.putString8(name);
+        }
+
+        writeStringTable(records);
+        records.beginRecord(EOF, 0);
+
+        long offset = records.position;
+        for (int i = 0; i < sheets.size(); ++i) {
+            records.patchInt(sheetOffsets[i], (int) offset);
+            offset += SHEET_HEADER_SIZE + sheets.get(i).cellBytes + SHEET_TRAILER_SIZE;
+        }
+
+        return records;
+    }
+
+    // Write the shared string table, splitting it into continuation records as needed. Each string header must fit
+    // entirely in one record, and string characters continued in another record are preceded by the encoding flag.
+    private void writeStringTable(RecordBuffer records) throws IOException {
+        // The extended table indexes the location of every n-th string, using at most 128 buckets.
+        int bucketSize = Math.max(8, (strings.size() + 127) / 128);
+        int buckets = (strings.size() + bucketSize - 1) / bucketSize;
+        int[] bucketPositions = new int[buckets];
+        int[] bucketOffsets = new int[buckets];
+
+        int recordStart = records.beginRecord(SST, -1);
+        records.putInt((int) Math.min(stringCellCount, Integer.MAX_VALUE));
+        records.putInt(strings.size());
+
+        for (int i = 0; i < strings.size(); ++i) {
+            String value = strings.get(i);
+            boolean compressed = isCompressible(value);
+            int charSize = compressed ? 1 : 2;
+
+            if (records.position - recordStart - 4 + 3 + charSize > MAX_RECORD_LENGTH) {
+                records.endRecord(recordStart);
+                recordStart = records.beginRecord(CONTINUE, -1);
+            }
+
+            if (i % bucketSize == 0) {
+                bucketPositions[i / bucketSize] = records.position;
+                bucketOffsets[i / bucketSize] = records.position - recordStart;
+            }
+
+            records.putShort(value.length());
+            records.putByte(compressed ? 0 : 1);
+
+            int offset = 0;
+            while (offset < value.length()) {
+                int room = (MAX_RECORD_LENGTH - (records.position - recordStart - 4)) / charSize;
+
+                if (room == 0) {
+                    records.endRecord(recordStart);
+                    recordStart = records.beginRecord(CONTINUE, -1);
+                    records.putByte(compressed ? 0 : 1);
+                    continue;
+                }
+
+                int count = Math.min(room, value.length() - offset);
+                records.putChars(value, offset, count, compressed);
+                offset += count;
+            }
+        }
+
+        records.endRecord(recordStart);
+
+        records.beginRecord(EXTSST, 2 + buckets * 8);
+        records.putShort(bucketSize);
+        for (int i = 0; i < buckets; ++i) {
+            records.putInt(bucketPositions[i]);
+            records.putShort(bucketOffsets[i]);
+            records.putShort(0);
+        }
+    }
+
+    private static void writeBof(RecordBuffer records, int type) throws IOException {
+        records.beginRecord(BOF, 16);
+        records.putShort(0x0600);
+        records.putShort(type);
+        records.putShort(0x10d3);
+        records.putShort(0x07cc);
+        records.putInt(0x41);
+        records.putInt(0x06);
+    }
+
+    private static boolean isCompressible(String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            if (value.charAt(i) > 0xff) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static class Sheet {
+        private final String name;
+        private final Path path;
+        private int rows;
+        private int columns;
+        private long cellBytes;
+
+        private Sheet(String name, Path path) {
+            this.name = name;
+            this.path = path;
+        }
+    }
+
+    /**
+     * A buffer of little-endian record data. If the buffer has a sink it is flushed to the sink when full, otherwise it
+     * grows as needed.
+     */
+    private static class RecordBuffer {
+        private final OutputStream sink;
+        private byte[] data;
+        private int position;
+
+        private RecordBuffer(int capacity, OutputStream sink) {
+            this.sink = sink;
+            data = new byte[capacity];
+        }
+
+        // Begin a record, returning its position. If the length is not known, it must be filled in using endRecord.
+        int beginRecord(int sid, int length) throws IOException {
+            int start = position;
+            putShort(sid);
+            putShort(Math.max(length, 0));
+            return start;
+        }
+
+        void endRecord(int start) {
+            int length = position - start - 4;
+            data[start + 2] = (byte) length;
+            data[start + 3] = (byte) (length >>> 8);
+        }
+
+        void putByte(int value) throws IOException {
+            reserve(1);
+            data[position++] = (byte) value;
+        }
+
+        void putShort(int value) throws IOException {
+            reserve(2);
+            data[position++] = (byte) value;
+            data[position++] = (byte) (value >>> 8);
+        }
+
+        void putInt(int value) throws IOException {
+            reserve(4);
+            patchInt(position, value);
+            position += 4;
+        }
+
+        void putLong(long value) throws IOException {
+            putInt((int) value);
+            putInt((int) (value >>> 32));
+        }
+
+        void patchInt(int offset, int value) {
+            data[offset] = (byte) value;
+            data[offset + 1] = (byte) (value >>> 8);
+            data[offset + 2] = (byte) (value >>> 16);
+            data[offset + 3] = (byte) (value >>> 24);
+        }
+
+        // Write a string with an 8-bit length, as used for font and sheet names.
+        void putString8(String value) throws IOException {
+            boolean compressed = isCompressible(value);
+
+            putByte(value.length());
+            putByte(compressed ? 0 : 1);
+            putChars(value, 0, value.length(), compressed);
+        }
+
+        // Write characters either as single bytes or as UTF-16.
+        void putChars(String value, int offset, int count, boolean compressed) throws IOException {
+            reserve(compressed ? count : count * 2);
+
+            for (int i = offset; i < offset + count; ++i) {
+                char c = value.charAt(i);
+                data[position++] = (byte) c;
+
+                if (!compressed) {
+                    data[position++] = (byte) (c >>> 8);
+                }
+            }
+        }
+
+        void reserve(int length) throws IOException {
+            if (data.length - position >= length) {
+                return;
+            }
+
+            if (sink != null) {
+                flush();
+            }
+            else {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, position + length));
+            }
+        }
+
+        void flush() throws IOException {
+            if (position > 0) {
+                sink.write(data, 0, position);
+                position = 0;
+            }
+        }
+    }
+}
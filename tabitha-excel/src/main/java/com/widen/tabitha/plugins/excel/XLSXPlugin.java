@@ -3,6 +3,7 @@ package com.widen.tabitha.plugins.excel;
 import com.widen.tabitha.plugins.ReaderPlugin;
 import com.widen.tabitha.plugins.WriterPlugin;
 import com.widen.tabitha.reader.InlineHeaderReader;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.RowReader;
 import com.widen.tabitha.writer.RowWriter;
@@ -11,6 +12,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.stream.Stream;
 
 public class XLSXPlugin implements ReaderPlugin, WriterPlugin {
@@ -24,18 +26,38 @@ public class XLSXPlugin implements ReaderPlugin, WriterPlugin {
 
     @Override
     public RowReader createReader(Path path, ReaderOptions options) throws IOException {
-        return InlineHeaderReader
-            .decorate(XLSXRowReader.open(path, options), options);
+        RowReader reader = isParallel(options)
+            ? ParallelXLSXRowReader.open(path, options)
+            : XLSXRowReader.open(path, options);
+
+        return InlineHeaderReader.decorate(reader, options);
     }
 
     @Override
     public RowReader createReader(InputStream inputStream, ReaderOptions options) throws IOException {
-        return InlineHeaderReader
-            .decorate(XLSXRowReader.open(inputStream, options), options);
+        RowReader reader = isParallel(options)
+            ? ParallelXLSXRowReader.open(inputStream, options)
+            : XLSXRowReader.open(inputStream, options);
+
+        return InlineHeaderReader.decorate(reader, options);
+    }
+
+    @Override
+    public List<PageStats> inspect(Path path, ReaderOptions options) throws IOException {
+        return XLSXRowReader.inspect(path, options);
+    }
+
+    @Override
+    public List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        return XLSXRowReader.inspect(inputStream, options);
     }
 
     @Override
     public RowWriter createWriter(OutputStream outputStream) {
-        return WorkbookRowWriter.xlsx(outputStream);
+        return new XLSXRowWriter(outputStream);
+    }
+
+    private static boolean isParallel(ReaderOptions options) {
+        return options != null && options.getParallelism() > 1;
     }
 }
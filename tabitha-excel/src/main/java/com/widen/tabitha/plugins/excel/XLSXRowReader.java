@@ -1,40 +1,41 @@
 package com.widen.tabitha.plugins.excel;
 
-import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.reader.RowRange;
 import com.widen.tabitha.reader.RowReader;
-import lombok.extern.slf4j.Slf4j;
+import com.widen.tabitha.reader.SpooledInput;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
-import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
-import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * Reads rows from an Office Open XML spreadsheet.
  */
-@Slf4j
 public class XLSXRowReader implements RowReader {
     private final ReaderOptions options;
     private final OPCPackage opcPackage;
-    private final ReadOnlySharedStringsTable stringsTable;
+    private final SpooledInput spooledInput;
+    private final SharedStringsTable stringsTable;
     private final XSSFReader.SheetIterator sheetIterator;
+    private final RowRange range;
     private SpreadsheetMLReader sheetReader;
     private long currentSheetIndex = -1;
     private String currentSheetName;
 
+    // Sink for the row reused for every read if enabled in the reader options.
+    private final CellSink.RowSink rowSink;
+
     /**
      * Open an XLSX file from the file system.
      *
@@ -43,71 +44,158 @@ public class XLSXRowReader implements RowReader {
      * @return A new row reader.
      */
     public static XLSXRowReader open(Path path, ReaderOptions options) throws IOException {
-        try {
-            return new XLSXRowReader(OPCPackage.open(path.toFile()), options);
-        }
-        catch (InvalidFormatException e) {
-            throw new IOException(e);
-        }
+        return open(path, options, XLSXRowReader::new);
     }
 
     /**
      * Open an XLSX file from a stream.
      * <p>
-     * Note that this can use a great deal more memory than {@link #open(Path, ReaderOptions)} as it will temporarily
-     * read the entire stream to memory in order to inspect the zip archive.
+     * Note that by default this can use a great deal more memory than {@link #open(Path, ReaderOptions)} as it will
+     * temporarily read the entire stream to memory in order to inspect the zip archive. If
+     * {@link ReaderOptions#getSpoolThreshold()} is set, streams larger than the threshold are spooled to a temporary
+     * file instead, which is then opened as if by {@link #open(Path, ReaderOptions)} and deleted when the reader is
+     * closed.
      *
      * @param inputStream The stream to open.
      * @param options Options to pass to the reader.
      * @return A new row reader.
      */
     public static XLSXRowReader open(InputStream inputStream, ReaderOptions options) throws IOException {
+        return open(inputStream, options, XLSXRowReader::new);
+    }
+
+    /**
+     * Count the rows and find the width of each sheet of an XLSX file from the file system, without reading any cell
+     * values or the shared strings table.
+     *
+     * @param path The path of the file to inspect.
+     * @param options Options that select the sheets and rows to count.
+     * @return The stats of each selected sheet, in order.
+     */
+    public static List<PageStats> inspect(Path path, ReaderOptions options) throws IOException {
+        try (XLSXRowReader reader = open(path, options)) {
+            return reader.readStats();
+        }
+    }
+
+    /**
+     * Count the rows and find the width of each sheet of an XLSX file from a stream, which is buffered as described by
+     * {@link #open(InputStream, ReaderOptions)}.
+     *
+     * @param inputStream The stream to inspect.
+     * @param options Options that select the sheets and rows to count.
+     * @return The stats of each selected sheet, in order.
+     */
+    public static List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        try (XLSXRowReader reader = open(inputStream, options)) {
+            return reader.readStats();
+        }
+    }
+
+    // Open a package from the file system and create a reader for it.
+    static <T> T open(Path path, ReaderOptions options, Factory<T> factory) throws IOException {
+        try {
+            return factory.create(OPCPackage.open(path.toFile()), null, options);
+        }
+        catch (InvalidFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Open a package from a stream, spooling it to a file first if enabled, and create a reader for it.
+    static <T> T open(InputStream inputStream, ReaderOptions options, Factory<T> factory) throws IOException {
+        if (options == null || options.getSpoolThreshold() < 0) {
+            try {
+                return factory.create(OPCPackage.open(inputStream), null, options);
+            }
+            catch (InvalidFormatException e) {
+                throw new IOException(e);
+            }
+        }
+
+        SpooledInput spooledInput = SpooledInput.spool(inputStream, options.getSpoolThreshold());
+
         try {
-            return new XLSXRowReader(OPCPackage.open(inputStream), options);
+            OPCPackage opcPackage = spooledInput.getPath().isPresent()
+                ? OPCPackage.open(spooledInput.getPath().get().toFile(), PackageAccess.READ)
+                : OPCPackage.open(spooledInput.newInputStream());
+
+            return factory.create(opcPackage, spooledInput, options);
         }
         catch (InvalidFormatException e) {
+            spooledInput.close();
             throw new IOException(e);
         }
+        catch (IOException | RuntimeException e) {
+            spooledInput.close();
+            throw e;
+        }
     }
 
-    private XLSXRowReader(OPCPackage opcPackage, ReaderOptions options) throws IOException {
+    private XLSXRowReader(OPCPackage opcPackage, SpooledInput spooledInput, ReaderOptions options) throws IOException {
         this.options = options != null ? options : new ReaderOptions();
         this.opcPackage = opcPackage;
+        this.spooledInput = spooledInput;
+        rowSink = this.options.isReuseRows() ? new CellSink.RowSink() : null;
+        range = RowRange.of(this.options);
+        stringsTable = new SharedStringsTable(opcPackage, this.options.getSharedStringsCacheSize());
 
         try {
-            stringsTable = new ReadOnlySharedStringsTable(opcPackage);
             XSSFReader xssfReader = new XSSFReader(opcPackage);
             sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
         }
         catch (Exception e) {
+            stringsTable.close();
             throw new IOException(e);
         }
     }
 
     @Override
     public Optional<Row> read() throws IOException {
-        if (sheetReader == null) {
-            if (!nextPage()) {
+        if (rowSink != null) {
+            rowSink.row.begin(0, 0);
+
+            if (!readRow(rowSink)) {
                 return Optional.empty();
             }
+
+            rowSink.row.end();
+            rowSink.row.setPageIndex(currentSheetIndex);
+            rowSink.row.setIndex(sheetReader.getRowIndex() - 1);
+            rowSink.row.setPageName(currentSheetName);
+            return rowSink.row.asOptional();
         }
 
-        try {
-            while (sheetReader != null) {
-                Row row = sheetReader.read();
+        CellSink.ListSink cells = new CellSink.ListSink();
 
-                if (row != null) {
-                    return Optional.of(row);
-                }
+        if (readRow(cells)) {
+            return Optional.of(Row
+                .fromStream(currentSheetIndex, sheetReader.getRowIndex() - 1, cells.cells.stream())
+                .withPageName(currentSheetName));
+        }
+
+        return Optional.empty();
+    }
 
-                nextPage();
+    @Override
+    public boolean readBatch(RowBatch batch) throws IOException {
+        batch.clear();
+        CellSink.BatchSink sink = new CellSink.BatchSink(batch);
+
+        while (!batch.isFull()) {
+            sink.row = batch.addRow(0, 0);
+
+            if (!readRow(sink)) {
+                batch.removeRow(sink.row);
+                break;
             }
 
-            return Optional.empty();
-        }
-        catch (XMLStreamException e) {
-            throw new IOException(e);
+            batch.setPageIndex(sink.row, currentSheetIndex);
+            batch.setIndex(sink.row, sheetReader.getRowIndex() - 1);
+            batch.setPageName(sink.row, currentSheetName);
         }
+
+        return !batch.isEmpty();
     }
 
     @Override
@@ -117,245 +205,91 @@ public class XLSXRowReader implements RowReader {
             sheetReader = null;
         }
 
-        opcPackage.revert();
-    }
-
-    private boolean nextPage() throws IOException {
-        if (sheetReader != null) {
-            sheetReader.close();
-            sheetReader = null;
+        try {
+            stringsTable.close();
         }
-
-        if (sheetIterator.hasNext()) {
-            InputStream inputStream = sheetIterator.next();
+        finally {
             try {
-                sheetReader = new SpreadsheetMLReader(inputStream);
-                currentSheetIndex++;
-                currentSheetName = sheetIterator.getSheetName();
-                return true;
+                opcPackage.revert();
             }
-            catch (XMLStreamException e) {
-                throw new IOException(e);
+            finally {
+                if (spooledInput != null) {
+                    spooledInput.close();
+                }
             }
         }
-
-        return false;
     }
 
-    /**
-     * Parses an XML stream of an OpenXML sheet in a lazy manner.
-     */
-    private class SpreadsheetMLReader implements Closeable {
-        static final String NS_SPREADSHEETML = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
-
-        private final InputStream inputStream;
-        private final XMLStreamReader reader;
-        private final StringBuilder valueBuilder = new StringBuilder();
-        private long rowIndex = 0;
-        private long cellColumn = 0;
-
-        SpreadsheetMLReader(InputStream stream) throws XMLStreamException {
-            inputStream = stream;
-            XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-            reader = xmlInputFactory.createXMLStreamReader(stream);
+    // Read the cells of the next row into the given sink, advancing to the next page as needed. Returns false if there
+    // are no more rows.
+    private boolean readRow(CellSink cells) throws IOException {
+        // Stop without opening any more sheets once the row limit is reached.
+        if (range != null && range.isFinished()) {
+            return false;
         }
 
-        /**
-         * Reads the next row in the spreadsheet as a variant list.
-         *
-         * @return The cell values or null if no more rows exist.
-         * @throws XMLStreamException Thrown if any XML error occurs.
-         */
-        public Row read() throws XMLStreamException {
-            while (reader.hasNext()) {
-                int event = reader.next();
-
-                // Start of a new row.
-                if (event == XMLStreamConstants.START_ELEMENT && elementMatches("row")) {
-                    // Ignore hidden rows.
-                    if (!options.isIncludeHiddenRows() && "1".equals(reader.getAttributeValue(null, "hidden"))) {
-                        continue;
-                    }
-
-                    try {
-                        rowIndex = Long.parseLong(reader.getAttributeValue(null, "r"));
-                    }
-                    catch (NumberFormatException e) {
-                        log.debug("Row is missing an index number!");
-                        rowIndex++;
-                    }
-
-                    return Row.fromStream(currentSheetIndex, rowIndex - 1, parseRow().stream())
-                        .withPageName(currentSheetName);
-                }
+        if (sheetReader == null) {
+            if (!nextPage()) {
+                return false;
             }
-
-            // Could not find a row element.
-            return null;
-        }
-
-        @Override
-        public void close() throws IOException {
-            inputStream.close();
         }
 
-        private Collection<Variant> parseRow() throws XMLStreamException {
-            cellColumn = 0;
-            ArrayList<Variant> cells = new ArrayList<>();
-
-            while (reader.hasNext()) {
-                int event = reader.next();
-
-                // The start of a new cell.
-                if (event == XMLStreamConstants.START_ELEMENT && elementMatches("c")) {
-                    Variant cell = parseCell();
-
-                    // Fill in any "missing" / blank cells.
-                    while (cells.size() < cellColumn) {
-                        cells.add(Variant.NONE);
-                    }
-
-                    if (cell != null) {
-                        cells.add(cell);
-                    }
-                }
-
-                // Reached the end of the row.
-                else if (event == XMLStreamConstants.END_ELEMENT && elementMatches("row")) {
-                    break;
-                }
+        while (sheetReader != null) {
+            if (sheetReader.readRow(cells)) {
+                return true;
             }
 
-            return cells;
+            nextPage();
         }
 
-        private Variant parseCell() throws XMLStreamException {
-            String cellType = "";
-            Variant cellValue = null;
-            String cellRefString = null;
-
-            // Extract the cell data type and position ref.
-            for (int i = 0; i < reader.getAttributeCount(); ++i) {
-                if ("r".equals(reader.getAttributeLocalName(i))) {
-                    cellRefString = reader.getAttributeValue(i);
-                }
-
-                if ("t".equals(reader.getAttributeLocalName(i))) {
-                    cellType = reader.getAttributeValue(i);
-                }
-            }
-
-            // Parse the cell ref string so we know what column the cell belongs to.
-            if (cellRefString != null) {
-                cellColumn = ParseHelpers.getColumnFromCellName(cellRefString);
-            }
-
-            // Get the cell value.
-            while (reader.hasNext()) {
-                int event = reader.next();
-
-                // An inline string value. We know how this is structured, so we will simply ignore the cell type attribute
-                // from earlier.
-                if (event == XMLStreamConstants.START_ELEMENT && elementMatches("is")) {
-                    cellValue = Variant.of(parseInlineString());
-                }
+        return false;
+    }
 
-                // Normal cell value. We'll need the cell type attribute to help us here.
-                else if (event == XMLStreamConstants.START_ELEMENT && elementMatches("v")) {
-                    valueBuilder.setLength(0);
-
-                    // Get the (maybe) cell contents.
-                    while (reader.hasNext()) {
-                        event = reader.next();
-
-                        if (event == XMLStreamConstants.CHARACTERS) {
-                            valueBuilder.append(reader.getText());
-                        }
-                        else if (event == XMLStreamConstants.END_ELEMENT && elementMatches("v")) {
-                            break;
-                        }
-                    }
-
-                    switch (cellType) {
-                        // Boolean type.
-                        case "b":
-                            cellValue = Variant.of(valueBuilder.charAt(0) == '0');
-                            break;
-
-                        // Shared string table string; the value is the index into the actual string value in the table.
-                        case "s":
-                            int idx = Integer.parseInt(valueBuilder.toString());
-                            cellValue = Variant.of(stringsTable.getEntryAt(idx));
-                            break;
-
-                        // Error type. Basically an inline string.
-                        case "e":
-                            cellValue = Variant.of("ERROR:" + valueBuilder.toString());
-                            break;
-
-                        // Formula type. The <v> tag here will be the precomputed formula value, which is exactly what we
-                        // want to return.
-                        case "str":
-                            cellValue = Variant.of(valueBuilder.toString());
-                            break;
-
-                        // Number type. We are going to ignore any special number formatting for performance purposes.
-                        default:
-                            // If there is a decimal, interpret as a floating point.
-                            String valueString = valueBuilder.toString();
-                            if (valueString.contains(".")) {
-                                cellValue = Variant.of(Double.parseDouble(valueString));
-                            }
-                            else {
-                                cellValue = Variant.of(Long.parseLong(valueString));
-                            }
-                            break;
-                    }
-                }
+    // Measure every selected sheet. The shared strings table is loaded lazily, so it is never read.
+    private List<PageStats> readStats() throws IOException {
+        List<PageStats> pages = new ArrayList<>();
 
-                // Reached the end of the cell.
-                else if (event == XMLStreamConstants.END_ELEMENT && elementMatches("c")) {
-                    break;
-                }
-            }
-
-            return cellValue;
+        while (nextPage()) {
+            pages.add(sheetReader.inspect(currentSheetIndex, currentSheetName));
         }
 
-        private String parseInlineString() throws XMLStreamException {
-            StringBuilder stringBuilder = new StringBuilder();
+        return pages;
+    }
 
-            while (reader.hasNext()) {
-                int event = reader.next();
+    private boolean nextPage() throws IOException {
+        if (sheetReader != null) {
+            sheetReader.close();
+            sheetReader = null;
+        }
 
-                if (event == XMLStreamConstants.START_ELEMENT && elementMatches("t")) {
-                    while (reader.hasNext()) {
-                        event = reader.next();
+        while (sheetIterator.hasNext()) {
+            InputStream inputStream = sheetIterator.next();
+            currentSheetIndex++;
+            currentSheetName = sheetIterator.getSheetName();
 
-                        if (event == XMLStreamConstants.CHARACTERS) {
-                            stringBuilder.append(reader.getText());
-                        }
-                        else if (event == XMLStreamConstants.END_ELEMENT && elementMatches("t")) {
-                            break;
-                        }
-                    }
-                }
-                else if (event == XMLStreamConstants.END_ELEMENT && elementMatches("is")) {
-                    break;
-                }
+            // Skip sheets that are not selected without parsing them.
+            if (!options.isPageSelected(currentSheetIndex, currentSheetName)) {
+                inputStream.close();
+                continue;
             }
 
-            return stringBuilder.toString();
+            sheetReader = new SpreadsheetMLReader(inputStream, stringsTable, options, range);
+            return true;
         }
 
-        private boolean elementMatches(String name) {
-            if (reader.getNamespaceURI() == null || reader.getNamespaceURI().equals(NS_SPREADSHEETML)) {
-                if (name.equals(reader.getLocalName())) {
-                    return true;
-                }
-            }
+        return false;
+    }
 
-            return false;
-        }
+    /**
+     * Creates a reader for an opened package.
+     */
+    @FunctionalInterface
+    interface Factory<T> {
+        /**
+         * @param opcPackage The package to read.
+         * @param spooledInput The spooled stream the package was opened from, to be closed with the reader, or null.
+         * @param options Options to pass to the reader, which may be null.
+         */
+        T create(OPCPackage opcPackage, SpooledInput spooledInput, ReaderOptions options) throws IOException;
     }
 }
@@ -0,0 +1,582 @@
+package com.widen.tabitha.plugins.excel;
+
+import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.writer.PagedWriter;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes rows to an Office Open XML spreadsheet by streaming SpreadsheetML directly into the zip archive.
+ * <p>
+ * Unlike {@link WorkbookRowWriter#xlsx(OutputStream)}, no workbook object model or temporary files are used. Each sheet
+ * is encoded into a reusable byte buffer and compressed into the output as rows are written, so memory use is constant
+ * regardless of the number of rows. Strings are written inline rather than into a shared strings table, and cells
+ * without a value are omitted.
+ * <p>
+ * Sheets must be written one at a time in order, so rows can only be written to the most recently created page.
+ */
+public class XLSXRowWriter implements PagedWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The most bytes a single character can be encoded as, which is an escaped control character such as "_x001F_".
+    private static final int MAX_CHAR_BYTES = 7;
+
+    // Limits imposed by Excel on the size of a sheet.
+    private static final int MAX_ROWS = 1 << 20;
+    private static final int MAX_COLUMNS = 1 << 14;
+
+    private static final String NS_SPREADSHEETML = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private static final byte[] SHEET_START = ascii(XML_DECLARATION
+        + "<worksheet xmlns=\"" + NS_SPREADSHEETML + "\"><sheetData>");
+    private static final byte[] SHEET_END = ascii("</sheetData></worksheet>");
+    private static final byte[] ROW_START = ascii("<row r=\"");
+    private static final byte[] ROW_END = ascii("</row>");
+    private static final byte[] CELL_START = ascii("<c r=\"");
+    private static final byte[] NUMBER_START = ascii("\"><v>");
+    private static final byte[] BOOLEAN_START = ascii("\" t=\"b\"><v>");
+    private static final byte[] VALUE_END = ascii("</v></c>");
+    private static final byte[] STRING_START = ascii("\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+    private static final byte[] STRING_END = ascii("</t></is></c>");
+
+    // Replacements for ASCII characters that cannot appear as-is in XML text. Control characters are not allowed in XML
+    // at all, so they are written using the escape syntax understood by Excel. Carriage returns are allowed, but would
+    // be normalized to line feeds by XML parsers, so they are escaped as well.
+    private static final byte[][] ESCAPES = new byte[0x80][];
+
+    // The escape for an underscore that starts text that would otherwise be read as an escape, such as "_x0041_".
+    private static final byte[] UNDERSCORE_ESCAPE = ascii("_x005F_");
+
+    static {
+        for (int c = 0; c < 0x20; ++c) {
+            if (c != '\t' && c != '\n') {
+                ESCAPES[c] = ascii(String.format("_x%04X_", c));
+            }
+        }
+
+        ESCAPES['&'] = ascii("&amp;");
+        ESCAPES['<'] = ascii("&lt;");
+        ESCAPES['>'] = ascii("&gt;");
+        ESCAPES['"'] = ascii("&quot;");
+    }
+
+    private final ZipOutputStream zip;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+
+    private final List<String> sheetNames = new ArrayList<>();
+    private final Set<String> lowerCaseSheetNames = new HashSet<>();
+    private boolean sheetOpen;
+    private int rowIndex;
+    private boolean closed;
+
+    // Cell reference column names, such as "AB", created on demand.
+    private final List<byte[]> columnNames = new ArrayList<>();
+
+    // Scratch space that values are formatted into before being encoded.
+    private char[] chars = new char[256];
+    private final StringBuilder numberBuilder = new StringBuilder(32);
+
+    /**
+     * Create a new XLSX row writer.
+     *
+     * @param output The output stream to write to.
+     */
+    public XLSXRowWriter(OutputStream output) {
+        zip = new ZipOutputStream(output, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a new XLSX row writer.
+     *
+     * @param path The path of the file to write to.
+     * @return The new row writer.
+     */
+    public static XLSXRowWriter open(Path path) throws IOException {
+        return new XLSXRowWriter(Files.newOutputStream(path));
+    }
+
+    public int getPageIndex() {
+        ensureSheet();
+        return sheetNames.size() - 1;
+    }
+
+    public Optional<String> getPageName() {
+        ensureSheet();
+        return Optional.of(sheetNames.get(sheetNames.size() - 1));
+    }
+
+    /**
+     * Create a new Excel sheet, finishing the current sheet.
+     * <p>
+     * The new sheet will be named "Sheet {num}", where {num} is the sheet's offset from the beginning.
+     */
+    @Override
+    public void beginPage() {
+        beginPage("Sheet " + sheetNames.size());
+    }
+
+    /**
+     * Create a new Excel sheet with the given name, finishing the current sheet. Subsequent writes will go to this new
+     * sheet.
+     *
+     * @param name The name of the sheet.
+     * @throws IllegalArgumentException if the name is not a valid sheet name or is already in use.
+     */
+    @Override
+    public void beginPage(String name) {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+
+        WorkbookUtil.validateSheetName(name);
+
+        // Excel compares sheet names case-insensitively.
+        if (!lowerCaseSheetNames.add(name.toLowerCase())) {
+            throw new IllegalArgumentException("The workbook already contains a sheet named '" + name + "'");
+        }
+
+        try {
+            finishSheet();
+            sheetNames.add(name);
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+            put(SHEET_START);
+            sheetOpen = true;
+            rowIndex = 0;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(List<Variant> cells) throws IOException {
+        beginRow(cells.size());
+
+        for (int column = 0; column < cells.size(); ++column) {
+            Variant cell = cells.get(column);
+
+            if (cell instanceof Variant.String) {
+                String value = cell.toString();
+                int length = value.length();
+
+                value.getChars(0, length, reserveChars(length), 0);
+                writeString(column, chars, 0, length);
+            }
+            else if (cell instanceof Variant.Int) {
+                writeLong(column, ((Variant.Int) cell).value());
+            }
+            else if (cell instanceof Variant.Float) {
+                writeDouble(column, ((Variant.Float) cell).value());
+            }
+            else if (cell instanceof Variant.Bool) {
+                writeBoolean(column, cell == Variant.Bool.TRUE);
+            }
+        }
+
+        put(ROW_END);
+    }
+
+    @Override
+    public void writeBatch(RowBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); ++row) {
+            int width = batch.width(row);
+            beginRow(width);
+
+            for (int column = 0; column < width; ++column) {
+                RowBatch.Column values = batch.column(column);
+
+                switch (values.type(row)) {
+                    case BOOL:
+                        writeBoolean(column, values.getBoolean(row));
+                        break;
+                    case INT:
+                        writeLong(column, values.getLong(row));
+                        break;
+                    case FLOAT:
+                        writeDouble(column, values.getDouble(row));
+                        break;
+                    case STRING:
+                        writeString(column, values.stringData(), values.stringOffset(row), values.stringLength(row));
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            put(ROW_END);
+        }
+    }
+
+    /**
+     * Finish the current sheet and write the workbook parts that describe the sheets written. If no sheets were
+     * created, a single empty sheet is created so that the file is a valid workbook.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            ensureSheet();
+            finishSheet();
+            writeWorkbookParts();
+            zip.finish();
+        }
+        finally {
+            closed = true;
+            zip.close();
+        }
+    }
+
+    private void ensureSheet() {
+        if (!sheetOpen && !closed) {
+            beginPage();
+        }
+    }
+
+    private void finishSheet() throws IOException {
+        if (sheetOpen) {
+            put(SHEET_END);
+            flush();
+            zip.closeEntry();
+            sheetOpen = false;
+        }
+    }
+
+    private void beginRow(int width) throws IOException {
+        ensureSheet();
+
+        if (rowIndex >= MAX_ROWS) {
+            throw new IllegalArgumentException("Sheet cannot have more than " + MAX_ROWS + " rows");
+        }
+
+        if (width > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Row cannot have more than " + MAX_COLUMNS + " columns");
+        }
+
+        ++rowIndex;
+        put(ROW_START);
+        putInt(rowIndex);
+        put((byte) '"');
+        put((byte) '>');
+    }
+
+    private void beginCell(int column, byte[] valueStart) throws IOException {
+        put(CELL_START);
+        put(columnName(column));
+        putInt(rowIndex);
+        put(valueStart);
+    }
+
+    private void writeBoolean(int column, boolean value) throws IOException {
+        beginCell(column, BOOLEAN_START);
+        put(value ? (byte) '1' : (byte) '0');
+        put(VALUE_END);
+    }
+
+    private void writeLong(int column, long value) throws IOException {
+        beginCell(column, NUMBER_START);
+        putLong(value);
+        put(VALUE_END);
+    }
+
+    private void writeDouble(int column, double value) throws IOException {
+        // Appending to a builder formats the same way as Double.toString without creating a string.
+        numberBuilder.setLength(0);
+        numberBuilder.append(value);
+
+        int length = numberBuilder.length();
+        numberBuilder.getChars(0, length, reserveChars(length), 0);
+
+        // Excel has no representation for infinity or NaN, so write them as text.
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeString(column, chars, 0, length);
+        }
+        else {
+            beginCell(column, NUMBER_START);
+            encode(chars, 0, length);
+            put(VALUE_END);
+        }
+    }
+
+    private void writeString(int column, char[] text, int offset, int length) throws IOException {
+        beginCell(column, STRING_START);
+        encode(text, offset, length);
+        put(STRING_END);
+    }
+
+    private void writeWorkbookParts() throws IOException {
+        StringBuilder contentTypes = new StringBuilder(XML_DECLARATION)
+            .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+            .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+            .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+            .append("<Override PartName=\"/xl/workbook.xml\" ")
+            .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+            .append("<Override PartName=\"/xl/styles.xml\" ")
+            .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+
+        StringBuilder workbook = new StringBuilder(XML_DECLARATION)
+            .append("<workbook xmlns=\"").append(NS_SPREADSHEETML).append("\" xmlns:r=\"").append(NS_RELATIONSHIPS)
+            .append("\"><sheets>");
+
+        StringBuilder workbookRelationships = new StringBuilder(XML_DECLARATION)
+            .append("<Relationships xmlns=\"").append(NS_PACKAGE_RELATIONSHIPS).append("\">")
+            .append("<Relationship Id=\"rId0\" Type=\"").append(NS_RELATIONSHIPS).append("/styles\" ")
+            .append("Target=\"styles.xml\"/>");
+
+        for (int i = 1; i <= sheetNames.size(); ++i) {
+            contentTypes
+                .append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ")
+                .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+
+            workbook.append("<sheet name=\"");
+            escapeAttribute(workbook, sheetNames.get(i - 1));
+            workbook.append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+
+            workbookRelationships
+                .append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(NS_RELATIONSHIPS)
+                .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+        }
+
+        writeEntry("[Content_Types].xml", contentTypes.append("</Types>"));
+        writeEntry("_rels/.rels", new StringBuilder(XML_DECLARATION)
+            .append("<Relationships xmlns=\"").append(NS_PACKAGE_RELATIONSHIPS).append("\">")
+            .append("<Relationship Id=\"rId1\" Type=\"").append(NS_RELATIONSHIPS).append("/officeDocument\" ")
+            .append("Target=\"xl/workbook.xml\"/></Relationships>"));
+        writeEntry("xl/workbook.xml", workbook.append("</sheets></workbook>"));
+        writeEntry("xl/_rels/workbook.xml.rels", workbookRelationships.append("</Relationships>"));
+        writeEntry("xl/styles.xml", new StringBuilder(XML_DECLARATION)
+            .append("<styleSheet xmlns=\"").append(NS_SPREADSHEETML).append("\">")
+            .append("<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>")
+            .append("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>")
+            .append("<fill><patternFill patternType=\"gray125\"/></fill></fills>")
+            .append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>")
+            .append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>")
+            .append("<cellXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/></cellXfs>")
+            .append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>")
+            .append("</styleSheet>"));
+    }
+
+    private void writeEntry(String name, StringBuilder content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.toString().getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static void escapeAttribute(StringBuilder builder, String value) {
+        char[] chars = value.toCharArray();
+
+        for (int i = 0; i < chars.length; ++i) {
+            char c = chars[i];
+
+            if (c < 0x80 && ESCAPES[c] != null) {
+                builder.append(new String(ESCAPES[c], StandardCharsets.US_ASCII));
+            }
+            else if (c == '_' && isEscapeAfter(chars, i + 1, chars.length)) {
+                builder.append(new String(UNDERSCORE_ESCAPE, StandardCharsets.US_ASCII));
+            }
+            else {
+                builder.append(c);
+            }
+        }
+    }
+
+    // Check whether the text after an underscore would be read as the rest of an escape such as "_x0041_". Excel is
+    // lenient about the case of the "x" and the hex digits, so both cases are treated as escapes.
+    private static boolean isEscapeAfter(char[] text, int index, int end) {
+        if (end - index < 6 || (text[index] != 'x' && text[index] != 'X') || text[index + 5] != '_') {
+            return false;
+        }
+
+        for (int i = index + 1; i < index + 5; ++i) {
+            if (Character.digit(text[i], 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Get the letters used to refer to a zero-based column index in a cell reference.
+    private byte[] columnName(int column) {
+        while (columnNames.size() <= column) {
+            StringBuilder name = new StringBuilder(3);
+
+            for (int n = columnNames.size() + 1; n > 0; n = (n - 1) / 26) {
+                name.insert(0, (char) ('A' + (n - 1) % 26));
+            }
+
+            columnNames.add(ascii(name.toString()));
+        }
+
+        return columnNames.get(column);
+    }
+
+    // Encode XML text into the output buffer as UTF-8, in chunks small enough that the buffer never has to be checked
+    // for space within a chunk.
+    private void encode(char[] text, int offset, int length) throws IOException {
+        int end = offset + length;
+
+        while (offset < end) {
+            int room = (buffer.length - bufferPosition) / MAX_CHAR_BYTES;
+
+            if (room == 0) {
+                flush();
+                continue;
+            }
+
+            offset = encodeChunk(text, offset, Math.min(end, offset + room), end);
+        }
+    }
+
+    // Encode characters up to the chunk end, returning the index of the next character to encode. A surrogate pair
+    // may extend one character past the chunk end, which is fine as a pair never takes more than four bytes.
+    private int encodeChunk(char[] text, int offset, int chunkEnd, int end) {
+        byte[] buffer = this.buffer;
+        int position = bufferPosition;
+        int i = offset;
+
+        while (i < chunkEnd) {
+            char c = text[i++];
+
+            if (c < 0x80) {
+                byte[] escape = ESCAPES[c];
+
+                if (c == '_' && isEscapeAfter(text, i, end)) {
+                    escape = UNDERSCORE_ESCAPE;
+                }
+
+                if (escape == null) {
+                    buffer[position++] = (byte) c;
+                }
+                else {
+                    System.arraycopy(escape, 0, buffer, position, escape.length);
+                    position += escape.length;
+                }
+                continue;
+            }
+
+            // Combine a surrogate pair into a single code point, and replace lone surrogates and non-characters that
+            // are not allowed in XML.
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(text[i])) {
+                codePoint = Character.toCodePoint(c, text[i++]);
+            }
+            else if (Character.isSurrogate(c) || c == 0xfffe || c == 0xffff) {
+                codePoint = '?';
+            }
+
+            if (codePoint < 0x80) {
+                buffer[position++] = (byte) codePoint;
+            }
+            else if (codePoint < 0x800) {
+                buffer[position++] = (byte) (0xc0 | codePoint >> 6);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            }
+            else if (codePoint < 0x10000) {
+                buffer[position++] = (byte) (0xe0 | codePoint >> 12);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            }
+            else {
+                buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            }
+        }
+
+        bufferPosition = position;
+        return i;
+    }
+
+    private void putInt(int value) throws IOException {
+        putLong(value);
+    }
+
+    // Format an integer into the output buffer, counting in negatives so that Long.MIN_VALUE works.
+    private void putLong(long value) throws IOException {
+        if (buffer.length - bufferPosition < 20) {
+            flush();
+        }
+
+        boolean negative = value < 0;
+
+        if (!negative) {
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+            ++digits;
+        }
+
+        if (negative) {
+            buffer[bufferPosition++] = '-';
+        }
+
+        int end = bufferPosition + digits;
+
+        for (int position = end - 1; position >= bufferPosition; --position) {
+            buffer[position] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+
+        bufferPosition = end;
+    }
+
+    private void put(byte b) throws IOException {
+        if (bufferPosition == buffer.length) {
+            flush();
+        }
+
+        buffer[bufferPosition++] = b;
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (buffer.length - bufferPosition < bytes.length) {
+            flush();
+        }
+
+        System.arraycopy(bytes, 0, buffer, bufferPosition, bytes.length);
+        bufferPosition += bytes.length;
+    }
+
+    private void flush() throws IOException {
+        if (bufferPosition > 0) {
+            zip.write(buffer, 0, bufferPosition);
+            bufferPosition = 0;
+        }
+    }
+
+    private char[] reserveChars(int length) {
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+
+        return chars;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,104 @@
+package com.widen.tabitha.plugins.excel
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class SpreadsheetMLScannerTest extends Specification {
+    def "elements and attributes are scanned"() {
+        setup:
+        def scanner = scanner('<?xml version="1.0"?><!-- a > comment --><x:row r="12" x:spans=\'1:2\'><c r="AB12" t="s"/></x:row >')
+
+        expect:
+        scanner.next() == SpreadsheetMLScanner.START_ELEMENT
+        scanner.nameEquals("row")
+        scanner.attribute("r")
+        scanner.parseLong()
+        scanner.longValue() == 12
+        !scanner.attribute("spans")
+        scanner.attribute("x:spans")
+        scanner.valueEquals("1:2")
+
+        scanner.next() == SpreadsheetMLScanner.START_ELEMENT
+        scanner.nameEquals("c")
+        scanner.attribute("r")
+        scanner.columnValue() == 27
+        scanner.attribute("t")
+        scanner.valueEquals("s")
+
+        scanner.next() == SpreadsheetMLScanner.END_ELEMENT
+        scanner.nameEquals("c")
+        scanner.next() == SpreadsheetMLScanner.END_ELEMENT
+        scanner.nameEquals("row")
+        scanner.next() == SpreadsheetMLScanner.END_DOCUMENT
+    }
+
+    def "text is decoded"() {
+        setup:
+        def scanner = scanner("<t>$text</t>")
+
+        when:
+        scanner.next()
+        scanner.readText()
+
+        then:
+        scanner.valueAsString() == expected
+        scanner.next() == SpreadsheetMLScanner.END_ELEMENT
+
+        where:
+        text                                | expected
+        ''                                  | ''
+        'plain'                             | 'plain'
+        'café 😀'                           | 'café 😀'
+        '&lt;a &amp; &quot;b&quot;&gt;'    | '<a & "b">'
+        '&#65;&#x42;&#x1F600;'              | 'AB😀'
+        'a<![CDATA[<b> & c]]>d'             | 'a<b> & cd'
+    }
+
+    def "numbers are parsed"() {
+        setup:
+        def scanner = scanner("<v>$text</v>")
+
+        when:
+        scanner.next()
+        scanner.readText()
+
+        then:
+        scanner.parseLong() == isLong
+        !isLong || scanner.longValue() == value
+        isLong || scanner.doubleValue() == value
+
+        where:
+        text                   | isLong | value
+        '0'                    | true   | 0
+        '-42'                  | true   | -42
+        '9223372036854775807'  | true   | Long.MAX_VALUE
+        '-9223372036854775808' | true   | Long.MIN_VALUE
+        '9223372036854775808'  | false  | 9.223372036854775808e18d
+        '1.5'                  | false  | 1.5d
+        '1E+20'                | false  | 1e20d
+    }
+
+    def "values larger than the buffer are read"() {
+        setup:
+        def text = "x" * 200000
+        def scanner = scanner("<row><t>$text</t><t>a&amp;$text</t></row>")
+        def values = []
+
+        when:
+        while (scanner.next() != SpreadsheetMLScanner.END_DOCUMENT) {
+            if (scanner.nameEquals("t")) {
+                scanner.readText()
+                values << scanner.valueAsString()
+                scanner.next()
+            }
+        }
+
+        then:
+        values == [text, "a&$text".toString()]
+    }
+
+    private static SpreadsheetMLScanner scanner(String xml) {
+        return new SpreadsheetMLScanner(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+    }
+}
@@ -2,10 +2,13 @@ package com.widen.tabitha.plugins.json;
 
 import com.widen.tabitha.plugins.ReaderPlugin;
 import com.widen.tabitha.reader.InlineHeaderReader;
+import com.widen.tabitha.reader.PageStats;
 import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.RowReader;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.stream.Stream;
 
 public class JsonPlugin implements ReaderPlugin {
@@ -16,6 +19,11 @@ public class JsonPlugin implements ReaderPlugin {
 
     @Override
     public RowReader createReader(InputStream inputStream, ReaderOptions options) {
-        return InlineHeaderReader.decorate(new JsonRowReader(inputStream), options);
+        return InlineHeaderReader.decorate(new JsonRowReader(inputStream, options), options);
+    }
+
+    @Override
+    public List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        return JsonRowReader.inspect(inputStream, options);
     }
 }
@@ -1,68 +1,469 @@
 package com.widen.tabitha.plugins.json;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonStreamParser;
 import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.ColumnProjection;
+import com.widen.tabitha.reader.Header;
+import com.widen.tabitha.reader.MappedInputStream;
+import com.widen.tabitha.reader.MutableRow;
+import com.widen.tabitha.reader.PageStats;
+import com.widen.tabitha.reader.ReaderOptions;
 import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.reader.RowRange;
 import com.widen.tabitha.reader.RowReader;
-import lombok.AllArgsConstructor;
-import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
-@AllArgsConstructor
+/**
+ * Reads a stream of JSON objects, such as line-delimited JSON, into rows with a header made from the keys of the
+ * objects.
+ * <p>
+ * A top-level array of objects is read as if its objects followed each other, one object at a time, so that arrays
+ * larger than memory can be read as well.
+ * <p>
+ * Objects usually share the same keys, so every row shares one header that the keys of all objects are merged into, as
+ * described by {@link MergedHeader}. The cells of each row line up with the columns of its header, and keys that an
+ * object does not have are empty cells. Rows end at the last column their object has a key for, so a row may have
+ * fewer cells than its header has columns.
+ * <p>
+ * Objects are scanned token by token and their values are written straight into the cells of each row, without building
+ * a tree of each object first. Integral numbers are read as integers and all other numbers as floating point numbers.
+ * Nested objects and arrays are skipped and read as empty cells.
+ */
 public class JsonRowReader implements RowReader {
-    private final JsonStreamParser parser;
+    private static final int BUFFER_SIZE = 8192;
+
+    // The most keys shared by all objects before the shared header is started over.
+    private static final int MAX_MERGED_COLUMNS = 1024;
+
+    private final JsonScanner scanner;
     private int index = 0;
 
+    // The input is a single page, which may not be selected.
+    private final boolean pageSelected;
+
+    // The selected columns. Each object has its own keys, so columns are selected by name per object.
+    private final ColumnProjection projection;
+
+    // The objects to read, or null to read every object.
+    private final RowRange range;
+
+    // Row reused for every read if enabled in the reader options.
+    private final MutableRow mutableRow;
+
+    // The header shared by every object read.
+    private final MergedHeader headers = new MergedHeader(MAX_MERGED_COLUMNS);
+
+    // Sinks for the cells of each object, reused for every read.
+    private final ArrayCells arrayCells = new ArrayCells();
+    private final MutableRowCells mutableRowCells;
+    private final BatchCells batchCells = new BatchCells();
+
     public JsonRowReader(InputStream inputStream) {
-        this(new InputStreamReader(inputStream));
+        this(inputStream, null);
+    }
+
+    public JsonRowReader(InputStream inputStream, ReaderOptions options) {
+        this(inputStream instanceof MappedInputStream
+            ? ((MappedInputStream) inputStream).newReader(Charset.defaultCharset())
+            : new InputStreamReader(inputStream), options);
     }
 
     public JsonRowReader(Reader reader) {
-        parser = new JsonStreamParser(reader);
+        this(reader, null);
+    }
+
+    public JsonRowReader(Reader reader, ReaderOptions options) {
+        scanner = new JsonScanner(reader);
+        mutableRow = options != null && options.isReuseRows() ? new MutableRow() : null;
+        mutableRowCells = mutableRow != null ? new MutableRowCells(mutableRow) : null;
+        pageSelected = options == null || options.isPageSelected(0, null);
+        projection = ColumnProjection.of(options);
+        range = RowRange.of(options);
+    }
+
+    /**
+     * Count the objects in a stream of JSON values and the keys of the largest object, scanning for quotes and brackets
+     * without parsing any values. The stream is closed afterwards.
+     *
+     * @param inputStream The stream to inspect.
+     * @param options Options that select the pages to inspect.
+     * @return The stats of the single page of the stream, or nothing if it is not selected.
+     */
+    public static List<PageStats> inspect(InputStream inputStream, ReaderOptions options) throws IOException {
+        Reader reader = inputStream instanceof MappedInputStream
+            ? ((MappedInputStream) inputStream).newReader(Charset.defaultCharset())
+            : new InputStreamReader(inputStream);
+
+        try {
+            if (options != null && !options.isPageSelected(0, null)) {
+                return Collections.emptyList();
+            }
+
+            char[] buffer = new char[BUFFER_SIZE];
+            long rows = 0;
+            int columns = 0;
+            int keys = 0;
+            int depth = 0;
+
+            // The depth of the objects to count, which is inside of a top-level array if there is one.
+            int base = 0;
+
+            boolean inString = false;
+            boolean escaped = false;
+            int count;
+
+            while ((count = reader.read(buffer)) > 0) {
+                for (int i = 0; i < count; ++i) {
+                    char c = buffer[i];
+
+                    if (inString) {
+                        if (escaped) {
+                            escaped = false;
+                        }
+                        else if (c == '\\') {
+                            escaped = true;
+                        }
+                        else if (c == '"') {
+                            inString = false;
+                        }
+                    }
+                    else if (c == '"') {
+                        inString = true;
+                    }
+                    else if (c == '{' || c == '[') {
+                        if (depth == 0) {
+                            base = c == '[' ? 1 : 0;
+                        }
+                        depth++;
+                    }
+                    else if (c == '}' || c == ']') {
+                        // The end of a value at the depth of the objects to count.
+                        if (depth > 0 && --depth == base) {
+                            rows++;
+                            columns = Math.max(columns, keys);
+                            keys = 0;
+                        }
+                    }
+                    else if (c == ':' && depth == base + 1) {
+                        // Every key of an object to count is followed by exactly one colon outside of its values.
+                        keys++;
+                    }
+                }
+            }
+
+            return Collections.singletonList(new PageStats(0, null, rows, columns));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public Optional<Row> read() throws IOException {
+        if (!nextObject()) {
+            return Optional.empty();
+        }
+
+        if (mutableRow != null) {
+            mutableRow.begin(0, index++);
+            Header header = readObject(mutableRowCells);
+            mutableRow.end();
+            mutableRow.setHeader(header);
+            return mutableRow.asOptional();
+        }
+
+        arrayCells.width = 0;
+        Header header = readObject(arrayCells);
+
+        return Optional.of(Row
+            .fromArray(0, index++, Arrays.copyOf(arrayCells.cells, arrayCells.width))
+            .withHeader(header));
+    }
+
+    @Override
+    public boolean readBatch(RowBatch batch) throws IOException {
+        batch.clear();
+        batchCells.batch = batch;
+
+        while (!batch.isFull() && nextObject()) {
+            batchCells.row = batch.addRow(0, index++);
+            batch.setHeader(batchCells.row, readObject(batchCells));
+        }
+
+        return !batch.isEmpty();
     }
 
     @Override
-    public Optional<Row> read() {
-        if (parser.hasNext()) {
-            return Optional.of(Row
-                .fromPairs(0, index, parser
-                    .next()
-                    .getAsJsonObject()
-                    .entrySet()
-                    .stream()
-                    .map(entry -> Pair.of(entry.getKey(), createVariantFromJson(entry.getValue())))
-                )
-            );
+    public void close() throws IOException {
+        scanner.close();
+    }
+
+    // Advance to the start of the next object to read, skipping objects outside of the row range without reading their
+    // values. Returns false if there are no more objects to read.
+    private boolean nextObject() throws IOException {
+        if (!pageSelected) {
+            return false;
+        }
+
+        while (range == null || !range.isFinished()) {
+            int token = scanner.next();
+
+            if (token == JsonScanner.END_DOCUMENT) {
+                return false;
+            }
+
+            // Step into and out of a top-level array, reading the objects in it.
+            if (token == JsonScanner.BEGIN_ARRAY && scanner.depth() == 1 || token == JsonScanner.END_ARRAY) {
+                continue;
+            }
+
+            if (token != JsonScanner.BEGIN_OBJECT) {
+                throw new IOException("Expected a JSON object but found " + describe(token));
+            }
+
+            RowRange.Action action = range != null ? range.next(index == 0) : RowRange.Action.READ;
+
+            if (action == RowRange.Action.READ) {
+                return true;
+            }
+
+            if (action == RowRange.Action.STOP) {
+                return false;
+            }
+
+            scanner.skipContainer();
+            index++;
+        }
+
+        return false;
+    }
+
+    // Read the entries of the current object that are selected by the projection, if any, into a sink. Returns the
+    // header of the object.
+    private Header readObject(Cells cells) throws IOException {
+        headers.begin();
+        int source = 0;
+        int token;
+
+        while ((token = scanner.next()) == JsonScanner.NAME) {
+            int column = headers.find(scanner);
+            boolean selected = projection == null || projection.isSelected(source++, headers.name());
+
+            token = scanner.next();
+
+            if (!selected) {
+                if (token == JsonScanner.BEGIN_OBJECT || token == JsonScanner.BEGIN_ARRAY) {
+                    scanner.skipContainer();
+                }
+                continue;
+            }
+
+            if (column < 0) {
+                column = headers.add();
+            }
+
+            readValue(token, cells, column);
+        }
+
+        if (token != JsonScanner.END_OBJECT) {
+            throw new IOException("Expected a JSON object key but found " + describe(token));
+        }
+
+        return headers.end();
+    }
+
+    private void readValue(int token, Cells cells, int column) throws IOException {
+        switch (token) {
+            case JsonScanner.STRING:
+                cells.string(column, scanner.valueChars(), scanner.valueOffset(), scanner.valueLength());
+                break;
+
+            case JsonScanner.NUMBER:
+                // Integers are parsed straight from the characters. Anything else is a floating point number.
+                if (scanner.parseLong()) {
+                    cells.integer(column, scanner.longValue());
+                }
+                else {
+                    cells.floating(column, scanner.doubleValue());
+                }
+                break;
+
+            case JsonScanner.TRUE:
+            case JsonScanner.FALSE:
+                cells.bool(column, token == JsonScanner.TRUE);
+                break;
+
+            case JsonScanner.BEGIN_OBJECT:
+            case JsonScanner.BEGIN_ARRAY:
+                scanner.skipContainer();
+                cells.none(column);
+                break;
+
+            case JsonScanner.NULL:
+                cells.none(column);
+                break;
+
+            default:
+                throw new IOException("Expected a JSON value but found " + describe(token));
+        }
+    }
+
+    private static String describe(int token) {
+        switch (token) {
+            case JsonScanner.END_OBJECT:
+                return "the end of an object";
+            case JsonScanner.BEGIN_ARRAY:
+                return "an array";
+            case JsonScanner.END_ARRAY:
+                return "the end of an array";
+            case JsonScanner.END_DOCUMENT:
+                return "the end of the document";
+            default:
+                return "a value";
+        }
+    }
+
+    /**
+     * Receives the values of an object as they are read.
+     */
+    private interface Cells {
+        void none(int column);
+
+        void bool(int column, boolean value);
+
+        void integer(int column, long value);
+
+        void floating(int column, double value);
+
+        void string(int column, char[] chars, int offset, int length);
+    }
+
+    /**
+     * Writes cells into an array that is copied into each new row.
+     */
+    private static class ArrayCells implements Cells {
+        private Variant[] cells = new Variant[16];
+        private int width;
+
+        @Override
+        public void none(int column) {
+            set(column, Variant.NONE);
         }
 
-        return Optional.empty();
+        @Override
+        public void bool(int column, boolean value) {
+            set(column, Variant.of(value));
+        }
+
+        @Override
+        public void integer(int column, long value) {
+            set(column, Variant.of(value));
+        }
+
+        @Override
+        public void floating(int column, double value) {
+            set(column, Variant.of(value));
+        }
+
+        @Override
+        public void string(int column, char[] chars, int offset, int length) {
+            set(column, Variant.of(new String(chars, offset, length)));
+        }
+
+        // Any skipped cells are filled with empty values, as keys may be in any order.
+        private void set(int column, Variant value) {
+            if (column >= cells.length) {
+                cells = Arrays.copyOf(cells, Math.max(cells.length * 2, column + 1));
+            }
+
+            while (width < column) {
+                cells[width++] = Variant.NONE;
+            }
+
+            cells[column] = value;
+
+            if (column >= width) {
+                width = column + 1;
+            }
+        }
     }
 
-    private static Variant createVariantFromJson(JsonElement jsonElement) {
-        if (jsonElement.isJsonNull()) {
-            return Variant.NONE;
+    /**
+     * Writes cells into a reused row.
+     */
+    private static class MutableRowCells implements Cells {
+        private final MutableRow row;
+
+        MutableRowCells(MutableRow row) {
+            this.row = row;
         }
 
-        JsonPrimitive jsonPrimitive = jsonElement.getAsJsonPrimitive();
+        @Override
+        public void none(int column) {
+            row.set(column, Variant.NONE);
+        }
 
-        if (jsonPrimitive.isString()) {
-            return Variant.of(jsonPrimitive.getAsString());
+        @Override
+        public void bool(int column, boolean value) {
+            row.set(column, Variant.of(value));
         }
 
-        if (jsonPrimitive.isBoolean()) {
-            return Variant.of(jsonPrimitive.getAsBoolean());
+        @Override
+        public void integer(int column, long value) {
+            row.set(column, Variant.of(value));
         }
 
-        if (jsonPrimitive.isNumber()) {
-            return Variant.of(jsonPrimitive.getAsNumber().doubleValue());
+        @Override
+        public void floating(int column, double value) {
+            row.set(column, Variant.of(value));
         }
 
-        return Variant.NONE;
+        @Override
+        public void string(int column, char[] chars, int offset, int length) {
+            row.set(column, Variant.of(new String(chars, offset, length)));
+        }
+    }
+
+    /**
+     * Writes cells straight into the columns of a row batch.
+     */
+    private static class BatchCells implements Cells {
+        private RowBatch batch;
+        private int row;
+
+        @Override
+        public void none(int column) {
+            batch.setNone(row, column);
+        }
+
+        @Override
+        public void bool(int column, boolean value) {
+            batch.setBoolean(row, column, value);
+        }
+
+        @Override
+        public void integer(int column, long value) {
+            batch.setLong(row, column, value);
+        }
+
+        @Override
+        public void floating(int column, double value) {
+            batch.setDouble(row, column, value);
+        }
+
+        @Override
+        public void string(int column, char[] chars, int offset, int length) {
+            // Copy straight into the batch without creating a string.
+            batch.setString(row, column, chars, offset, length);
+        }
     }
 }
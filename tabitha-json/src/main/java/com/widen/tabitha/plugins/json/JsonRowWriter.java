@@ -0,0 +1,404 @@
+package com.widen.tabitha.plugins.json;
+
+import com.widen.tabitha.Variant;
+import com.widen.tabitha.reader.Header;
+import com.widen.tabitha.reader.Row;
+import com.widen.tabitha.reader.RowBatch;
+import com.widen.tabitha.writer.RowWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes rows as line-delimited JSON, one object per line, in UTF-8.
+ * <p>
+ * The keys of each object are the column names of the header of its row. Rows written with a header of their own, such
+ * as with {@link #write(Row)} or {@link #writeBatch(RowBatch)}, use that header. Otherwise the header given to the
+ * writer is used, and if there is none, the first row written is taken as the header instead of being written. Cells
+ * without a column name are keyed by their column index.
+ * <p>
+ * The keys of a header are escaped once and reused for every row with the same header, and values are encoded
+ * directly into a reusable output buffer, so writing a row does not allocate any strings. Empty cells and numbers that
+ * JSON cannot represent, such as infinity, are written as {@code null}.
+ */
+public class JsonRowWriter implements RowWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The most bytes a single character can be encoded as, which is a unicode escape.
+    private static final int MAX_CHAR_BYTES = 6;
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final OutputStream output;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+
+    // The header used for rows without one, if known yet.
+    private Header header;
+
+    // The header that keys are currently encoded for, and the encoded keys of each of its columns, including the
+    // separator before each key and the colon after it.
+    private Header encodedHeader;
+    private byte[][] keys = new byte[0][];
+
+    // Scratch space that values are formatted into before being encoded.
+    private char[] chars = new char[256];
+    private final StringBuilder numberBuilder = new StringBuilder(32);
+
+    public JsonRowWriter(OutputStream outputStream) {
+        this(outputStream, null);
+    }
+
+    /**
+     * Create a new writer that writes rows without a header of their own using the given header.
+     *
+     * @param outputStream The stream to write to.
+     * @param header The header to use for rows without one, or null to use the first row written.
+     */
+    public JsonRowWriter(OutputStream outputStream, Header header) {
+        output = outputStream;
+        this.header = header;
+    }
+
+    @Override
+    public void write(List<Variant> cells) throws IOException {
+        if (header == null) {
+            header = new Header(cells.stream().map(cell -> cell.isNone() ? null : cell.toString()));
+            return;
+        }
+
+        writeObject(header, cells);
+    }
+
+    @Override
+    public void write(Row row) throws IOException {
+        Optional<Header> rowHeader = row.header();
+
+        if (rowHeader.isPresent()) {
+            writeObject(rowHeader.get(), row.cells());
+        }
+        else {
+            write(row.cells());
+        }
+    }
+
+    @Override
+    public void writeBatch(RowBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); ++row) {
+            Optional<Header> rowHeader = batch.header(row);
+
+            if (!rowHeader.isPresent()) {
+                write(batch.cells(row));
+                continue;
+            }
+
+            encodeKeys(rowHeader.get(), batch.width(row));
+            put((byte) '{');
+
+            for (int column = 0; column < batch.width(row); ++column) {
+                put(keys[column]);
+
+                RowBatch.Column values = batch.column(column);
+
+                switch (values.type(row)) {
+                    case BOOL:
+                        put(values.getBoolean(row) ? TRUE : FALSE);
+                        break;
+                    case INT:
+                        writeLong(values.getLong(row));
+                        break;
+                    case FLOAT:
+                        writeDouble(values.getDouble(row));
+                        break;
+                    case STRING:
+                        writeString(values.stringData(), values.stringOffset(row), values.stringLength(row));
+                        break;
+                    default:
+                        put(NULL);
+                        break;
+                }
+            }
+
+            put((byte) '}');
+            put((byte) '\n');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        output.close();
+    }
+
+    private void writeObject(Header header, List<Variant> cells) throws IOException {
+        encodeKeys(header, cells.size());
+        put((byte) '{');
+
+        for (int column = 0; column < cells.size(); ++column) {
+            put(keys[column]);
+            writeCell(cells.get(column));
+        }
+
+        put((byte) '}');
+        put((byte) '\n');
+    }
+
+    // Encode the keys of a header, unless they are already encoded. Keys are also encoded for any cells past the end
+    // of the header.
+    private void encodeKeys(Header header, int width) {
+        if (header != encodedHeader && !header.equals(encodedHeader)) {
+            encodedHeader = header;
+            keys = new byte[0][];
+        }
+
+        if (keys.length < width) {
+            byte[][] encoded = Arrays.copyOf(keys, Math.max(width, header.size()));
+
+            for (int column = keys.length; column < encoded.length; ++column) {
+                encoded[column] = encodeKey(header.nameOf(column).orElse(String.valueOf(column)), column == 0);
+            }
+
+            keys = encoded;
+        }
+    }
+
+    private void writeCell(Variant cell) throws IOException {
+        if (cell instanceof Variant.String) {
+            String value = cell.toString();
+            int length = value.length();
+
+            value.getChars(0, length, reserveChars(length), 0);
+            writeString(chars, 0, length);
+        }
+        else if (cell instanceof Variant.Int) {
+            writeLong(((Variant.Int) cell).value());
+        }
+        else if (cell instanceof Variant.Float) {
+            writeDouble(((Variant.Float) cell).value());
+        }
+        else if (cell instanceof Variant.Bool) {
+            put(cell == Variant.Bool.TRUE ? TRUE : FALSE);
+        }
+        else {
+            put(NULL);
+        }
+    }
+
+    // Format an integer into the scratch buffer from the end, counting in negatives so that Long.MIN_VALUE works.
+    private void writeLong(long value) throws IOException {
+        char[] digits = reserveChars(20);
+        int start = 20;
+        boolean negative = value < 0;
+
+        if (!negative) {
+            value = -value;
+        }
+
+        do {
+            digits[--start] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        if (negative) {
+            digits[--start] = '-';
+        }
+
+        encode(digits, start, 20 - start);
+    }
+
+    private void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            put(NULL);
+            return;
+        }
+
+        // Appending to a builder formats the same way as Double.toString without creating a string.
+        numberBuilder.setLength(0);
+        numberBuilder.append(value);
+
+        int length = numberBuilder.length();
+        numberBuilder.getChars(0, length, reserveChars(length), 0);
+        encode(chars, 0, length);
+    }
+
+    private void writeString(char[] text, int offset, int length) throws IOException {
+        put((byte) '"');
+        encode(text, offset, length);
+        put((byte) '"');
+    }
+
+    // Encode characters into the output buffer, in chunks small enough that the buffer never has to be checked for
+    // space within a chunk.
+    private void encode(char[] text, int offset, int length) throws IOException {
+        int end = offset + length;
+
+        while (offset < end) {
+            int room = (buffer.length - bufferPosition) / MAX_CHAR_BYTES;
+
+            if (room == 0) {
+                flush();
+                continue;
+            }
+
+            offset = encodeChunk(text, offset, Math.min(end, offset + room), end);
+        }
+    }
+
+    // Encode characters up to the chunk end, returning the index of the next character to encode. A surrogate pair
+    // may extend one character past the chunk end, which is fine as a pair never takes more than six bytes.
+    private int encodeChunk(char[] text, int offset, int chunkEnd, int end) {
+        byte[] buffer = this.buffer;
+        int position = bufferPosition;
+        int i = offset;
+
+        while (i < chunkEnd) {
+            char c = text[i++];
+
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) c;
+                }
+                else if (c >= 0x20) {
+                    buffer[position++] = (byte) c;
+                }
+                else if (c == '\n') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = 'n';
+                }
+                else if (c == '\r') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = 'r';
+                }
+                else if (c == '\t') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = 't';
+                }
+                else {
+                    position = escape(c, buffer, position);
+                }
+                continue;
+            }
+
+            // Combine a surrogate pair into a single code point, or escape a lone surrogate so it is not lost.
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(text[i])) {
+                codePoint = Character.toCodePoint(c, text[i++]);
+            }
+            else if (Character.isSurrogate(c)) {
+                position = escape(c, buffer, position);
+                continue;
+            }
+
+            if (codePoint < 0x800) {
+                buffer[position++] = (byte) (0xc0 | codePoint >> 6);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            }
+            else if (codePoint < 0x10000) {
+                buffer[position++] = (byte) (0xe0 | codePoint >> 12);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            }
+            else {
+                buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            }
+        }
+
+        bufferPosition = position;
+        return i;
+    }
+
+    // Encode a key with the separator before it and the colon after it, escaped the same way as values.
+    private static byte[] encodeKey(String name, boolean first) {
+        StringBuilder builder = new StringBuilder(name.length() + 4);
+
+        if (!first) {
+            builder.append(',');
+        }
+
+        builder.append('"');
+
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            }
+            else if (c < 0x20 || Character.isSurrogate(c) && !isSurrogatePair(name, i)) {
+                builder.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                builder.append(c);
+            }
+        }
+
+        return builder.append("\":").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSurrogatePair(String text, int index) {
+        char c = text.charAt(index);
+
+        if (Character.isHighSurrogate(c)) {
+            return index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1));
+        }
+
+        return index > 0 && Character.isHighSurrogate(text.charAt(index - 1));
+    }
+
+    private static int escape(char c, byte[] buffer, int position) {
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[c >> 12];
+        buffer[position++] = HEX[c >> 8 & 0xf];
+        buffer[position++] = HEX[c >> 4 & 0xf];
+        buffer[position++] = HEX[c & 0xf];
+        return position;
+    }
+
+    private void put(byte b) throws IOException {
+        if (bufferPosition == buffer.length) {
+            flush();
+        }
+
+        buffer[bufferPosition++] = b;
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - bufferPosition) {
+            flush();
+
+            if (bytes.length > buffer.length) {
+                output.write(bytes);
+                return;
+            }
+        }
+
+        System.arraycopy(bytes, 0, buffer, bufferPosition, bytes.length);
+        bufferPosition += bytes.length;
+    }
+
+    private void flush() throws IOException {
+        if (bufferPosition > 0) {
+            output.write(buffer, 0, bufferPosition);
+            bufferPosition = 0;
+        }
+    }
+
+    private char[] reserveChars(int length) {
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+
+        return chars;
+    }
+}
@@ -0,0 +1,445 @@
+package com.widen.tabitha.plugins.json;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A minimal pull scanner for a stream of JSON values that works directly on a character buffer.
+ * <p>
+ * Names and values are exposed as a current value that can be compared or parsed in place, so that numbers never have
+ * to be turned into strings or boxed. Strings without escapes are read straight from the buffer.
+ * <p>
+ * Any number of top-level values may follow each other, separated by whitespace, such as in line-delimited JSON. Commas
+ * and colons are skipped rather than validated, so some malformed documents are accepted.
+ */
+final class JsonScanner implements Closeable {
+    static final int BEGIN_OBJECT = 1;
+    static final int END_OBJECT = 2;
+    static final int BEGIN_ARRAY = 3;
+    static final int END_ARRAY = 4;
+    static final int NAME = 5;
+    static final int STRING = 6;
+    static final int NUMBER = 7;
+    static final int TRUE = 8;
+    static final int FALSE = 9;
+    static final int NULL = 10;
+    static final int END_DOCUMENT = 11;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    // Whether each open container is an object rather than an array, innermost last.
+    private boolean[] objects = new boolean[32];
+    private int depth;
+
+    // Whether the next string in the current object is a name.
+    private boolean expectName;
+
+    // The current name or value, which is either in the buffer or in the scratch array.
+    private char[] value;
+    private int valueStart;
+    private int valueEnd;
+    private long longValue;
+
+    // Strings containing escapes or crossing the end of the buffer are decoded into this array.
+    private char[] scratch = new char[256];
+
+    JsonScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return The type of the token, one of the constants of this class.
+     * @throws IOException if an I/O error occurs or the input is not valid JSON.
+     */
+    int next() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                if (depth > 0) {
+                    throw new EOFException("Unexpected end of JSON document");
+                }
+
+                return END_DOCUMENT;
+            }
+
+            char c = buffer[position];
+
+            switch (c) {
+                case '\uFEFF':
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                case ':':
+                    ++position;
+                    break;
+
+                case ',':
+                    ++position;
+                    expectName = depth > 0 && objects[depth - 1];
+                    break;
+
+                case '{':
+                    ++position;
+                    push(true);
+                    expectName = true;
+                    return BEGIN_OBJECT;
+
+                case '[':
+                    ++position;
+                    push(false);
+                    expectName = false;
+                    return BEGIN_ARRAY;
+
+                case '}':
+                case ']':
+                    ++position;
+
+                    if (depth == 0 || objects[depth - 1] != (c == '}')) {
+                        throw new IOException("Unexpected '" + c + "' in JSON document");
+                    }
+
+                    --depth;
+                    expectName = false;
+                    return c == '}' ? END_OBJECT : END_ARRAY;
+
+                case '"':
+                    ++position;
+                    readString();
+
+                    if (expectName) {
+                        expectName = false;
+                        return NAME;
+                    }
+                    return STRING;
+
+                default:
+                    readWord();
+
+                    if (valueEquals("true")) {
+                        return TRUE;
+                    }
+                    if (valueEquals("false")) {
+                        return FALSE;
+                    }
+                    if (valueEquals("null")) {
+                        return NULL;
+                    }
+                    if (c == '-' || c >= '0' && c <= '9') {
+                        return NUMBER;
+                    }
+
+                    throw new IOException("Unexpected character '" + c + "' in JSON document");
+            }
+        }
+    }
+
+    /**
+     * Skip the rest of the object or array that was just begun, including everything nested in it.
+     *
+     * @throws IOException if an I/O error occurs or the input is not valid JSON.
+     */
+    void skipContainer() throws IOException {
+        int target = depth - 1;
+
+        while (depth > target) {
+            if (next() == END_DOCUMENT) {
+                throw new EOFException("Unexpected end of JSON document");
+            }
+        }
+    }
+
+    /**
+     * Get the number of objects and arrays that the scanner is currently inside of.
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * Check if the current value is equal to a string.
+     */
+    boolean valueEquals(String string) {
+        int length = valueEnd - valueStart;
+
+        if (length != string.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; ++i) {
+            if (value[valueStart + i] != string.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the current value as a string.
+     */
+    String valueAsString() {
+        return new String(value, valueStart, valueEnd - valueStart);
+    }
+
+    /**
+     * Get the array holding the current value, which may be overwritten by the next call to {@link #next()}.
+     */
+    char[] valueChars() {
+        return value;
+    }
+
+    /**
+     * Get the offset of the current value in {@link #valueChars()}.
+     */
+    int valueOffset() {
+        return valueStart;
+    }
+
+    /**
+     * Get the length of the current value.
+     */
+    int valueLength() {
+        return valueEnd - valueStart;
+    }
+
+    /**
+     * Parse the current value as a decimal integer. If it is one, it is then available from {@link #longValue()}.
+     *
+     * @return True if the value is an integer without a fraction or exponent that fits in a long.
+     */
+    boolean parseLong() {
+        int i = valueStart;
+        boolean negative = false;
+
+        if (i < valueEnd && value[i] == '-') {
+            negative = true;
+            ++i;
+        }
+
+        if (i == valueEnd) {
+            return false;
+        }
+
+        // Accumulate negatively, since the negative range is larger.
+        long result = 0;
+
+        for (; i < valueEnd; ++i) {
+            int digit = value[i] - '0';
+
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                return false;
+            }
+
+            result = result * 10 - digit;
+        }
+
+        if (!negative && result == Long.MIN_VALUE) {
+            return false;
+        }
+
+        longValue = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * Get the integer parsed by the last successful call to {@link #parseLong()}.
+     */
+    long longValue() {
+        return longValue;
+    }
+
+    /**
+     * Parse the current value as a floating point number.
+     *
+     * @throws NumberFormatException if the value is not a number.
+     */
+    double doubleValue() {
+        return Double.parseDouble(valueAsString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void push(boolean object) {
+        if (depth == objects.length) {
+            objects = Arrays.copyOf(objects, depth * 2);
+        }
+
+        objects[depth++] = object;
+    }
+
+    // Read a string after its opening quote, unescaping it into the scratch array only if needed.
+    private void readString() throws IOException {
+        int end = position;
+
+        while (end < limit && buffer[end] != '"' && buffer[end] != '\\') {
+            ++end;
+        }
+
+        // Fast path: the whole string is in the buffer and has no escapes.
+        if (end < limit && buffer[end] == '"') {
+            setValue(buffer, position, end);
+            position = end + 1;
+            return;
+        }
+
+        int length = 0;
+
+        while (true) {
+            // Copy a run of plain characters.
+            end = position;
+
+            while (end < limit && buffer[end] != '"' && buffer[end] != '\\') {
+                ++end;
+            }
+
+            length = append(length, buffer, position, end - position);
+            position = end;
+
+            if (position == limit) {
+                if (!fill()) {
+                    throw new EOFException("Unterminated string in JSON document");
+                }
+                continue;
+            }
+
+            if (buffer[position++] == '"') {
+                break;
+            }
+
+            length = append(length, readEscape());
+        }
+
+        setValue(scratch, 0, length);
+    }
+
+    // Read an escape sequence after its backslash.
+    private char readEscape() throws IOException {
+        char c = read();
+
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+
+                for (int i = 0; i < 4; ++i) {
+                    int digit = Character.digit(read(), 16);
+
+                    if (digit < 0) {
+                        throw new IOException("Invalid unicode escape in JSON document");
+                    }
+
+                    code = code << 4 | digit;
+                }
+
+                return (char) code;
+            default:
+                return c;
+        }
+    }
+
+    // Read a number or literal, which runs until the next delimiter.
+    private void readWord() throws IOException {
+        int end = position;
+
+        while (end < limit && isWordChar(buffer[end])) {
+            ++end;
+        }
+
+        if (end < limit) {
+            setValue(buffer, position, end);
+            position = end;
+            return;
+        }
+
+        // The word may continue past the end of the buffer.
+        int length = 0;
+
+        while (true) {
+            end = position;
+
+            while (end < limit && isWordChar(buffer[end])) {
+                ++end;
+            }
+
+            length = append(length, buffer, position, end - position);
+            position = end;
+
+            if (position < limit || !fill()) {
+                break;
+            }
+        }
+
+        setValue(scratch, 0, length);
+    }
+
+    private void setValue(char[] chars, int start, int end) {
+        value = chars;
+        valueStart = start;
+        valueEnd = end;
+    }
+
+    private int append(int length, char c) {
+        if (length == scratch.length) {
+            scratch = Arrays.copyOf(scratch, length * 2);
+        }
+
+        scratch[length] = c;
+        return length + 1;
+    }
+
+    private int append(int length, char[] chars, int offset, int count) {
+        if (length + count > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, length + count));
+        }
+
+        System.arraycopy(chars, offset, scratch, length, count);
+        return length + count;
+    }
+
+    private char read() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException("Unexpected end of JSON document");
+        }
+
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+
+        int count = reader.read(buffer);
+        if (count <= 0) {
+            return false;
+        }
+
+        limit = count;
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.';
+    }
+}
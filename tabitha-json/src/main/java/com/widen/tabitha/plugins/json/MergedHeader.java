@@ -0,0 +1,163 @@
+package com.widen.tabitha.plugins.json;
+
+import com.widen.tabitha.reader.Header;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Maps the keys of each object read onto one header shared by all of them, so that a new header does not have to be
+ * built for every object.
+ * <p>
+ * Keys are added to the merged header the first time they are seen, and keep the same column from then on. Objects with
+ * the same keys in a different order, or with some keys missing, share the header and leave the cells of their missing
+ * keys empty. Each key is compared in place against the key that followed the previous key last time, so that names are
+ * only turned into strings when the keys of an object change.
+ * <p>
+ * Merging only pays off while objects keep reusing the same keys. If the keys drift instead, such as when keys are IDs,
+ * the merged header grows much wider than the objects that use it. When the merged header is full, or is many times
+ * wider than the average object since it was started, it is started over from the keys of the next object. Keys of a
+ * single object that do not fit in a full merged header are put after its columns in a header built just for that
+ * object.
+ */
+final class MergedHeader {
+    // The fewest columns before the merged header is checked for drift.
+    private static final int MIN_DRIFT_COLUMNS = 64;
+
+    // How many times wider than the average object the merged header can get before it is started over.
+    private static final int MAX_DRIFT_RATIO = 8;
+
+    private final int maxColumns;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private String[] names = new String[16];
+    private int size;
+    private Header header = new Header();
+    private boolean changed;
+
+    // The column expected after each column, where the first entry is the column expected for the first key.
+    private int[] successors = new int[17];
+
+    // The keys of the current object that did not fit in the merged header.
+    private final List<String> extraNames = new ArrayList<>();
+
+    // The column of the previous key of the current object, and the name of the key last looked up.
+    private int previous;
+    private String name;
+
+    // The number of objects and keys seen since the merged header was started.
+    private long objects;
+    private long keys;
+
+    MergedHeader(int maxColumns) {
+        this.maxColumns = maxColumns;
+    }
+
+    /**
+     * Begin mapping the keys of a new object.
+     */
+    void begin() {
+        if (size == maxColumns || size >= MIN_DRIFT_COLUMNS && size * objects > keys * MAX_DRIFT_RATIO) {
+            reset();
+        }
+
+        previous = -1;
+        extraNames.clear();
+        ++objects;
+    }
+
+    /**
+     * Find the column of the current name of a scanner.
+     *
+     * @param scanner The scanner positioned at a key.
+     * @return The column of the key, or -1 if it has not been seen before.
+     */
+    int find(JsonScanner scanner) {
+        ++keys;
+        int column = successors[previous + 1];
+
+        if (column < size && scanner.valueEquals(names[column])) {
+            name = names[column];
+        }
+        else {
+            name = scanner.valueAsString();
+            Integer index = columns.get(name);
+
+            if (index == null) {
+                int extra = extraNames.indexOf(name);
+                return extra >= 0 ? size + extra : -1;
+            }
+
+            column = index;
+            successors[previous + 1] = column;
+        }
+
+        previous = column;
+        return column;
+    }
+
+    /**
+     * Get the name of the key last passed to {@link #find(JsonScanner)}.
+     */
+    String name() {
+        return name;
+    }
+
+    /**
+     * Add the key last passed to {@link #find(JsonScanner)} as a new column.
+     *
+     * @return The column of the key.
+     */
+    int add() {
+        if (size == maxColumns) {
+            extraNames.add(name);
+            return size + extraNames.size() - 1;
+        }
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            successors = Arrays.copyOf(successors, size * 2 + 1);
+        }
+
+        int column = size++;
+        names[column] = name;
+        columns.put(name, column);
+        successors[previous + 1] = column;
+        successors[column + 1] = column + 1;
+        previous = column;
+        changed = true;
+        return column;
+    }
+
+    /**
+     * Finish mapping the keys of the current object.
+     *
+     * @return The header of the object.
+     */
+    Header end() {
+        if (changed) {
+            header = new Header(Arrays.copyOf(names, size));
+            changed = false;
+        }
+
+        if (!extraNames.isEmpty()) {
+            return new Header(Stream.concat(Arrays.stream(names, 0, size), extraNames.stream()));
+        }
+
+        return header;
+    }
+
+    // Start the merged header over. Headers already returned are left as they are.
+    private void reset() {
+        columns.clear();
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+        successors[0] = 0;
+        changed = true;
+        objects = 0;
+        keys = 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.widen.tabitha.plugins.json;
+
+import com.widen.tabitha.plugins.WriterPlugin;
+import com.widen.tabitha.writer.RowWriter;
+
+import java.io.OutputStream;
+
+/**
+ * Writes line-delimited JSON. Plain JSON files are not written, as a stream of objects is not a single JSON document.
+ */
+public class NdjsonPlugin implements WriterPlugin {
+    @Override
+    public boolean supportsFormat(String mimeType) {
+        return "application/x-ndjson".equals(mimeType);
+    }
+
+    @Override
+    public RowWriter createWriter(OutputStream outputStream) {
+        return new JsonRowWriter(outputStream);
+    }
+}
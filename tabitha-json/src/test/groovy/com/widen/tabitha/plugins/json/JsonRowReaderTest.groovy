@@ -0,0 +1,85 @@
+package com.widen.tabitha.plugins.json
+
+import com.widen.tabitha.Variant
+import com.widen.tabitha.reader.ReaderOptions
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class JsonRowReaderTest extends Specification {
+    def "objects are read from a top-level array"() {
+        expect:
+        read(text) == asVariants(rows)
+
+        where:
+        text                                 | rows
+        '[]'                                 | []
+        '[{"a": 1}, {"a": 2}]'               | [[1], [2]]
+        '[\n  {"a": 1},\n  {"a": [2]}\n]\n'  | [[1], [null]]
+        '[{"a": 1}] {"a": 2} [{"a": 3}]'     | [[1], [2], [3]]
+    }
+
+    def "rows can be limited within a top-level array"() {
+        setup:
+        def options = new ReaderOptions().withInlineHeaders(false).withRowOffset(1).withRowLimit(2)
+
+        expect:
+        read('[{"a": 1}, {"a": {"b": 2}}, {"a": 3}, {"a": 4}]', options) == asVariants([[null], [3]])
+    }
+
+    def "rows end at the last key of their object"() {
+        setup:
+        def reader = new JsonRowReader(new StringReader('{"a": 1, "b": 2}\n{"a": 3}\n{"b": 4}\n'))
+
+        when:
+        def rows = reader.rows().toList().blockingGet()
+
+        then:
+        rows*.cells() == asVariants([[1, 2], [3], [null, 4]])
+        rows.every { it.header().get().toList() == ["a", "b"] }
+
+        cleanup:
+        reader.close()
+    }
+
+    def "arrays of other values are rejected"() {
+        when:
+        read(text)
+
+        then:
+        def e = thrown(IOException)
+        e.message == message
+
+        where:
+        text            | message
+        '[1, 2]'        | 'Expected a JSON object but found a value'
+        '[[{"a": 1}]]'  | 'Expected a JSON object but found an array'
+    }
+
+    def "objects in a top-level array are inspected"() {
+        setup:
+        def input = new ByteArrayInputStream('[{"a": 1, "b": [{"c": 2}]}, {"a": 3}]'.getBytes(StandardCharsets.UTF_8))
+
+        when:
+        def stats = JsonRowReader.inspect(input, null)
+
+        then:
+        stats*.rowCount() == [2L]
+        stats*.columnCount() == [2]
+    }
+
+    private static List<List<Variant>> read(String text, ReaderOptions options = null) {
+        def reader = new JsonRowReader(new StringReader(text), options)
+
+        try {
+            return reader.rows().map { it.cells() }.toList().blockingGet()
+        }
+        finally {
+            reader.close()
+        }
+    }
+
+    private static List<List<Variant>> asVariants(List<List<Object>> rows) {
+        return rows.collect { it.collect { Variant.from(it) } }
+    }
+}
@@ -0,0 +1,129 @@
+package com.widen.tabitha.plugins.json
+
+import com.widen.tabitha.Variant
+import com.widen.tabitha.reader.Header
+import com.widen.tabitha.reader.Row
+import com.widen.tabitha.reader.RowBatch
+import com.widen.tabitha.writer.RowWriters
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class JsonRowWriterTest extends Specification {
+    def "write values"() {
+        expect:
+        write(new Header('a', 'b', 'c'), cells) == text
+
+        where:
+        cells                                      | text
+        []                                         | '{}\n'
+        ['x', Variant.NONE, '']                    | '{"a":"x","b":null,"c":""}\n'
+        [42L, -7L, Long.MIN_VALUE]                 | '{"a":42,"b":-7,"c":-9223372036854775808}\n'
+        [1.5d, 1e21d, Double.NaN]                  | '{"a":1.5,"b":1.0E21,"c":null}\n'
+        [true, false]                              | '{"a":true,"b":false}\n'
+        ['say "hi"', 'back\\slash', 'a\n\t\u0001'] | '{"a":"say \\"hi\\"","b":"back\\\\slash","c":"a\\n\\t\\u0001"}\n'
+        ['caf\u00e9', '\ud83d\ude00', '\ud800']    | '{"a":"caf\u00e9","b":"\ud83d\ude00","c":"\\ud800"}\n'
+        [1L, 2L, 3L, 4L]                           | '{"a":1,"b":2,"c":3,"3":4}\n'
+    }
+
+    def "the first row is the header if there is none"() {
+        setup:
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new JsonRowWriter(output).withCloseable {
+            it.write(Variant.of('name'), Variant.of('say "hi"'))
+            it.write(Variant.of('a'), Variant.of(1L))
+        }
+
+        then:
+        new String(output.toByteArray(), StandardCharsets.UTF_8) == '{"name":"a","say \\"hi\\"":1}\n'
+    }
+
+    def "rows are written with their own headers"() {
+        setup:
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new JsonRowWriter(output).withCloseable {
+            it.write(Row.fromArray(0, 0, [Variant.of(1L)] as Variant[]).withHeader(new Header('a')))
+            it.write(Row.fromArray(0, 1, [Variant.of(2L), Variant.of(3L)] as Variant[]).withHeader(new Header('b', 'c')))
+        }
+
+        then:
+        new String(output.toByteArray(), StandardCharsets.UTF_8) == '{"a":1}\n{"b":2,"c":3}\n'
+    }
+
+    def "write batches the same as rows"() {
+        setup:
+        def json = '{"a": "plain", "b": 1, "c": 2.5}\n{"b": true, "d": "\\ud83d\\ude00 \\"quoted\\"\\r\\n"}\n{}\n'
+        def rowOutput = new ByteArrayOutputStream()
+        def batchOutput = new ByteArrayOutputStream()
+
+        when:
+        new JsonRowWriter(rowOutput).withCloseable { writer ->
+            writer.writeAll(new JsonRowReader(new StringReader(json)))
+        }
+        new JsonRowWriter(batchOutput).withCloseable { writer ->
+            def reader = new JsonRowReader(new StringReader(json))
+            def batch = new RowBatch(2)
+
+            while (reader.readBatch(batch)) {
+                writer.writeBatch(batch)
+            }
+        }
+
+        then:
+        batchOutput.toByteArray() == rowOutput.toByteArray()
+    }
+
+    def "rows written through an async writer keep their headers"() {
+        setup:
+        def json = '{"a": 1, "b": 2}\n{"a": "x", "b": true}\n'
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new JsonRowWriter(output).async(2).withCloseable { writer ->
+            writer.writeAll(new JsonRowReader(new StringReader(json)))
+        }
+
+        then:
+        new String(output.toByteArray(), StandardCharsets.UTF_8) == json.replace(' ', '')
+    }
+
+    def "written rows are read back unchanged"() {
+        setup:
+        def cells = [Variant.of('say "hi"\n'), Variant.of(1L), Variant.of(-0.5d), Variant.of(true), Variant.NONE]
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new JsonRowWriter(output, new Header('a', 'b', 'c', 'd', 'e')).withCloseable {
+            it.write(cells)
+        }
+        def reader = new JsonRowReader(new ByteArrayInputStream(output.toByteArray()))
+
+        then:
+        reader.read().get().cells() == cells
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "writers are created for ndjson files"() {
+        setup:
+        def output = new ByteArrayOutputStream()
+
+        expect:
+        RowWriters.create(output, 'out.ndjson').blockingGet() instanceof JsonRowWriter
+    }
+
+    private static String write(Header header, List cells) {
+        def output = new ByteArrayOutputStream()
+
+        new JsonRowWriter(output, header).withCloseable {
+            it.write(cells.collect { it instanceof Variant ? it : Variant.of(it) })
+        }
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8)
+    }
+}
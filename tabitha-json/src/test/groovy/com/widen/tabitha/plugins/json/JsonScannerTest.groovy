@@ -0,0 +1,110 @@
+package com.widen.tabitha.plugins.json
+
+import spock.lang.Specification
+
+class JsonScannerTest extends Specification {
+    def "tokens are scanned"() {
+        setup:
+        def scanner = new JsonScanner(new StringReader('{"a": [1, {"b": null}], "c": true}\n{"d":false}'))
+
+        expect:
+        scanner.next() == JsonScanner.BEGIN_OBJECT
+        scanner.next() == JsonScanner.NAME
+        scanner.valueEquals("a")
+        scanner.next() == JsonScanner.BEGIN_ARRAY
+        scanner.next() == JsonScanner.NUMBER
+        scanner.next() == JsonScanner.BEGIN_OBJECT
+        scanner.next() == JsonScanner.NAME
+        scanner.valueEquals("b")
+        scanner.next() == JsonScanner.NULL
+        scanner.next() == JsonScanner.END_OBJECT
+        scanner.next() == JsonScanner.END_ARRAY
+        scanner.next() == JsonScanner.NAME
+        scanner.valueEquals("c")
+        scanner.next() == JsonScanner.TRUE
+        scanner.next() == JsonScanner.END_OBJECT
+        scanner.depth() == 0
+
+        scanner.next() == JsonScanner.BEGIN_OBJECT
+        scanner.next() == JsonScanner.NAME
+        scanner.valueEquals("d")
+        scanner.next() == JsonScanner.FALSE
+        scanner.next() == JsonScanner.END_OBJECT
+        scanner.next() == JsonScanner.END_DOCUMENT
+    }
+
+    def "strings are unescaped"() {
+        setup:
+        def scanner = new JsonScanner(new StringReader("[\"$text\"]"))
+
+        when:
+        scanner.next()
+        scanner.next()
+
+        then:
+        scanner.valueAsString() == expected
+
+        where:
+        text                        | expected
+        ''                          | ''
+        'plain'                     | 'plain'
+        'café 😀'                   | 'café 😀'
+        '\\"a\\\\b\\/c\\n\\t'       | '"a\\b/c\n\t'
+        '\\u0041\\ud83d\\ude00'     | 'A😀'
+    }
+
+    def "numbers are parsed"() {
+        setup:
+        def scanner = new JsonScanner(new StringReader("[$text]"))
+
+        when:
+        scanner.next()
+        scanner.next()
+
+        then:
+        scanner.parseLong() == isLong
+        !isLong || scanner.longValue() == value
+        isLong || scanner.doubleValue() == value
+
+        where:
+        text                   | isLong | value
+        '0'                    | true   | 0
+        '-42'                  | true   | -42
+        '9223372036854775807'  | true   | Long.MAX_VALUE
+        '-9223372036854775808' | true   | Long.MIN_VALUE
+        '9223372036854775808'  | false  | 9.223372036854775808e18d
+        '1.5'                  | false  | 1.5d
+        '1E+20'                | false  | 1e20d
+    }
+
+    def "containers can be skipped"() {
+        setup:
+        def scanner = new JsonScanner(new StringReader('{"a": {"b": [1, "]}"]}, "c": 2} 3'))
+
+        when:
+        scanner.next()
+        scanner.skipContainer()
+
+        then:
+        scanner.depth() == 0
+        scanner.next() == JsonScanner.NUMBER
+        scanner.valueEquals("3")
+    }
+
+    def "values larger than the buffer are read"() {
+        setup:
+        def text = "x" * 200000
+        def scanner = new JsonScanner(new StringReader("[\"$text\", \"a\\n$text\"]"))
+        def values = []
+
+        when:
+        while (scanner.next() != JsonScanner.END_DOCUMENT) {
+            if (scanner.depth() == 1 && scanner.valueLength() > 0) {
+                values << scanner.valueAsString()
+            }
+        }
+
+        then:
+        values == [text, "a\n$text".toString()]
+    }
+}
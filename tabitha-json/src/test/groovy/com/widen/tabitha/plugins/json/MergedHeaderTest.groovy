@@ -0,0 +1,99 @@
+package com.widen.tabitha.plugins.json
+
+import spock.lang.Specification
+
+class MergedHeaderTest extends Specification {
+    def "keys are merged into one header"() {
+        setup:
+        def headers = new MergedHeader(16)
+
+        expect:
+        columns(headers, '{"a": 1, "b": 2}') == [0, 1]
+        columns(headers, '{"b": 1, "a": 2}') == [1, 0]
+        columns(headers, '{"a": 1, "c": 2}') == [0, 2]
+        columns(headers, '{"c": 1}') == [2]
+        headers.end().toList() == ["a", "b", "c"]
+    }
+
+    def "the header is reused until it changes"() {
+        setup:
+        def headers = new MergedHeader(16)
+
+        when:
+        columns(headers, '{"a": 1, "b": 2}')
+        def first = headers.end()
+        columns(headers, '{"b": 1}')
+        def second = headers.end()
+        columns(headers, '{"c": 1}')
+        def third = headers.end()
+
+        then:
+        first.is(second)
+        !second.is(third)
+    }
+
+    def "keys past the column limit get a header of their own"() {
+        setup:
+        def headers = new MergedHeader(2)
+
+        when:
+        def columns = columns(headers, '{"a": 1, "b": 2, "c": 3, "d": 4, "c": 5}')
+        def header = headers.end()
+        columns(headers, '{"a": 1}')
+
+        then:
+        columns == [0, 1, 2, 3, 2]
+        header.toList() == ["a", "b", "c", "d"]
+        // A full header is started over.
+        headers.end().toList() == ["a"]
+    }
+
+    def "the header is started over when keys drift"() {
+        setup:
+        def headers = new MergedHeader(1024)
+        def widths = []
+
+        when:
+        1000.times {
+            columns(headers, "{\"id\": $it, \"key$it\": 1}")
+            widths << headers.end().size()
+        }
+
+        then:
+        widths.max() <= 64 + 2
+        widths.last() < 64
+    }
+
+    def "the header is not started over for objects that reuse keys"() {
+        setup:
+        def headers = new MergedHeader(1024)
+        def keys = (0..<100).collect { "\"key$it\": 1" }
+        def first = null
+
+        when:
+        1000.times {
+            // Each object has most of the keys.
+            columns(headers, "{${keys.drop(it % 10).join(', ')}}")
+            first = first ?: headers.end()
+        }
+
+        then:
+        headers.end().is(first)
+    }
+
+    private static List<Integer> columns(MergedHeader headers, String json) {
+        def scanner = new JsonScanner(new StringReader(json))
+        def columns = []
+
+        headers.begin()
+        scanner.next()
+
+        while (scanner.next() == JsonScanner.NAME) {
+            def column = headers.find(scanner)
+            columns << (column < 0 ? headers.add() : column)
+            scanner.next()
+        }
+
+        return columns
+    }
+}